@@ -0,0 +1,37 @@
+package au.com.formis.springbootdemo;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Starts the JavaSpringBootDemoApplication against the shipped data/myDB H2 database for a benchmark
+ * trial. Benchmarks run from the project directory so the relative datasource URL resolves.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.JavaSpringBootDemoApplication
+ * @since       0.1
+ * </p>
+ */
+final class BenchmarkApplication {
+
+    private BenchmarkApplication() {
+    }
+
+    /**
+     * @param properties Extra application properties as name=value, for example motorvehicle.store=jpa.
+     * @return The started application context on a random port, close it in the trial tear down.
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        // Passed as command line arguments as default properties would not override application.properties.
+        String[] args = new String[properties.length];
+        for (int i = 0; i < properties.length; i++) {
+            args[i] = "--" + properties[i];
+        }
+        return new SpringApplicationBuilder(JavaSpringBootDemoApplication.class)
+                .properties("server.port=0", "logging.level.root=warn", "spring.main.banner-mode=off")
+                .run(args);
+    }
+}
@@ -0,0 +1,122 @@
+package au.com.formis.springbootdemo;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Average time of an end to end MockMvc dispatch of each MotorVehicleController mapping, for each
+ * MotorVehicleStore with the response cache on and off. Handlers returning a CompletableFuture or a
+ * StreamingResponseBody are completed with an async dispatch.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @since       0.1
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MotorVehicleControllerBenchmark {
+
+    private static final String BATCH = "[{\"make\":\"BMW\",\"model\":\"X6\"},{\"make\":\"Toyota\",\"model\":\"Prius\",\"generation\":\"saloon\"}]";
+
+    @Param({"catalog", "jpa"})
+    public String store;
+
+    @Param({"true", "false"})
+    public boolean responseCache;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("motorvehicle.store=" + store, "motorvehicle.response-cache.enabled=" + responseCache);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] noParams() throws Exception {
+        return dispatch(get("/motorVehicles"));
+    }
+
+    @Benchmark
+    public byte[] make() throws Exception {
+        return dispatch(get("/motorVehicles").param("make", "BMW"));
+    }
+
+    @Benchmark
+    public byte[] makeAndModel() throws Exception {
+        return dispatch(get("/motorVehicles").param("make", "BMW").param("model", "X6"));
+    }
+
+    @Benchmark
+    public byte[] makeAndModelAndGeneration() throws Exception {
+        return dispatch(get("/motorVehicles").param("make", "BMW").param("model", "3-Series").param("generation", "Saloon 2005"));
+    }
+
+    @Benchmark
+    public byte[] makeAndRange() throws Exception {
+        return dispatch(get("/motorVehicles").param("make", "BMW").param("power", "150..250").param("cylinders", "6"));
+    }
+
+    @Benchmark
+    public byte[] page() throws Exception {
+        return dispatch(get("/motorVehicles").param("make", "BMW").param("sort", "power,desc").param("limit", "20"));
+    }
+
+    @Benchmark
+    public byte[] stream() throws Exception {
+        return dispatch(get("/motorVehicles/stream").param("make", "BMW"));
+    }
+
+    @Benchmark
+    public byte[] aggregations() throws Exception {
+        return dispatch(get("/motorVehicles/aggregations").param("make", "BMW"));
+    }
+
+    @Benchmark
+    public byte[] batch() throws Exception {
+        return dispatch(post("/motorVehicles/batch").contentType(MediaType.APPLICATION_JSON).content(BATCH));
+    }
+
+    private byte[] dispatch(RequestBuilder request) throws Exception {
+        var result = mockMvc.perform(request).andReturn();
+        if (result.getRequest().isAsyncStarted()) {
+            result = mockMvc.perform(asyncDispatch(result)).andReturn();
+        }
+        return result.getResponse().getContentAsByteArray();
+    }
+}
@@ -0,0 +1,122 @@
+package au.com.formis.springbootdemo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.springframework.context.ConfigurableApplicationContext;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Average time to serialize an ApiResponsePayload of every MotorVehicle row in data/myDB in each
+ * MotorVehicleFormat with MotorVehicleResponseWriter, and to serialize and gzip it as the
+ * MotorVehicleResponseCache does for large responses.</p>
+ * <p></p>
+ * <p>The body size of each format, plain and gzip compressed, is recorded with JMH AuxCounters as the bytes
+ * and gzipBytes secondary results of write and writeGzip, in target/jmh-result.json with the timings.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleFormat
+ * @see au.com.formis.springbootdemo.MotorVehicleResponseWriter
+ * @since       0.1
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MotorVehicleFormatBenchmark {
+
+    @Param({"JSON", "COLUMNS", "SMILE", "CBOR"})
+    public MotorVehicleFormat format;
+
+    private MotorVehicleResponseWriter responseWriter;
+    private ApiResponsePayload<MotorVehicle> payload;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start("motorvehicle.store=jpa")) {
+            responseWriter = context.getBean(MotorVehicleResponseWriter.class);
+            List<MotorVehicle> vehicles = new ArrayList<>();
+            context.getBean(MotorVehicleRepository.class).findAll().forEach(vehicles::add);
+            payload = new ApiResponsePayload<>("Spring Boot Demo Service", "Motor vehicle data set",
+                    "http://localhost/motorVehicles", vehicles);
+        }
+    }
+
+    @Benchmark
+    public byte[] write(BodySize size) throws IOException {
+        byte[] body = responseWriter.write(payload, false, format);
+        size.bytes = body.length / size.shares;
+        return body;
+    }
+
+    @Benchmark
+    public byte[] writeGzip(GzipSize size) throws IOException {
+        byte[] body = responseWriter.write(payload, false, format);
+        byte[] gzipBody = gzip(body);
+        size.bytes = body.length / size.shares;
+        size.gzipBytes = gzipBody.length / size.shares;
+        return gzipBody;
+    }
+
+    private static byte[] gzip(byte[] body) throws IOException {
+        var compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * <p>Body size of the last write, reported by JMH next to the write timings.</p>
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class BodySize extends Shares {
+        public double bytes;
+    }
+
+    /**
+     * <p>Body size and gzip compressed size of the last writeGzip, reported by JMH next to the writeGzip timings.</p>
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class GzipSize extends Shares {
+        public double bytes;
+        public double gzipBytes;
+    }
+
+    /**
+     * <p>JMH sums EVENTS counters over the measurement iterations and threads, so each of them records its
+     * share of a size and the sum is the size itself.</p>
+     */
+    public abstract static class Shares {
+        double shares = 1;
+
+        @Setup(Level.Trial)
+        public void setShares(BenchmarkParams params) {
+            shares = (double) params.getMeasurement().getCount() * params.getThreads();
+        }
+    }
+}
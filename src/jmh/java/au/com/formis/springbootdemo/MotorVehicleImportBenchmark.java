@@ -0,0 +1,93 @@
+package au.com.formis.springbootdemo;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Time to import a generated CSV file of rows motor vehicles with the MotorVehicleImporter, including
+ * the catalog swap.</p>
+ * <p></p>
+ * <p>The import runs against a copy of data/myDB in target/jmh-import so the shipped database is not
+ * replaced.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleImporter
+ * @since       0.1
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MotorVehicleImportBenchmark {
+
+    private static final Path DIRECTORY = Paths.get("target", "jmh-import");
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"1000"})
+    public int batchSize;
+
+    private ConfigurableApplicationContext context;
+    private MotorVehicleImporter motorVehicleImporter;
+    private Path csv;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Files.copy(Paths.get("data", "myDB.mv.db"), DIRECTORY.resolve("myDB.mv.db"), StandardCopyOption.REPLACE_EXISTING);
+        csv = DIRECTORY.resolve("motorvehicles-" + rows + ".csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("Make,Model,Generation,Trim / Version,Date from,Date to,New price,Power,Torque,Fuel capacity,"
+                    + "Engine size,Cylinders,Valves,Fuel type,Transmission,Gearbox,Country\n");
+            for (int i = 0; i < rows; i++) {
+                writer.write((i % 3 == 0) ? "BMW,X6," : (i % 3 == 1) ? "BMW,3-Series," : "Toyota,Prius,");
+                writer.write("\"Saloon " + (2000 + i % 20) + " specs\",\"Trim " + i + " 4d\",Jan " + (2000 + i % 20) + ",Now,\"£"
+                        + (20000 + i % 30000) + "\"," + (100 + i % 300) + "," + (200 + i % 400) + ",50," + (1500 + i % 2000)
+                        + ",4,16,Petrol,Automatic,6 Speed,Germany\n");
+            }
+        }
+        context = BenchmarkApplication.start("spring.datasource.url=jdbc:h2:file:./" + DIRECTORY.resolve("myDB").toString().replace('\\', '/') + ";MODE=MySQL",
+                "motorvehicle.import.batch-size=" + batchSize, "logging.level.au.com.formis=info");
+        motorVehicleImporter = context.getBean(MotorVehicleImporter.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int importCsv() throws Exception {
+        try (Reader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            return motorVehicleImporter.importCsv(reader).getRecords();
+        }
+    }
+}
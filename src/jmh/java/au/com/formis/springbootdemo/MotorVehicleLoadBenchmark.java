@@ -0,0 +1,109 @@
+package au.com.formis.springbootdemo;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Throughput of the /motorVehicles endpoints over HTTP with 1024 concurrent blocking clients, with the
+ * handlers run on the Tomcat threads (async=false) or on the motorVehicleTaskExecutor (async=true).</p>
+ * <p></p>
+ * <p>Each JMH thread is one client sending its next request as soon as the previous response arrives.
+ * The response cache is off so every request reaches the MotorVehicleStore. Tomcat keeps its default 200
+ * worker threads, so with async=false at most 200 requests are in progress and the remaining clients wait
+ * for a worker.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @since       0.1
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(1024)
+@Fork(1)
+public class MotorVehicleLoadBenchmark {
+
+    private static final String[] QUERIES = {
+            "/motorVehicles?make=BMW&model=X6",
+            "/motorVehicles?make=BMW&model=3-Series&generation=Saloon+2005",
+            "/motorVehicles?make=BMW&power=150..250&cylinders=6",
+            "/motorVehicles?make=Toyota&limit=20&sort=power,desc",
+            "/motorVehicles/aggregations?make=BMW"
+    };
+
+    @Param({"catalog", "jpa"})
+    public String store;
+
+    @Param({"false", "true"})
+    public boolean async;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private URI[] uris;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("motorvehicle.store=" + store, "motorvehicle.async.enabled=" + async,
+                "motorvehicle.response-cache.enabled=false");
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        uris = new URI[QUERIES.length];
+        for (int i = 0; i < QUERIES.length; i++) {
+            uris[i] = URI.create("http://localhost:" + port + QUERIES[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int mixedQueries(ClientState clientState) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(uris[clientState.next(uris.length)]).GET().build();
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("HTTP " + response.statusCode() + " from " + request.uri());
+        }
+        return response.body().length;
+    }
+
+    /**
+     * <p>Per client position in the query mix.</p>
+     */
+    @State(Scope.Thread)
+    public static class ClientState {
+
+        private int query;
+
+        int next(int queries) {
+            query = (query + 1) % queries;
+            return query;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package au.com.formis.springbootdemo;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Average time of the MotorVehicleRepository JPQL queries against data/myDB, and of the same queries
+ * through each MotorVehicleStore, including selective and non-selective range filters.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleRepository
+ * @see au.com.formis.springbootdemo.MotorVehicleStore
+ * @since       0.1
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MotorVehicleRepositoryBenchmark {
+
+    @Param({"catalog", "jpa"})
+    public String store;
+
+    private ConfigurableApplicationContext context;
+    private MotorVehicleRepository repository;
+    private MotorVehicleStore motorVehicleStore;
+
+    private final MotorVehicleQuery selectiveRange = MotorVehicleQuery.byMake("BMW")
+            .withRanges(List.of(MotorVehicleRange.parse("power", "400..")));
+    private final MotorVehicleQuery nonSelectiveRange = MotorVehicleQuery.byMake("BMW")
+            .withRanges(List.of(MotorVehicleRange.parse("power", "0..")));
+    private final MotorVehicleQuery combinedRanges = MotorVehicleQuery.byMake("BMW")
+            .withRanges(List.of(MotorVehicleRange.parse("power", "150..250"), MotorVehicleRange.parse("cylinders", "6")));
+    private final List<MotorVehicleQuery> batch = List.of(MotorVehicleQuery.byMakeAndModel("BMW", "X6"),
+            MotorVehicleQuery.byMakeAndModel("BMW", "3-Series"), MotorVehicleQuery.byMakeAndModelAndGeneration("Toyota", "Prius", "saloon"));
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("motorvehicle.store=" + store);
+        repository = context.getBean(MotorVehicleRepository.class);
+        motorVehicleStore = context.getBean(MotorVehicleStore.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<MotorVehicle> repositoryByMake() {
+        return repository.findMotorVehiclesByMake("BMW");
+    }
+
+    @Benchmark
+    public List<MotorVehicle> repositoryByMakeAndModel() {
+        return repository.findMotorVehiclesByMakeAndModel("BMW", "X6");
+    }
+
+    @Benchmark
+    public List<MotorVehicle> repositoryByMakeAndModelAndGenerationContains() {
+        return repository.findMotorVehiclesByMakeAndModelAndGenerationContains("BMW", "3-Series", "Saloon 2005");
+    }
+
+    @Benchmark
+    public List<MotorVehicle> storeByMake() {
+        return motorVehicleStore.findMotorVehiclesByMake("BMW");
+    }
+
+    @Benchmark
+    public List<MotorVehicle> storeByMakeAndModelAndGenerationContains() {
+        return motorVehicleStore.findMotorVehiclesByMakeAndModelAndGenerationContains("BMW", "3-Series", "Saloon 2005");
+    }
+
+    @Benchmark
+    public List<MotorVehicle> storeSelectiveRange() {
+        return motorVehicleStore.find(selectiveRange);
+    }
+
+    @Benchmark
+    public List<MotorVehicle> storeNonSelectiveRange() {
+        return motorVehicleStore.find(nonSelectiveRange);
+    }
+
+    @Benchmark
+    public List<MotorVehicle> storeCombinedRanges() {
+        return motorVehicleStore.find(combinedRanges);
+    }
+
+    @Benchmark
+    public Object storeBatch() {
+        return motorVehicleStore.findAll(batch);
+    }
+
+    @Benchmark
+    public MotorVehicleAggregations storeAggregations() {
+        return motorVehicleStore.aggregate(MotorVehicleQuery.byMake("BMW"));
+    }
+}
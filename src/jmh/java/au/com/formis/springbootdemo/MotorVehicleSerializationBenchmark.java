@@ -0,0 +1,72 @@
+package au.com.formis.springbootdemo;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Average time to serialize an ApiResponsePayload of MotorVehicle entities read from data/myDB, with the
+ * application ObjectMapper with and without indent_output and with MotorVehicleResponseWriter.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.ApiResponsePayload
+ * @see au.com.formis.springbootdemo.MotorVehicleResponseWriter
+ * @since       0.1
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MotorVehicleSerializationBenchmark {
+
+    @Param({"false", "true"})
+    public boolean indentOutput;
+
+    private ObjectMapper objectMapper;
+    private MotorVehicleResponseWriter responseWriter;
+    private ApiResponsePayload<MotorVehicle> payload;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start("motorvehicle.store=jpa")) {
+            ObjectMapper applicationMapper = context.getBean(ObjectMapper.class);
+            objectMapper = applicationMapper.copy().configure(SerializationFeature.INDENT_OUTPUT, indentOutput);
+            responseWriter = new MotorVehicleResponseWriter(applicationMapper, context.getBean(Jackson2ObjectMapperBuilder.class));
+            List<MotorVehicle> vehicles = context.getBean(MotorVehicleRepository.class).findMotorVehiclesByMake("BMW");
+            payload = new ApiResponsePayload<>("Spring Boot Demo Service", "Motor vehicle data set",
+                    "http://localhost/motorVehicles?make=BMW", vehicles);
+        }
+    }
+
+    @Benchmark
+    public byte[] objectMapper() throws IOException {
+        return objectMapper.writeValueAsBytes(payload);
+    }
+
+    @Benchmark
+    public byte[] responseWriter() throws IOException {
+        return responseWriter.write(payload, indentOutput);
+    }
+}
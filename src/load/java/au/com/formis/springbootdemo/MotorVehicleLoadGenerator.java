@@ -0,0 +1,337 @@
+package au.com.formis.springbootdemo;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Load generator for the /motorVehicles REST API with a latency SLO gate, run by the load Maven
+ * profile against an application it starts on load.port, or against any running instance.</p>
+ * <p></p>
+ * <p>The query mix is built from the dataset itself through the /motorVehicles/completions endpoints:
+ * make, make+model and make+model+generation queries in the load.mix proportions. Within each kind a
+ * query is picked with a probability proportional to its row count, so popular makes and models are
+ * queried more often, and generation queries search for the first word of a generation as a user would
+ * type it. Each client thread draws from its own random generator seeded from load.seed, so a run can be
+ * replayed.</p>
+ * <p>By default each of load.threads clients sends its next request when the previous response arrives
+ * (closed loop). With load.rate the clients together send that many requests per second on a fixed
+ * schedule and latency is measured from the scheduled send time, so a stalled server is charged for the
+ * requests it held up rather than hiding them (coordinated omission).</p>
+ * <p>Latencies are recorded in microseconds in HdrHistograms, per query kind and overall, after
+ * load.warmup-seconds of warm up. The report with throughput and p50/p99/p99.9 is written to
+ * target/load/report.txt and the full percentile distribution to target/load/latency.hgrm.</p>
+ * <p>A budget in milliseconds can be set for p50, p99 and p99.9 and a maximum error rate. Run with the
+ * check argument it reads the verdict of the previous run and exits with status 1 if a budget was exceeded,
+ * which the load profile does in the verify phase, after the application was stopped.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleLoadGenerator {
+
+    private static final Path OUTPUT = Path.of("target", "load");
+    private static final Path VERDICT = OUTPUT.resolve("slo-violations.txt");
+
+    private static final String[] KINDS = {"make", "model", "generation"};
+
+    private final String url;
+    private final int threads;
+    private final int warmupSeconds;
+    private final int durationSeconds;
+    private final double rate;
+    private final long seed;
+    private final double[] mix;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).connectTimeout(Duration.ofSeconds(10)).build();
+
+    private MotorVehicleLoadGenerator() {
+        url = System.getProperty("load.url", "http://localhost:8090");
+        threads = Integer.getInteger("load.threads", 32);
+        warmupSeconds = Integer.getInteger("load.warmup-seconds", 10);
+        durationSeconds = Integer.getInteger("load.duration-seconds", 30);
+        rate = Double.parseDouble(System.getProperty("load.rate", "0"));
+        seed = Long.getLong("load.seed", 1);
+        mix = mix(System.getProperty("load.mix", "make:20,model:50,generation:30"));
+    }
+
+    /**
+     * @param args Empty to run the load test, check to fail on the verdict of the previous run.
+     * @throws IOException If the verdict cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("check")) {
+            if (Files.exists(VERDICT)) {
+                System.err.print(Files.readString(VERDICT));
+                System.exit(1);
+            }
+            return;
+        }
+        Files.createDirectories(OUTPUT);
+        Files.deleteIfExists(VERDICT);
+        try {
+            new MotorVehicleLoadGenerator().run();
+        } catch (Exception e) {
+            // Failing here would skip stopping the application, the check run fails the build instead.
+            e.printStackTrace();
+            Files.writeString(VERDICT, "Load test failed: " + e + "\n");
+        }
+    }
+
+    private void run() throws Exception {
+        Workload workload = workload();
+        long start = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Client>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Client client = new Client(workload, new SplittableRandom(seed + i), start + i * interval() / threads);
+            futures.add(executor.submit(() -> client.run(measureFrom, end)));
+        }
+        Histogram all = histogram();
+        Histogram[] kinds = {histogram(), histogram(), histogram()};
+        long errors = 0;
+        for (Future<Client> future : futures) {
+            Client client = future.get();
+            for (int kind = 0; kind < KINDS.length; kind++) {
+                kinds[kind].add(client.latencies[kind]);
+                all.add(client.latencies[kind]);
+            }
+            errors += client.errors;
+        }
+        executor.shutdown();
+        report(all, kinds, errors);
+    }
+
+    /**
+     * @return Nanoseconds between two requests of a client at load.rate, 0 for a closed loop.
+     */
+    private long interval() {
+        return (rate > 0) ? (long) (threads * 1e9 / rate) : 0;
+    }
+
+    private Workload workload() throws IOException, InterruptedException {
+        Workload workload = new Workload();
+        for (JsonNode make : completions("/motorVehicles/completions/make?limit=100")) {
+            String makeValue = make.get("value").asText();
+            workload.add(0, "make=" + encode(makeValue), make.get("count").asLong());
+            for (JsonNode model : completions("/motorVehicles/completions/model?limit=100&make=" + encode(makeValue))) {
+                String modelValue = model.get("value").asText();
+                String makeAndModel = "make=" + encode(makeValue) + "&model=" + encode(modelValue);
+                workload.add(1, makeAndModel, model.get("count").asLong());
+                Map<String, Long> words = new LinkedHashMap<>();
+                for (JsonNode generation : completions("/motorVehicles/completions/generation?limit=100&" + makeAndModel)) {
+                    String word = generation.get("value").asText().split(" ")[0].toLowerCase(Locale.ROOT);
+                    words.merge(word, generation.get("count").asLong(), Long::sum);
+                }
+                words.forEach((word, count) -> workload.add(2, makeAndModel + "&generation=" + encode(word), count));
+            }
+        }
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            if (mix[kind] > 0 && workload.queries.get(kind).isEmpty()) {
+                throw new IllegalStateException("No " + KINDS[kind] + " queries can be built from " + url);
+            }
+        }
+        return workload;
+    }
+
+    private Iterable<JsonNode> completions(String path) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(URI.create(url + path)).GET().build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() == 404) {
+            return List.of();
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("HTTP " + response.statusCode() + " from " + url + path);
+        }
+        return new ObjectMapper().readTree(response.body()).get("payload");
+    }
+
+    private void report(Histogram all, Histogram[] kinds, long errors) throws IOException {
+        long requests = all.getTotalCount();
+        var report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "%d threads, %s, %d s after %d s warm up against %s%n", threads,
+                (rate > 0) ? String.format(Locale.ROOT, "%.0f requests/s", rate) : "closed loop", durationSeconds, warmupSeconds, url));
+        report.append(String.format(Locale.ROOT, "%d requests, %d errors, %.1f requests/s%n", requests, errors, (double) requests / durationSeconds));
+        report.append(String.format(Locale.ROOT, "%-10s %8s %9s %9s %9s %9s%n", "ms", "requests", "p50", "p99", "p99.9", "max"));
+        for (int kind = 0; kind < KINDS.length; kind++) {
+            report.append(line(KINDS[kind], kinds[kind]));
+        }
+        report.append(line("all", all));
+        List<String> violations = new ArrayList<>();
+        budget(violations, "p50", all, 50.0);
+        budget(violations, "p99", all, 99.0);
+        budget(violations, "p99.9", all, 99.9);
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.max-error-rate", "0"));
+        double errorRate = (requests == 0) ? 1 : (double) errors / requests;
+        if (errorRate > maxErrorRate) {
+            violations.add(String.format(Locale.ROOT, "error rate %.4f exceeds %.4f", errorRate, maxErrorRate));
+        }
+        report.append(violations.isEmpty() ? "Latency budgets met\n" : "Latency budgets exceeded: " + String.join(", ", violations) + "\n");
+        System.out.print(report);
+        Files.writeString(OUTPUT.resolve("report.txt"), report);
+        try (PrintStream hgrm = new PrintStream(Files.newOutputStream(OUTPUT.resolve("latency.hgrm")), false, StandardCharsets.UTF_8)) {
+            // Recorded in microseconds, written in milliseconds.
+            all.outputPercentileDistribution(hgrm, 1000.0);
+        }
+        if (!violations.isEmpty()) {
+            Files.writeString(VERDICT, "Latency budgets exceeded: " + String.join(", ", violations) + "\n");
+        }
+    }
+
+    private static String line(String name, Histogram histogram) {
+        return String.format(Locale.ROOT, "%-10s %8d %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50.0) / 1000.0, histogram.getValueAtPercentile(99.0) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0, histogram.getMaxValue() / 1000.0);
+    }
+
+    /**
+     * <p>Checks the load.&lt;percentile&gt;-budget-ms property, for example load.p99-budget-ms, 0 or unset for none.</p>
+     */
+    private static void budget(List<String> violations, String percentile, Histogram histogram, double value) {
+        double budget = Double.parseDouble(System.getProperty("load." + percentile + "-budget-ms", "0"));
+        double millis = histogram.getValueAtPercentile(value) / 1000.0;
+        if (budget > 0 && millis > budget) {
+            violations.add(String.format(Locale.ROOT, "%s %.2f ms exceeds %.2f ms", percentile, millis, budget));
+        }
+    }
+
+    private static Histogram histogram() {
+        // Auto resizing, 3 significant digits.
+        Histogram histogram = new Histogram(3);
+        histogram.setAutoResize(true);
+        return histogram;
+    }
+
+    private static double[] mix(String mix) {
+        double[] weights = new double[KINDS.length];
+        for (String entry : mix.split(",")) {
+            String[] kindAndWeight = entry.split(":");
+            int kind = Arrays.asList(KINDS).indexOf(kindAndWeight[0].trim());
+            if (kind < 0 || kindAndWeight.length != 2) {
+                throw new IllegalArgumentException("load.mix entries are make, model or generation with a weight, for example make:20");
+            }
+            weights[kind] = Double.parseDouble(kindAndWeight[1].trim());
+        }
+        return weights;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * <p>The queries of each kind with their cumulative row count weights.</p>
+     */
+    private final class Workload {
+
+        private final List<List<URI>> queries = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        private final List<List<Long>> cumulativeCounts = List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+        private void add(int kind, String parameters, long count) {
+            List<Long> counts = cumulativeCounts.get(kind);
+            counts.add((counts.isEmpty() ? 0 : counts.get(counts.size() - 1)) + count);
+            queries.get(kind).add(URI.create(url + "/motorVehicles?" + parameters));
+        }
+
+        private int kind(SplittableRandom random) {
+            double pick = random.nextDouble() * (mix[0] + mix[1] + mix[2]);
+            return (pick < mix[0]) ? 0 : (pick < mix[0] + mix[1]) ? 1 : 2;
+        }
+
+        private URI query(int kind, SplittableRandom random) {
+            List<Long> counts = cumulativeCounts.get(kind);
+            long pick = random.nextLong(counts.get(counts.size() - 1));
+            int low = 0;
+            int high = counts.size() - 1;
+            // First query whose cumulative count is above the pick.
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (counts.get(middle) > pick) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return queries.get(kind).get(low);
+        }
+    }
+
+    /**
+     * <p>One client thread and the latencies it recorded.</p>
+     */
+    private final class Client {
+
+        private final Workload workload;
+        private final SplittableRandom random;
+        private final Histogram[] latencies = {histogram(), histogram(), histogram()};
+        private long next;
+        private long errors;
+
+        private Client(Workload workload, SplittableRandom random, long first) {
+            this.workload = workload;
+            this.random = random;
+            this.next = first;
+        }
+
+        private Client run(long measureFrom, long end) {
+            long interval = interval();
+            while (true) {
+                long scheduled = (interval > 0) ? next : System.nanoTime();
+                if (scheduled >= end) {
+                    return this;
+                }
+                for (long wait = scheduled - System.nanoTime(); wait > 0; wait = scheduled - System.nanoTime()) {
+                    LockSupport.parkNanos(wait);
+                }
+                int kind = workload.kind(random);
+                boolean ok;
+                try {
+                    HttpResponse<Void> response = client.send(HttpRequest.newBuilder(workload.query(kind, random)).GET().build(),
+                            HttpResponse.BodyHandlers.discarding());
+                    ok = response.statusCode() == 200;
+                } catch (IOException e) {
+                    ok = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return this;
+                }
+                long now = System.nanoTime();
+                if (scheduled >= measureFrom) {
+                    latencies[kind].recordValue(TimeUnit.NANOSECONDS.toMicros(now - scheduled));
+                    if (!ok) {
+                        errors++;
+                    }
+                }
+                next += interval;
+            }
+        }
+    }
+}
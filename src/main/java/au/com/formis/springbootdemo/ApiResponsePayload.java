@@ -1,5 +1,6 @@
 package au.com.formis.springbootdemo;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.List;
 
 
@@ -15,6 +16,9 @@ import java.util.List;
  * <p></p>
  * <p>The class uses generic &lt;T&gt; type to support a List of any entity type.</p>
  * <p></p>
+ * <p>When the query is paged and more records follow, nextCursor holds the token to pass as the cursor
+ * query parameter to fetch the next page. It is left out of the JSON when there are no more records.</p>
+ * <p></p>
  * <p>
  * @since       0.1
  * </p>
@@ -26,6 +30,7 @@ public class ApiResponsePayload<T> {
     private final String payloadURL;
     private final int numberOfRecords;
     private final List<T> payload;
+    private final String nextCursor;
 
     /**
      * <p>ApiResponsePayload constructor. Fetches the size of the List of entities and adds a
@@ -37,11 +42,25 @@ public class ApiResponsePayload<T> {
      * @param payload List of payload entities of type &lt;T&gt;
      */
     public ApiResponsePayload(String publisher, String payloadDescription, String payloadURL, List<T> payload) {
+        this(publisher, payloadDescription, payloadURL, payload, null);
+    }
+
+    /**
+     * <p>ApiResponsePayload constructor for a page of a paged query.</p>
+     * <p></p>
+     * @param publisher Payload publisher metadata.
+     * @param payloadDescription Payload description metadata.
+     * @param payloadURL Payload request URL metadata.
+     * @param payload List of payload entities of type &lt;T&gt;
+     * @param nextCursor Cursor token for the next page, null if this is the last page.
+     */
+    public ApiResponsePayload(String publisher, String payloadDescription, String payloadURL, List<T> payload, String nextCursor) {
         this.publisher = publisher;
         this.payloadDescription = payloadDescription;
         this.payloadURL = payloadURL;
         this.payload = payload;
         this.numberOfRecords = (this.payload == null) ? 0 : this.payload.size();
+        this.nextCursor = nextCursor;
     }
 
     public String getPublisher() {
@@ -63,4 +82,9 @@ public class ApiResponsePayload<T> {
     public List<T> getPayload() {
         return payload;
     }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getNextCursor() {
+        return nextCursor;
+    }
 }
@@ -0,0 +1,110 @@
+package au.com.formis.springbootdemo;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>A sorted index over an int column, used for range (between) searches.</p>
+ * <p></p>
+ * <p>The row numbers are held ordered by column value then row, next to a parallel array of the sorted
+ * values. The rows with a value between min and max inclusive are a contiguous slice found with two
+ * binary searches, so counting the matches costs O(log n) and reading them costs O(log n + matches)
+ * instead of a scan of every row.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleColumns
+ * @since       0.1
+ * </p>
+ */
+final class IntRangeIndex {
+
+    private final int[] values;
+    private final int[] rows;
+
+    private IntRangeIndex(int[] values, int[] rows) {
+        this.values = values;
+        this.rows = rows;
+    }
+
+    /**
+     * @param column Column values indexed by row number.
+     * @return A new sorted index over the column.
+     */
+    static IntRangeIndex build(IntBuffer column) {
+        // Pack (value, row) into a long so a primitive sort orders by value then row.
+        long[] keyed = new long[column.limit()];
+        for (int row = 0; row < keyed.length; row++) {
+            keyed[row] = ((long) column.get(row) << 32) | row;
+        }
+        Arrays.sort(keyed);
+        int[] values = new int[keyed.length];
+        int[] rows = new int[keyed.length];
+        for (int i = 0; i < keyed.length; i++) {
+            values[i] = (int) (keyed[i] >> 32);
+            rows[i] = (int) keyed[i];
+        }
+        return new IntRangeIndex(values, rows);
+    }
+
+    /**
+     * @param min Smallest value, inclusive.
+     * @param max Largest value, inclusive.
+     * @return Number of rows with a value between min and max.
+     */
+    int count(int min, int max) {
+        return Math.max(0, upperBound(max) - lowerBound(min));
+    }
+
+    /**
+     * @param min Smallest value, inclusive.
+     * @param max Largest value, inclusive.
+     * @return Ascending row numbers with a value between min and max.
+     */
+    int[] rows(int min, int max) {
+        int from = lowerBound(min);
+        int to = upperBound(max);
+        if (from >= to) {
+            return RowSets.EMPTY;
+        }
+        int[] slice = Arrays.copyOfRange(rows, from, to);
+        Arrays.sort(slice);
+        return slice;
+    }
+
+    /**
+     * @return Position of the first value greater than or equal to min.
+     */
+    private int lowerBound(int min) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < min) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Position after the last value less than or equal to max.
+     */
+    private int upperBound(int max) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= max) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
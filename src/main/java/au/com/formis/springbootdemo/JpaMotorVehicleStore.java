@@ -0,0 +1,377 @@
+package au.com.formis.springbootdemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>MotorVehicleStore that sends every query to the database through the MotorVehicleRepository.</p>
+ * <p></p>
+ * <p>Enabled with <code>motorvehicle.store=jpa</code>. Kept as the reference implementation to
+ * compare the in-memory MotorVehicleCatalog against.</p>
+ * <p></p>
+ * <p>Every method runs in a read only transaction, routed to a MotorVehicleReplicas replica when
+ * motorvehicle.replicas.count is set, and letting Hibernate skip dirty checking.</p>
+ * <p></p>
+ * <p>forEachMotorVehicle uses the repository Stream queries inside its read only transaction and detaches
+ * each entity once it has been visited so the persistence context does not grow with the result set.</p>
+ * <p></p>
+ * <p>Paged queries are built with the JPA Criteria API: the keyset condition
+ * <code>(key &gt; :afterKey) or (key = :afterKey and id &gt; :afterId)</code> is added to the query
+ * predicates, results are ordered by sort key then id and the page limit is applied with setMaxResults,
+ * so the database never has to skip OFFSET rows. Queries with MotorVehicleRange filters use the same
+ * Criteria API path with a between predicate on the int key attribute of each range.</p>
+ * <p></p>
+ * <p>Projected finds select only the id, the page sort key and the requested columns in a multiselect Criteria
+ * query returning Object[] rows, so no entity is hydrated or put in the persistence context.</p>
+ * <p></p>
+ * <p>search turns every filter into a Criteria API predicate and leaves the choice of index to the database, its
+ * plan only lists the filtered fields.</p>
+ * <p></p>
+ * <p>findAll resolves a batch of queries with a single IN query over the distinct makes (and models),
+ * then assigns each returned entity to the batch queries it matches in memory.</p>
+ * <p></p>
+ * <p>aggregate runs one GROUP BY fuelType, transmission, country query returning the row count and the
+ * min, max and sum of each numeric attribute per group, then rolls the few groups up into the facet
+ * counts and statistics.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleStore
+ * @see au.com.formis.springbootdemo.MotorVehicleRepository
+ * @since       0.1
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "motorvehicle.store", havingValue = "jpa")
+@Transactional(readOnly = true)
+public class JpaMotorVehicleStore implements MotorVehicleStore {
+
+    private final MotorVehicleRepository motorVehicleRepository;
+    private final EntityManager entityManager;
+
+    public JpaMotorVehicleStore(MotorVehicleRepository motorVehicleRepository, EntityManager entityManager) {
+        this.motorVehicleRepository = motorVehicleRepository;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<MotorVehicle> findMotorVehiclesByMake(String make) {
+        return motorVehicleRepository.findMotorVehiclesByMake(make);
+    }
+
+    @Override
+    public List<MotorVehicle> findMotorVehiclesByMakeAndModel(String make, String model) {
+        return motorVehicleRepository.findMotorVehiclesByMakeAndModel(make, model);
+    }
+
+    @Override
+    public List<MotorVehicle> findMotorVehiclesByMakeAndModelAndGenerationContains(String make, String model, String generation) {
+        return motorVehicleRepository.findMotorVehiclesByMakeAndModelAndGenerationContains(make, model, generation);
+    }
+
+    @Override
+    public List<MotorVehicle> find(MotorVehicleQuery query) {
+        if (query.isPaged()) {
+            return findPage(query);
+        }
+        if (query.hasRanges()) {
+            return entityManager.createQuery(criteria(query)).getResultList();
+        }
+        if (query.hasGeneration()) {
+            return findMotorVehiclesByMakeAndModelAndGenerationContains(query.getMake(), query.getModel(), query.getGeneration());
+        }
+        if (query.hasModel()) {
+            return findMotorVehiclesByMakeAndModel(query.getMake(), query.getModel());
+        }
+        return findMotorVehiclesByMake(query.getMake());
+    }
+
+    @Override
+    public List<MotorVehicleProjection> find(MotorVehicleQuery query, MotorVehicleFields fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> criteria = cb.createQuery(Object[].class);
+        Root<MotorVehicle> vehicle = criteria.from(MotorVehicle.class);
+        MotorVehicleSort sort = query.isPaged() ? query.getPage().getSort() : null;
+        List<Selection<?>> selections = new ArrayList<>();
+        selections.add(vehicle.get("id"));
+        if (sort != null) {
+            selections.add(vehicle.get(sort.getAttribute()));
+        }
+        int first = selections.size();
+        for (String name : fields.getNames()) {
+            selections.add(vehicle.get(name));
+        }
+        criteria.multiselect(selections);
+        var typedQuery = entityManager.createQuery(criteria(cb, criteria, vehicle, predicates(cb, vehicle, query), query.getPage()));
+        if (query.isPaged()) {
+            typedQuery.setMaxResults(query.getPage().getLimit());
+        }
+        List<Object[]> rows = typedQuery.getResultList();
+        List<MotorVehicleProjection> projections = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            projections.add(new MotorVehicleProjection(fields, ((Number) row[0]).longValue(), (sort == null) ? 0 : ((Number) row[1]).intValue(),
+                    Arrays.copyOfRange(row, first, row.length)));
+        }
+        return projections;
+    }
+
+    @Override
+    public MotorVehicleSearch.Result search(MotorVehicleSearch search) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<MotorVehicle> criteria = cb.createQuery(MotorVehicle.class);
+        Root<MotorVehicle> vehicle = criteria.from(MotorVehicle.class);
+        List<Predicate> predicates = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        search.getEquals().forEach((field, value) -> {
+            predicates.add(cb.equal(vehicle.get(field), value));
+            fields.add(field);
+        });
+        search.getContains().forEach((field, value) -> {
+            Expression<String> lowerCase = field.equals("generation") ? vehicle.get("generationLower") : cb.lower(vehicle.get(field));
+            predicates.add(contains(cb, lowerCase, value));
+            fields.add(field);
+        });
+        for (MotorVehicleRange range : search.getRanges()) {
+            predicates.add(cb.between(vehicle.get(range.getKeyAttribute()), range.getMin(), range.getMax()));
+            fields.add(range.getAttribute());
+        }
+        var query = entityManager.createQuery(criteria(cb, criteria, vehicle, predicates, search.getPage()));
+        if (search.isPaged()) {
+            query.setMaxResults(search.getPage().getLimit());
+        }
+        List<MotorVehicle> vehicles = query.getResultList();
+        // The access paths are chosen by the database, see the motorvehicle_make_model_generation index.
+        return new MotorVehicleSearch.Result(vehicles, "database " + String.join("+", fields) + " -> " + vehicles.size());
+    }
+
+    @Override
+    public Map<MotorVehicleQuery, List<MotorVehicle>> findAll(Collection<MotorVehicleQuery> queries) {
+        Map<MotorVehicleQuery, List<MotorVehicle>> results = new LinkedHashMap<>();
+        Set<String> makes = new LinkedHashSet<>();
+        Set<String> models = new LinkedHashSet<>();
+        boolean allHaveModel = true;
+        for (MotorVehicleQuery query : queries) {
+            results.put(query, new ArrayList<>());
+            makes.add(query.getMake());
+            if (query.hasModel()) {
+                models.add(query.getModel());
+            } else {
+                allHaveModel = false;
+            }
+        }
+        if (results.isEmpty()) {
+            return results;
+        }
+        List<MotorVehicle> candidates = allHaveModel
+                ? motorVehicleRepository.findMotorVehiclesByMakeInAndModelIn(makes, models)
+                : motorVehicleRepository.findMotorVehiclesByMakeIn(makes);
+        // Group the queries by make so each candidate is only tested against queries for its make.
+        Map<String, List<MotorVehicleQuery>> queriesByMake = new LinkedHashMap<>();
+        results.keySet().forEach(query -> queriesByMake.computeIfAbsent(query.getMake(), make -> new ArrayList<>()).add(query));
+        for (MotorVehicle vehicle : candidates) {
+            for (MotorVehicleQuery query : queriesByMake.getOrDefault(vehicle.getMake(), List.of())) {
+                if (matches(query, vehicle)) {
+                    results.get(query).add(vehicle);
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public MotorVehicleAggregations aggregate(MotorVehicleQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteria = cb.createTupleQuery();
+        Root<MotorVehicle> vehicle = criteria.from(MotorVehicle.class);
+        List<Expression<?>> groups = new ArrayList<>();
+        for (String facet : MotorVehicleAggregations.FACETS) {
+            groups.add(vehicle.get(facet));
+        }
+        List<Selection<?>> selections = new ArrayList<>(groups);
+        selections.add(cb.count(vehicle));
+        for (String attribute : MotorVehicleAggregations.STATISTICS) {
+            Path<Integer> value = vehicle.get(attribute);
+            selections.add(cb.min(value));
+            selections.add(cb.max(value));
+            selections.add(cb.sumAsLong(value));
+        }
+        criteria.multiselect(selections).where(predicates(cb, vehicle, query).toArray(new Predicate[0])).groupBy(groups);
+
+        int facetCount = MotorVehicleAggregations.FACETS.size();
+        int statisticCount = MotorVehicleAggregations.STATISTICS.size();
+        long numberOfRecords = 0;
+        List<Map<String, Long>> facetCounts = new ArrayList<>();
+        MotorVehicleAggregations.FACETS.forEach(facet -> facetCounts.add(new HashMap<>()));
+        long[] min = new long[statisticCount];
+        long[] max = new long[statisticCount];
+        long[] sum = new long[statisticCount];
+        for (Tuple group : entityManager.createQuery(criteria).getResultList()) {
+            long count = group.get(facetCount, Long.class);
+            for (int facet = 0; facet < facetCount; facet++) {
+                String value = (String) group.get(facet);
+                if (value != null) {
+                    facetCounts.get(facet).merge(value, count, Long::sum);
+                }
+            }
+            for (int statistic = 0; statistic < statisticCount; statistic++) {
+                int column = facetCount + 1 + 3 * statistic;
+                long groupMin = ((Number) group.get(column)).longValue();
+                long groupMax = ((Number) group.get(column + 1)).longValue();
+                min[statistic] = (numberOfRecords == 0) ? groupMin : Math.min(min[statistic], groupMin);
+                max[statistic] = (numberOfRecords == 0) ? groupMax : Math.max(max[statistic], groupMax);
+                sum[statistic] += ((Number) group.get(column + 2)).longValue();
+            }
+            numberOfRecords += count;
+        }
+        Map<String, Map<String, Long>> facets = new HashMap<>();
+        for (int facet = 0; facet < facetCount; facet++) {
+            facets.put(MotorVehicleAggregations.FACETS.get(facet), facetCounts.get(facet));
+        }
+        Map<String, MotorVehicleAggregations.NumericStatistics> statistics = new HashMap<>();
+        for (int statistic = 0; statistic < statisticCount; statistic++) {
+            statistics.put(MotorVehicleAggregations.STATISTICS.get(statistic),
+                    new MotorVehicleAggregations.NumericStatistics(numberOfRecords, min[statistic], max[statistic], sum[statistic]));
+        }
+        return new MotorVehicleAggregations(numberOfRecords, facets, statistics);
+    }
+
+    @Override
+    public int forEachMotorVehicle(MotorVehicleQuery query, Consumer<MotorVehicle> action) {
+        if (query.isPaged()) {
+            List<MotorVehicle> vehicles = findPage(query);
+            vehicles.forEach(action);
+            return vehicles.size();
+        }
+        int count = 0;
+        try (Stream<MotorVehicle> vehicles = stream(query)) {
+            for (var iterator = vehicles.iterator(); iterator.hasNext(); count++) {
+                MotorVehicle vehicle = iterator.next();
+                action.accept(vehicle);
+                entityManager.detach(vehicle);
+            }
+        }
+        return count;
+    }
+
+    private Stream<MotorVehicle> stream(MotorVehicleQuery query) {
+        if (query.hasRanges()) {
+            return entityManager.createQuery(criteria(query))
+                    .setHint(QueryHints.HINT_FETCH_SIZE, MotorVehicleRepository.STREAM_FETCH_SIZE).getResultStream();
+        }
+        if (query.hasGeneration()) {
+            return motorVehicleRepository.streamMotorVehiclesByMakeAndModelAndGenerationContains(query.getMake(), query.getModel(), query.getGeneration());
+        }
+        if (query.hasModel()) {
+            return motorVehicleRepository.streamMotorVehiclesByMakeAndModel(query.getMake(), query.getModel());
+        }
+        return motorVehicleRepository.streamMotorVehiclesByMake(query.getMake());
+    }
+
+    private List<MotorVehicle> findPage(MotorVehicleQuery query) {
+        return entityManager.createQuery(criteria(query)).setMaxResults(query.getPage().getLimit()).getResultList();
+    }
+
+    /**
+     * <p>Criteria query for a query with range filters or a page, ordered by id when there is no page sort.</p>
+     */
+    private CriteriaQuery<MotorVehicle> criteria(MotorVehicleQuery query) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<MotorVehicle> criteria = cb.createQuery(MotorVehicle.class);
+        Root<MotorVehicle> vehicle = criteria.from(MotorVehicle.class);
+        return criteria(cb, criteria, vehicle, predicates(cb, vehicle, query), query.getPage());
+    }
+
+    /**
+     * <p>Adds the predicates, the keyset condition and the page order to a Criteria query over vehicle, ordered by id
+     * when there is no page sort.</p>
+     */
+    private static <T> CriteriaQuery<T> criteria(CriteriaBuilder cb, CriteriaQuery<T> criteria, Root<MotorVehicle> vehicle, List<Predicate> predicates, MotorVehiclePage page) {
+        Path<Long> id = vehicle.get("id");
+        if (page == null) {
+            criteria.orderBy(cb.asc(id));
+        } else if (page.getSort() == null) {
+            if (page.hasCursor()) {
+                predicates.add(cb.greaterThan(id, page.getAfterId()));
+            }
+            criteria.orderBy(cb.asc(id));
+        } else {
+            Path<Integer> key = vehicle.get(page.getSort().getAttribute());
+            if (page.hasCursor()) {
+                predicates.add(page.isDescending()
+                        ? cb.or(cb.lessThan(key, page.getAfterKey()), cb.and(cb.equal(key, page.getAfterKey()), cb.lessThan(id, page.getAfterId())))
+                        : cb.or(cb.greaterThan(key, page.getAfterKey()), cb.and(cb.equal(key, page.getAfterKey()), cb.greaterThan(id, page.getAfterId()))));
+            }
+            criteria.orderBy(page.isDescending() ? List.of(cb.desc(key), cb.desc(id)) : List.of(cb.asc(key), cb.asc(id)));
+        }
+        return criteria.where(predicates.toArray(new Predicate[0]));
+    }
+
+    /**
+     * <p>In memory equivalent of the MotorVehicleRepository query for the query parameter permutation.</p>
+     */
+    private static boolean matches(MotorVehicleQuery query, MotorVehicle vehicle) {
+        if (!query.getMake().equals(vehicle.getMake())) {
+            return false;
+        }
+        if (query.hasModel() && !query.getModel().equals(vehicle.getModel())) {
+            return false;
+        }
+        if (query.hasGeneration() && (vehicle.getGeneration() == null
+                || !vehicle.getGeneration().toLowerCase(Locale.ROOT).contains(query.getGeneration().toLowerCase(Locale.ROOT)))) {
+            return false;
+        }
+        return query.matchesRanges(vehicle);
+    }
+
+    /**
+     * <p>Criteria API equivalent of the MotorVehicleRepository query for the query parameter permutation.</p>
+     */
+    private static List<Predicate> predicates(CriteriaBuilder cb, Root<MotorVehicle> vehicle, MotorVehicleQuery query) {
+        List<Predicate> predicates = new ArrayList<>();
+        predicates.add(cb.equal(vehicle.get("make"), query.getMake()));
+        if (query.hasModel()) {
+            predicates.add(cb.equal(vehicle.get("model"), query.getModel()));
+        }
+        if (query.hasGeneration()) {
+            predicates.add(contains(cb, vehicle.get("generationLower"), query.getGeneration().toLowerCase(Locale.ROOT)));
+        }
+        for (MotorVehicleRange range : query.getRanges()) {
+            predicates.add(cb.between(vehicle.get(range.getKeyAttribute()), range.getMin(), range.getMax()));
+        }
+        return predicates;
+    }
+
+    /**
+     * <p>Like predicate matching the value anywhere in the column, with the backslash, % and _ of the value escaped so
+     * they match literally as in the MotorVehicleCatalog.</p>
+     */
+    private static Predicate contains(CriteriaBuilder cb, Expression<String> column, String value) {
+        return cb.like(column, "%" + EscapeCharacter.DEFAULT.escape(value) + "%", EscapeCharacter.DEFAULT.getEscapeCharacter());
+    }
+}
@@ -1,10 +1,17 @@
 package au.com.formis.springbootdemo;
 
+import javax.persistence.Cacheable;
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Table;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.Immutable;
 
 /**
  * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
@@ -19,27 +26,94 @@ import javax.persistence.Id;
  * RDBMS instead of MOTOR_VEHICLE.</p>
  * <p></p>
  * <p>
- * The table PK ID column is auto incremented using the database for inserts
- * (ie: @GeneratedValue(strategy = GenerationType.IDENTITY).
+ * The table PK ID column is generated from the motorvehicle_seq sequence
+ * (ie: @GeneratedValue(strategy = GenerationType.SEQUENCE) with the pooled optimizer, so Hibernate fetches
+ * one sequence value per ID_ALLOCATION_SIZE new entities.
  * Optimisation tip : Using @GeneratedValue(strategy = GenerationType.IDENTITY) means
  * Hibernate must do an insert immediately to get primary key value which prevents optimisations
- * like JDBC batching.This is a demo so this approach  will suffice for now.
- * Using GenerationType.SEQUENCE allows Hibernate to decide when to do inserts for optimal performance,
- * for example when doing batch inserts.
+ * like JDBC batching. Using GenerationType.SEQUENCE allows Hibernate to decide when to do inserts for
+ * optimal performance, for example when doing batch inserts (hibernate.jdbc.batch_size).
+ * The sequence is created by the V2 Flyway migration and moved past the imported ids by the MotorVehicleImporter.
+ * </p>
+ * <p>
+ * dateFromMonth is a read only Hibernate formula exposing dateFrom as a sortable yyyymm int so JPQL
+ * queries can sort and page on production date. It has no getter and is not part of the JSON response,
+ * see MotorVehicleValues.yearMonthKey for the equivalent Java parsing. dateToMonth and newPriceValue do the
+ * same for dateTo and newPrice so JPQL queries can filter on production date and price ranges.
+ * </p>
+ * <p>
+ * generationLower maps the generation_lower column H2 computes as lower(generation), see the
+ * db/migration scripts. The generation contains queries compare against it instead of lower casing every
+ * row. It is read only and has no getter either.
+ * </p>
+ * <p>
+ * Entities are held in the read only motorvehicle region of the Hibernate second-level cache (Caffeine
+ * through JCache, bounded in application.conf) and the MotorVehicleRepository finders use the query cache.
+ * The entity is @Immutable, rows are only ever written with JDBC by the MotorVehicleImporter and the
+ * MotorVehicleWriter, which evict the cache, so with hibernate.cache.use_reference_entries the cache holds
+ * the entity instances themselves and a cache hit returns the same instance instead of building a new one.
+ * Entities read through JPA are shared between requests and must not be modified.
  * </p>
  * <p>
  * @see javax.persistence.Entity
  * @see javax.persistence.Id
  * @see javax.persistence.GeneratedValue
+ * @see javax.persistence.SequenceGenerator
+ * @see org.hibernate.annotations.Cache
+ * @see au.com.formis.springbootdemo.MotorVehicleImporter
  * @see <a href="https://www.baeldung.com/hibernate-identifiers">https://www.baeldung.com/hibernate-identifiers</a>
  * @since       0.1
  * </p>
  */
 @Entity
 @Table(name = "motorvehicle")
+@Immutable
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_ONLY, region = MotorVehicle.CACHE_REGION)
 public class MotorVehicle {
+
+    /**
+     * Second-level cache region of the entities.
+     */
+    public static final String CACHE_REGION = "motorvehicle";
+
+    /**
+     * Database sequence the id is generated from.
+     */
+    public static final String ID_SEQUENCE = "motorvehicle_seq";
+
+    /**
+     * Sequence increment, the number of ids the pooled optimizer hands out per sequence call.
+     */
+    public static final int ID_ALLOCATION_SIZE = 50;
+
+    /**
+     * SQL equivalent of MotorVehicleValues.yearMonthKey(dateFrom), "Jan 2019" becomes 201901 and anything
+     * not in "Mon yyyy" format becomes 0.
+     */
+    public static final String DATE_FROM_MONTH_SQL = "CASE WHEN REGEXP_LIKE(date_from, '^(Jan|Feb|Mar|Apr|May|Jun|Jul|Aug|Sep|Oct|Nov|Dec) [0-9]{4}$')"
+            + " THEN SUBSTRING(date_from, 5, 4) * 100 + (LOCATE(SUBSTRING(date_from, 1, 3), 'JanFebMarAprMayJunJulAugSepOctNovDec') + 2) / 3"
+            + " ELSE 0 END";
+
+    /**
+     * SQL equivalent of MotorVehicleValues.dateToKey(dateTo), as DATE_FROM_MONTH_SQL with "Now" becoming 999912.
+     */
+    public static final String DATE_TO_MONTH_SQL = "CASE WHEN date_to = 'Now' THEN 999912"
+            + " WHEN REGEXP_LIKE(date_to, '^(Jan|Feb|Mar|Apr|May|Jun|Jul|Aug|Sep|Oct|Nov|Dec) [0-9]{4}$')"
+            + " THEN SUBSTRING(date_to, 5, 4) * 100 + (LOCATE(SUBSTRING(date_to, 1, 3), 'JanFebMarAprMayJunJulAugSepOctNovDec') + 2) / 3"
+            + " ELSE 0 END";
+
+    /**
+     * SQL equivalent of MotorVehicleValues.priceKey(newPrice), "£35,860" becomes 35860 and a price without
+     * digits becomes 0.
+     */
+    public static final String NEW_PRICE_VALUE_SQL = "CASE WHEN REGEXP_LIKE(new_price, '^[^.]*[0-9]')"
+            + " THEN REGEXP_REPLACE(REGEXP_REPLACE(new_price, '[.].*$', ''), '[^0-9]', '') * 1"
+            + " ELSE 0 END";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = ID_SEQUENCE)
+    @SequenceGenerator(name = ID_SEQUENCE, sequenceName = ID_SEQUENCE, allocationSize = ID_ALLOCATION_SIZE)
     private Long id;
     private String make;
     private String model;
@@ -58,6 +132,14 @@ public class MotorVehicle {
     private String transmission;
     private String gearbox;
     private String country;
+    @Column(insertable = false, updatable = false)
+    private String generationLower;
+    @Formula(DATE_FROM_MONTH_SQL)
+    private int dateFromMonth;
+    @Formula(DATE_TO_MONTH_SQL)
+    private int dateToMonth;
+    @Formula(NEW_PRICE_VALUE_SQL)
+    private int newPriceValue;
 
     /**
      * MotorVehicle constructor.
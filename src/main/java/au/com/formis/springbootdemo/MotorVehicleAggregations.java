@@ -0,0 +1,117 @@
+package au.com.formis.springbootdemo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable facet counts and numeric statistics over the MotorVehicle rows matching a query, returned
+ * by the /motorVehicles/aggregations endpoint in place of the rows themselves.</p>
+ * <p></p>
+ * <p>Facets count the rows per distinct value of fuelType, transmission and country, ordered by count
+ * descending then value. Rows without a value are not counted so a facet total can be less than
+ * numberOfRecords. Statistics hold the count, min, max and average of power, torque, engineSize and
+ * fuelCapacity, min, max and average are left out when no rows match.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleStore
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleAggregations {
+
+    /**
+     * MotorVehicle attributes counted per value.
+     */
+    public static final List<String> FACETS = List.of("fuelType", "transmission", "country");
+
+    /**
+     * MotorVehicle int attributes summarised with min, max and average.
+     */
+    public static final List<String> STATISTICS = List.of("power", "torque", "engineSize", "fuelCapacity");
+
+    private final long numberOfRecords;
+    private final Map<String, Map<String, Long>> facets;
+    private final Map<String, NumericStatistics> statistics;
+
+    /**
+     * @param numberOfRecords Number of matching rows.
+     * @param facets Value counts keyed by FACETS attribute, in any order.
+     * @param statistics Statistics keyed by STATISTICS attribute.
+     */
+    MotorVehicleAggregations(long numberOfRecords, Map<String, Map<String, Long>> facets, Map<String, NumericStatistics> statistics) {
+        this.numberOfRecords = numberOfRecords;
+        this.facets = new LinkedHashMap<>();
+        for (String facet : FACETS) {
+            Map<String, Long> ordered = new LinkedHashMap<>();
+            facets.getOrDefault(facet, Map.of()).entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue(Comparator.reverseOrder()).thenComparing(Map.Entry.comparingByKey()))
+                    .forEach(entry -> ordered.put(entry.getKey(), entry.getValue()));
+            this.facets.put(facet, ordered);
+        }
+        this.statistics = new LinkedHashMap<>();
+        for (String attribute : STATISTICS) {
+            this.statistics.put(attribute, statistics.getOrDefault(attribute, NumericStatistics.EMPTY));
+        }
+    }
+
+    public long getNumberOfRecords() {
+        return numberOfRecords;
+    }
+
+    /**
+     * @return Value counts keyed by attribute then value.
+     */
+    public Map<String, Map<String, Long>> getFacets() {
+        return facets;
+    }
+
+    /**
+     * @return Numeric statistics keyed by attribute.
+     */
+    public Map<String, NumericStatistics> getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * <p>Count, min, max and average of an int attribute.</p>
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static final class NumericStatistics {
+
+        static final NumericStatistics EMPTY = new NumericStatistics(0, 0, 0, 0);
+
+        private final long count;
+        private final long min;
+        private final long max;
+        private final long sum;
+
+        NumericStatistics(long count, long min, long max, long sum) {
+            this.count = count;
+            this.min = (count == 0) ? 0 : min;
+            this.max = (count == 0) ? 0 : max;
+            this.sum = sum;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public Long getMin() {
+            return (count == 0) ? null : min;
+        }
+
+        public Long getMax() {
+            return (count == 0) ? null : max;
+        }
+
+        public Double getAverage() {
+            return (count == 0) ? null : (double) sum / count;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package au.com.formis.springbootdemo;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>One make/model(/generation) tuple of a /motorVehicles/batch request body.</p>
+ * <p></p>
+ * <p>The request body is a JSON array of tuples, for example</p>
+ * <pre>
+ * [{"make":"BMW","model":"X6"},{"make":"Toyota","model":"Prius","generation":"saloon"}]
+ * </pre>
+ * <p>make is required, model and generation are optional and follow the same rules as the
+ * /motorVehicles query parameters.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @since       0.1
+ * </p>
+ */
+public class MotorVehicleBatchItem {
+
+    private String make;
+    private String model;
+    private String generation;
+
+    public String getMake() {
+        return make;
+    }
+
+    public void setMake(String make) {
+        this.make = make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(String generation) {
+        this.generation = generation;
+    }
+
+    /**
+     * @return The equivalent MotorVehicleQuery.
+     * @throws IllegalArgumentException If make is missing.
+     */
+    public MotorVehicleQuery toQuery() {
+        if (make == null) {
+            throw new IllegalArgumentException("make is required for every batch query");
+        }
+        return MotorVehicleQuery.of(make, model, generation);
+    }
+}
@@ -0,0 +1,245 @@
+package au.com.formis.springbootdemo;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>In-memory MotorVehicleStore that answers REST API queries from a MotorVehicleColumns snapshot
+ * without a JDBC round trip.</p>
+ * <p></p>
+ * <p>The MOTORVEHICLE table only changes through the MotorVehicleImporter and MotorVehicleWriter, which
+ * hand the new rows to the catalog, so the whole table is read once through the MotorVehicleRepository at startup.
+ * The generation contains search uses the trigram index over the lower cased generation column,
+ * so its cost is proportional to the matching rows rather than every row for the make and model.
+ * Range filters are answered from the sorted int indexes, most selective first.
+ * Aggregations are computed in one pass over the dictionary codes and int columns of the matching rows.
+ * Projections only read the selected columns of the matching rows. Searches over any combination of
+ * filters are planned by MotorVehicleColumns.search, most selective index first.
+ * The snapshot reference is volatile so a reload can swap in a new snapshot without blocking readers.</p>
+ * <p>When <code>motorvehicle.snapshot.path</code> names a MotorVehicleSnapshot file written at the current change
+ * log version, startup maps the file instead of reading the table, see map.</p>
+ * <p></p>
+ * <p>This is the default store, set <code>motorvehicle.store=jpa</code> to query the database instead.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleStore
+ * @see au.com.formis.springbootdemo.MotorVehicleColumns
+ * @since       0.1
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "motorvehicle.store", havingValue = "catalog", matchIfMissing = true)
+public class MotorVehicleCatalog implements MotorVehicleStore {
+
+    private static final Logger log = LoggerFactory.getLogger(MotorVehicleCatalog.class);
+
+    private final MotorVehicleRepository motorVehicleRepository;
+    private final MotorVehicleWriter motorVehicleWriter;
+    private final String snapshotPath;
+    private volatile MotorVehicleColumns columns;
+
+    public MotorVehicleCatalog(MotorVehicleRepository motorVehicleRepository, MotorVehicleWriter motorVehicleWriter,
+                               @Value("${motorvehicle.snapshot.path:}") String snapshotPath) {
+        this.motorVehicleRepository = motorVehicleRepository;
+        this.motorVehicleWriter = motorVehicleWriter;
+        this.snapshotPath = snapshotPath;
+    }
+
+    /**
+     * <p>Maps the motorvehicle.snapshot.path file if it is set and current, otherwise reads every row of the
+     * MOTORVEHICLE table, and replaces the current snapshot.</p>
+     */
+    @PostConstruct
+    public void reload() {
+        if (snapshotPath.isEmpty() || !map(Path.of(snapshotPath))) {
+            load(motorVehicleRepository.findAll());
+        }
+    }
+
+    /**
+     * <p>Replaces the current snapshot with a mapped MotorVehicleSnapshot file, if the file was written at the
+     * current MotorVehicleWriter change log version. A missing, unreadable or older file is logged and left
+     * alone, the caller falls back to reading the table.</p>
+     * @param file Snapshot file.
+     * @return true if the file was mapped.
+     */
+    public boolean map(Path file) {
+        if (!Files.isRegularFile(file)) {
+            log.warn("No motor vehicle snapshot {}, reading the motorvehicle table", file);
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            MotorVehicleColumns mapped = MotorVehicleColumns.map(file);
+            long version = motorVehicleWriter.getVersion();
+            if (mapped.getSnapshot().getVersion() != version) {
+                log.warn("Motor vehicle snapshot {} is at version {}, not {}, reading the motorvehicle table", file,
+                        mapped.getSnapshot().getVersion(), version);
+                return false;
+            }
+            columns = mapped;
+            log.info("Mapped motor vehicle catalog {} from {} in {} ms", mapped, file, (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException | SQLException | IllegalArgumentException e) {
+            log.warn("Could not map motor vehicle snapshot {}, reading the motorvehicle table", file, e);
+            return false;
+        }
+    }
+
+    /**
+     * <p>Replaces the current snapshot with one built from the given entities, used by the MotorVehicleImporter
+     * to swap in the rows it has just committed without reading them back.</p>
+     * @param vehicles Every row of the MOTORVEHICLE table.
+     */
+    public void load(Iterable<MotorVehicle> vehicles) {
+        long start = System.nanoTime();
+        MotorVehicleColumns loaded = MotorVehicleColumns.of(vehicles);
+        columns = loaded;
+        log.info("Loaded motor vehicle catalog {} in {} ms", loaded, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * <p>Replaces the current snapshot with one holding a single changed row, used by the MotorVehicleWriter
+     * after it committed the change. The rows are not read back from the database.</p>
+     * @param id Id of the changed row.
+     * @param vehicle The row after the change, null if it was deleted.
+     */
+    public void apply(long id, MotorVehicle vehicle) {
+        columns = columns.with(id, vehicle);
+    }
+
+    /**
+     * @return The current snapshot.
+     */
+    public MotorVehicleColumns getColumns() {
+        return columns;
+    }
+
+    @Override
+    public List<MotorVehicle> findMotorVehiclesByMake(String make) {
+        return find(MotorVehicleQuery.byMake(make));
+    }
+
+    @Override
+    public List<MotorVehicle> findMotorVehiclesByMakeAndModel(String make, String model) {
+        return find(MotorVehicleQuery.byMakeAndModel(make, model));
+    }
+
+    @Override
+    public List<MotorVehicle> findMotorVehiclesByMakeAndModelAndGenerationContains(String make, String model, String generation) {
+        return find(MotorVehicleQuery.byMakeAndModelAndGeneration(make, model, generation));
+    }
+
+    @Override
+    public List<MotorVehicle> find(MotorVehicleQuery query) {
+        MotorVehicleColumns snapshot = columns;
+        return snapshot.vehicles(rows(snapshot, query));
+    }
+
+    @Override
+    public List<MotorVehicleView> findViews(MotorVehicleQuery query) {
+        MotorVehicleColumns snapshot = columns;
+        return snapshot.views(rows(snapshot, query));
+    }
+
+    @Override
+    public List<MotorVehicleProjection> find(MotorVehicleQuery query, MotorVehicleFields fields) {
+        MotorVehicleColumns snapshot = columns;
+        return snapshot.projections(rows(snapshot, query), fields, query.isPaged() ? query.getPage().getSort() : null);
+    }
+
+    @Override
+    public MotorVehicleSearch.Result search(MotorVehicleSearch search) {
+        MotorVehicleColumns snapshot = columns;
+        List<String> plan = new ArrayList<>();
+        int[] rows = snapshot.search(search, plan);
+        if (search.isPaged()) {
+            rows = page(snapshot, rows, search.getPage());
+        }
+        return new MotorVehicleSearch.Result(snapshot.vehicles(rows), String.join(", ", plan));
+    }
+
+    @Override
+    public MotorVehicleAggregations aggregate(MotorVehicleQuery query) {
+        MotorVehicleColumns snapshot = columns;
+        return snapshot.aggregate(rows(snapshot, query.withPage(null)));
+    }
+
+    @Override
+    public int forEachMotorVehicle(MotorVehicleQuery query, Consumer<MotorVehicle> action) {
+        MotorVehicleColumns snapshot = columns;
+        int[] rows = rows(snapshot, query);
+        for (int row : rows) {
+            action.accept(snapshot.vehicle(row));
+        }
+        return rows.length;
+    }
+
+    private static int[] rows(MotorVehicleColumns snapshot, MotorVehicleQuery query) {
+        int[] rows = query.hasModel() ? snapshot.rowsByMakeAndModel(query.getMake(), query.getModel()) : snapshot.rowsByMake(query.getMake());
+        // Apply the most selective range filters first, before the generation search has to verify rows.
+        List<MotorVehicleRange> ranges = new ArrayList<>(query.getRanges());
+        ranges.sort(Comparator.comparingInt(snapshot::countInRange));
+        for (MotorVehicleRange range : ranges) {
+            if (rows.length == 0) {
+                break;
+            }
+            rows = snapshot.rowsInRange(rows, range);
+        }
+        if (query.hasGeneration()) {
+            rows = snapshot.rowsByGenerationContains(rows, query.getGeneration().toLowerCase(Locale.ROOT));
+        }
+        return query.isPaged() ? page(snapshot, rows, query.getPage()) : rows;
+    }
+
+    /**
+     * <p>Orders the matching rows by page sort key and id and returns up to the page limit rows after the
+     * page cursor. Index rows are already in id order so only sorted pages need sorting.</p>
+     */
+    private static int[] page(MotorVehicleColumns snapshot, int[] rows, MotorVehiclePage page) {
+        int[] ordered;
+        int from;
+        MotorVehicleSort sort = page.getSort();
+        if (sort == null) {
+            ordered = rows;
+            from = 0;
+            if (page.hasCursor()) {
+                int found = Arrays.binarySearch(rows, snapshot.rowsUpToId(page.getAfterId()));
+                from = (found >= 0) ? found : -found - 1;
+            }
+        } else {
+            // Pack (sort key, row) into a long so a primitive sort orders by key then id.
+            long[] keyed = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                keyed[i] = ((long) snapshot.sortKey(sort, rows[i]) << 32) | rows[i];
+            }
+            Arrays.sort(keyed);
+            ordered = new int[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                ordered[i] = (int) keyed[page.isDescending() ? rows.length - 1 - i : i];
+            }
+            from = 0;
+            while (from < ordered.length && !page.isAfterCursor(snapshot.sortKey(sort, ordered[from]), snapshot.id(ordered[from]))) {
+                from++;
+            }
+        }
+        return Arrays.copyOfRange(ordered, from, Math.min(ordered.length, from + page.getLimit()));
+    }
+}
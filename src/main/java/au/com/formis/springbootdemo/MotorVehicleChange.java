@@ -0,0 +1,74 @@
+package au.com.formis.springbootdemo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable entry of the /motorVehicles/changes feed, the latest change of one MotorVehicle row after the
+ * version a mirror has synchronized to.</p>
+ * <p></p>
+ * <p>Versions are assigned in commit order by the MotorVehicleWriter, a mirror applies the changes in
+ * version order and asks for the changes after the last version it applied. A created or updated row holds
+ * the current MotorVehicle, a deleted row only its id.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleWriter
+ * @since       0.1
+ * </p>
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class MotorVehicleChange {
+
+    /**
+     * <p>Kinds of change recorded in the change log.</p>
+     */
+    public enum Operation {
+        CREATE, UPDATE, DELETE,
+        /**
+         * The whole dataset was replaced by the MotorVehicleImporter, never returned by the feed.
+         */
+        RESET
+    }
+
+    private final long version;
+    private final Operation operation;
+    private final long id;
+    private final MotorVehicle vehicle;
+
+    MotorVehicleChange(long version, Operation operation, long id, MotorVehicle vehicle) {
+        this.version = version;
+        this.operation = operation;
+        this.id = id;
+        this.vehicle = vehicle;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return The row after the change, null for a DELETE.
+     */
+    public MotorVehicle getVehicle() {
+        return vehicle;
+    }
+
+    @Override
+    public String toString() {
+        return "MotorVehicleChange{" +
+                "version=" + version +
+                ", operation=" + operation +
+                ", id=" + id +
+                '}';
+    }
+}
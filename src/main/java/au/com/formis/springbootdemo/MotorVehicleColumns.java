@@ -0,0 +1,855 @@
+package au.com.formis.springbootdemo;
+
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>An immutable, read optimised columnar snapshot of the MOTORVEHICLE table.</p>
+ * <p></p>
+ * <p>Rows are held in id order in a MotorVehicleSnapshot image and each field is stored in its own section:</p>
+ * <ul>
+ *     <li>int fields (power, torque, engineSize, cylinders, valves, fuelCapacity) as fixed width ints.</li>
+ *     <li>Strings dictionary encoded into int codes, see StringDictionary.</li>
+ * </ul>
+ * <p>Prebuilt hash indexes map make, make+model and the other low cardinality columns (model, fuelType,
+ * transmission, country) to the ascending row numbers holding that key so the controller queries become index
+ * lookups. Trigram indexes over the lower cased generation and trimVersion columns answer case insensitive
+ * contains searches and sorted indexes over the MotorVehicleRange attributes answer range filters, both are
+ * built on the heap the first time they are used. search plans a query over any combination of these
+ * indexes. MotorVehicle entities are only materialised for the rows being returned.</p>
+ * <p>The image is either built on the heap by of or mapped from a snapshot file by map, the columns read
+ * both the same way.</p>
+ * <p>with applies a single row change without rebuilding the image: the changed rows are held as entities in a
+ * small overlay, which every lookup merges into the rows read from the image, see Overlay. Once the overlay
+ * holds MAX_OVERLAY rows the next change rebuilds the image on the heap with every change applied.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleCatalog
+ * @see au.com.formis.springbootdemo.MotorVehicleSnapshot
+ * @see au.com.formis.springbootdemo.StringDictionary
+ * @see au.com.formis.springbootdemo.NGramIndex
+ * @see au.com.formis.springbootdemo.IntRangeIndex
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleColumns {
+
+    /**
+     * Changed rows held in the overlay before a change rebuilds the image.
+     */
+    static final int MAX_OVERLAY = 1024;
+
+    // MotorVehicleRange attribute to int column.
+    private static final Map<String, String> RANGE_COLUMNS = Map.of("power", "power", "torque", "torque",
+            "engineSize", "engineSize", "cylinders", "cylinders", "valves", "valves", "newPrice", "newPriceValue",
+            "dateFrom", "dateFromMonth", "dateTo", "dateToMonth");
+
+    private final MotorVehicleSnapshot snapshot;
+    // Rows of the image, the overlay appends rows after them.
+    private final int baseSize;
+    private final LongBuffer id;
+
+    private final StringDictionary makes;
+    private final StringDictionary models;
+    private final StringDictionary generations;
+    private final StringDictionary trimVersions;
+    private final StringDictionary datesFrom;
+    private final StringDictionary datesTo;
+    private final StringDictionary newPrices;
+    private final StringDictionary fuelTypes;
+    private final StringDictionary transmissions;
+    private final StringDictionary gearboxes;
+    private final StringDictionary countries;
+    private final IntBuffer make;
+    private final IntBuffer model;
+    private final IntBuffer generation;
+    private final IntBuffer trimVersion;
+    private final IntBuffer dateFrom;
+    private final IntBuffer dateTo;
+    private final IntBuffer newPrice;
+    private final IntBuffer fuelType;
+    private final IntBuffer transmission;
+    private final IntBuffer gearbox;
+    private final IntBuffer country;
+
+    private final IntBuffer power;
+    private final IntBuffer torque;
+    private final IntBuffer fuelCapacity;
+    private final IntBuffer engineSize;
+    private final IntBuffer cylinders;
+    private final IntBuffer valves;
+    // dateFrom as yyyymm, see MotorVehicleValues.yearMonthKey.
+    private final IntBuffer dateFromMonth;
+    private final IntBuffer dateToMonth;
+    private final IntBuffer newPriceValue;
+
+    // Make codes are dense so the make index is a direct lookup by code.
+    private final RowIndex makeIndex;
+    // The indexed dictionary encoded columns, their dictionaries and code indexes, by field name.
+    private final Map<String, StringDictionary> dictionaries = new HashMap<>();
+    private final Map<String, RowIndex> codeIndexes = new HashMap<>();
+    // Ascending make and model code pairs, the make+model index is looked up by position.
+    private final LongBuffer makeModelKeys;
+    private final RowIndex makeModelIndex;
+    private final Map<String, IntBuffer> rangeColumns = new HashMap<>();
+    // Built on first use over the image rows, see NGramIndex and IntRangeIndex. Shared with the columns
+    // built by with, as they read the same image.
+    private final Map<String, NGramIndex> containsIndexes;
+    private final Map<String, IntRangeIndex> rangeIndexes;
+    private final Overlay overlay;
+
+    private MotorVehicleColumns(MotorVehicleSnapshot snapshot) {
+        this(snapshot, new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), Overlay.EMPTY);
+    }
+
+    private MotorVehicleColumns(MotorVehicleSnapshot snapshot, Map<String, NGramIndex> containsIndexes,
+                                Map<String, IntRangeIndex> rangeIndexes, Overlay overlay) {
+        this.snapshot = snapshot;
+        this.containsIndexes = containsIndexes;
+        this.rangeIndexes = rangeIndexes;
+        this.overlay = overlay;
+        baseSize = snapshot.size();
+        id = snapshot.ids();
+        makes = snapshot.dictionary("make");
+        models = snapshot.dictionary("model");
+        generations = snapshot.dictionary("generation");
+        trimVersions = snapshot.dictionary("trimVersion");
+        datesFrom = snapshot.dictionary("dateFrom");
+        datesTo = snapshot.dictionary("dateTo");
+        newPrices = snapshot.dictionary("newPrice");
+        fuelTypes = snapshot.dictionary("fuelType");
+        transmissions = snapshot.dictionary("transmission");
+        gearboxes = snapshot.dictionary("gearbox");
+        countries = snapshot.dictionary("country");
+        make = snapshot.codes("make");
+        model = snapshot.codes("model");
+        generation = snapshot.codes("generation");
+        trimVersion = snapshot.codes("trimVersion");
+        dateFrom = snapshot.codes("dateFrom");
+        dateTo = snapshot.codes("dateTo");
+        newPrice = snapshot.codes("newPrice");
+        fuelType = snapshot.codes("fuelType");
+        transmission = snapshot.codes("transmission");
+        gearbox = snapshot.codes("gearbox");
+        country = snapshot.codes("country");
+        power = snapshot.column("power");
+        torque = snapshot.column("torque");
+        fuelCapacity = snapshot.column("fuelCapacity");
+        engineSize = snapshot.column("engineSize");
+        cylinders = snapshot.column("cylinders");
+        valves = snapshot.column("valves");
+        dateFromMonth = snapshot.column("dateFromMonth");
+        dateToMonth = snapshot.column("dateToMonth");
+        newPriceValue = snapshot.column("newPriceValue");
+
+        dictionaries.put("make", makes);
+        dictionaries.put("model", models);
+        dictionaries.put("fuelType", fuelTypes);
+        dictionaries.put("transmission", transmissions);
+        dictionaries.put("country", countries);
+        for (String field : MotorVehicleSnapshot.INDEXED) {
+            codeIndexes.put(field, snapshot.index(field));
+        }
+        makeIndex = codeIndexes.get("make");
+        makeModelKeys = snapshot.makeModelKeys();
+        makeModelIndex = snapshot.makeModelIndex();
+        RANGE_COLUMNS.forEach((attribute, column) -> rangeColumns.put(attribute, snapshot.column(column)));
+    }
+
+    /**
+     * <p>Builds a snapshot from a collection of MotorVehicle entities. The entities are copied into
+     * a heap MotorVehicleSnapshot in id order and are not referenced afterwards.</p>
+     * @param vehicles MotorVehicle entities, typically every row of the MOTORVEHICLE table.
+     * @return A new immutable MotorVehicleColumns snapshot.
+     */
+    public static MotorVehicleColumns of(Iterable<MotorVehicle> vehicles) {
+        return of(vehicles, 0);
+    }
+
+    /**
+     * @param vehicles MotorVehicle entities, typically every row of the MOTORVEHICLE table.
+     * @param version MotorVehicleWriter change log version the entities were read at.
+     * @return A new immutable MotorVehicleColumns snapshot.
+     */
+    public static MotorVehicleColumns of(Iterable<MotorVehicle> vehicles, long version) {
+        List<MotorVehicle> sorted = new ArrayList<>();
+        vehicles.forEach(sorted::add);
+        sorted.sort(Comparator.comparing(MotorVehicle::getId));
+        return new MotorVehicleColumns(MotorVehicleSnapshot.of(sorted, version));
+    }
+
+    /**
+     * @param file Snapshot file written by MotorVehicleSnapshot.
+     * @return A new immutable MotorVehicleColumns snapshot reading the mapped file.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a snapshot of the current format.
+     */
+    public static MotorVehicleColumns map(Path file) throws IOException {
+        return new MotorVehicleColumns(MotorVehicleSnapshot.map(file));
+    }
+
+    /**
+     * <p>Builds a snapshot with one row added, replaced or removed. The image, dictionaries and indexes are
+     * shared with this snapshot and the row is held in the overlay, so the cost grows with the overlay rather
+     * than the table. A new row goes after the last row, as ids are handed out in ascending order. The image is
+     * rebuilt on the heap, from every row with the change applied, when the overlay is full or a new row has an
+     * id below the last one.</p>
+     * @param id Id of the changed row.
+     * @param vehicle The row after the change, null if it was deleted.
+     * @return A new immutable MotorVehicleColumns snapshot, this one is not modified.
+     */
+    public MotorVehicleColumns with(long id, MotorVehicle vehicle) {
+        int rowCount = baseSize + overlay.appendedIds.length;
+        int row = rowsUpToId(id) - 1;
+        long[] appendedIds = overlay.appendedIds;
+        if (row < 0 || id(row) != id) {
+            if (vehicle == null) {
+                return this;
+            }
+            row = rowCount;
+            appendedIds = Arrays.copyOf(appendedIds, appendedIds.length + 1);
+            appendedIds[appendedIds.length - 1] = id;
+        }
+        boolean inOrder = row < rowCount || rowCount == 0 || id > id(rowCount - 1);
+        if (!inOrder || overlay.rows.length >= MAX_OVERLAY) {
+            List<MotorVehicle> vehicles = new ArrayList<>(size() + 1);
+            for (int live : rows()) {
+                if (id(live) != id) {
+                    vehicles.add(vehicle(live));
+                }
+            }
+            if (vehicle != null) {
+                vehicles.add(vehicle);
+            }
+            return of(vehicles);
+        }
+        Map<Integer, MotorVehicle> vehicles = new HashMap<>(overlay.vehicles);
+        if (vehicle == null) {
+            vehicles.remove(row);
+        } else {
+            vehicles.put(row, vehicle);
+        }
+        return new MotorVehicleColumns(snapshot, containsIndexes, rangeIndexes,
+                new Overlay(vehicles, RowSets.union(overlay.rows, new int[] {row}), appendedIds));
+    }
+
+    /**
+     * @return The image the columns read.
+     */
+    public MotorVehicleSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return Number of rows.
+     */
+    public int size() {
+        // Every overlay row below baseSize replaces or deletes an image row.
+        return baseSize - (overlay.rows.length - overlay.appendedIds.length) + overlay.live.length;
+    }
+
+    /**
+     * @return Every row number, ascending.
+     */
+    int[] rows() {
+        return patch(RowSets.all(baseSize), vehicle -> true);
+    }
+
+    /**
+     * <p>Merges the overlay into rows read from the image indexes: image rows replaced or deleted by the overlay
+     * are dropped and the overlay rows matching the lookup are added.</p>
+     * @param baseRows Ascending image rows matching the lookup.
+     * @param matches The lookup, applied to the overlay entities.
+     * @return Ascending rows matching the lookup.
+     */
+    private int[] patch(int[] baseRows, Predicate<MotorVehicle> matches) {
+        if (overlay.rows.length == 0) {
+            return baseRows;
+        }
+        return RowSets.union(RowSets.difference(baseRows, overlay.rows), overlay.matching(matches));
+    }
+
+    /**
+     * <p>Applies a filter to a set of rows, reading the image for image rows and the entity for overlay rows.</p>
+     * @param rows Ascending row numbers to filter.
+     * @param baseFilter The filter, applied to ascending image rows the overlay does not change.
+     * @param matches The filter, applied to the overlay entities.
+     * @return Ascending row numbers from rows passing the filter.
+     */
+    private int[] filter(int[] rows, UnaryOperator<int[]> baseFilter, Predicate<MotorVehicle> matches) {
+        if (overlay.rows.length == 0) {
+            return baseFilter.apply(rows);
+        }
+        return RowSets.union(baseFilter.apply(RowSets.difference(rows, overlay.rows)), overlay.matching(rows, matches));
+    }
+
+    /**
+     * @param make Make of motor vehicle, case sensitive.
+     * @return Ascending row numbers with the given make, empty if there are none.
+     */
+    int[] rowsByMake(String make) {
+        int makeCode = makes.codeOf(make);
+        return patch((makeCode == StringDictionary.NULL_CODE) ? RowSets.EMPTY : makeIndex.rows(makeCode),
+                vehicle -> make.equals(vehicle.getMake()));
+    }
+
+    /**
+     * @param make Make of motor vehicle, case sensitive.
+     * @param model Model of motor vehicle, case sensitive.
+     * @return Ascending row numbers with the given make and model, empty if there are none.
+     */
+    int[] rowsByMakeAndModel(String make, String model) {
+        int makeCode = makes.codeOf(make);
+        int modelCode = models.codeOf(model);
+        int position = (makeCode == StringDictionary.NULL_CODE || modelCode == StringDictionary.NULL_CODE) ? -1
+                : binarySearch(makeModelKeys, MotorVehicleSnapshot.makeModelKey(makeCode, modelCode));
+        return patch((position < 0) ? RowSets.EMPTY : makeModelIndex.rows(position),
+                vehicle -> make.equals(vehicle.getMake()) && model.equals(vehicle.getModel()));
+    }
+
+    /**
+     * <p>Case insensitive contains search on the generation column, equivalent to the JPQL
+     * <code>lower(c.generation) like lower(concat('%', ?, '%'))</code>, restricted to a set of rows.</p>
+     * @param rows Ascending row numbers to search, for example the rows for a make and model.
+     * @param lowerCaseGeneration Value to search for, already lower cased.
+     * @return Ascending row numbers from rows whose generation contains the value.
+     */
+    int[] rowsByGenerationContains(int[] rows, String lowerCaseGeneration) {
+        return contains("generation", rows, lowerCaseGeneration);
+    }
+
+    /**
+     * <p>Case insensitive contains search on the trimVersion column, restricted to a set of rows.</p>
+     * @param rows Ascending row numbers to search.
+     * @param lowerCaseTrimVersion Value to search for, already lower cased.
+     * @return Ascending row numbers from rows whose trimVersion contains the value.
+     */
+    int[] rowsByTrimVersionContains(int[] rows, String lowerCaseTrimVersion) {
+        return contains("trimVersion", rows, lowerCaseTrimVersion);
+    }
+
+    /**
+     * @param range Range filter.
+     * @return Number of rows in the range, counted from the sorted index without reading the rows.
+     */
+    int countInRange(MotorVehicleRange range) {
+        int count = rangeIndex(range.getAttribute()).count(range.getMin(), range.getMax());
+        IntBuffer column = rangeColumns.get(range.getAttribute());
+        for (int row : overlay.rows) {
+            if (row < baseSize && column.get(row) >= range.getMin() && column.get(row) <= range.getMax()) {
+                count--;
+            }
+        }
+        return count + overlay.matching(range::matches).length;
+    }
+
+    /**
+     * <p>Range filter restricted to a set of rows. When the range matches fewer rows than the set the
+     * matching slice of the sorted index is intersected with the set, otherwise the column values of the
+     * set are checked directly as that reads fewer values.</p>
+     * @param rows Ascending row numbers to filter.
+     * @param range Range filter.
+     * @return Ascending row numbers from rows in the range.
+     */
+    int[] rowsInRange(int[] rows, MotorVehicleRange range) {
+        return filter(rows, baseRows -> baseRowsInRange(baseRows, range), range::matches);
+    }
+
+    private int[] baseRowsInRange(int[] rows, MotorVehicleRange range) {
+        if (countInRange(range) < rows.length) {
+            return RowSets.intersect(rows, rangeIndex(range.getAttribute()).rows(range.getMin(), range.getMax()));
+        }
+        IntBuffer column = rangeColumns.get(range.getAttribute());
+        int[] matches = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            int value = column.get(row);
+            if (value >= range.getMin() && value <= range.getMax()) {
+                matches[count++] = row;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * <p>Plans and runs a search. Each filter is given an access path and an estimate of the rows it matches:</p>
+     * <ul>
+     *     <li>hash - equality on a dictionary encoded column, make and model together use the make+model index.
+     *     The estimate is exact.</li>
+     *     <li>range - a MotorVehicleRange, counted exactly from the sorted index.</li>
+     *     <li>ngram - a contains filter, estimated by its trigram candidates which still have to be verified.</li>
+     *     <li>scan - a filter with no usable index (gearbox, a contains value under three characters), estimated
+     *     as every row.</li>
+     * </ul>
+     * <p>The most selective filter produces the first row set and the others are applied to it in ascending
+     * estimate order, a hash or range filter by intersecting with its index or checking its column, whichever
+     * reads fewer values, an ngram or scan filter by checking the rows left. The search stops as soon as no row
+     * is left.</p>
+     * @param search Search filters, the page is ignored.
+     * @param plan Receives one entry per filter applied: field(s), access path, estimate and rows left.
+     * @return Ascending row numbers matching every filter.
+     */
+    int[] search(MotorVehicleSearch search, List<String> plan) {
+        List<SearchStep> steps = new ArrayList<>();
+        Map<String, String> equals = new LinkedHashMap<>(search.getEquals());
+        if (equals.containsKey("make") && equals.containsKey("model")) {
+            int[] matches = rowsByMakeAndModel(equals.remove("make"), equals.remove("model"));
+            steps.add(new SearchStep("make+model", "hash", matches.length, rows -> (rows == null) ? matches : RowSets.intersect(rows, matches)));
+        }
+        equals.forEach((field, value) -> {
+            RowIndex index = codeIndexes.get(field);
+            if (index == null) {
+                // gearbox is the only equality field without a code index.
+                int code = gearboxes.codeOf(value);
+                steps.add(new SearchStep(field, "scan", size(), rows -> filter((rows == null) ? rows() : rows,
+                        baseRows -> equalRows(gearbox, baseRows, code), vehicle -> value.equals(vehicle.getGearbox()))));
+            } else {
+                int code = dictionaries.get(field).codeOf(value);
+                int[] matches = patch((code == StringDictionary.NULL_CODE) ? RowSets.EMPTY : index.rows(code),
+                        vehicle -> value.equals(MotorVehicleFields.value(vehicle, field)));
+                steps.add(new SearchStep(field, "hash", matches.length, rows -> (rows == null) ? matches : RowSets.intersect(rows, matches)));
+            }
+        });
+        search.getContains().forEach((field, value) -> {
+            int[] candidates = containsIndex(field).candidates(value);
+            steps.add(new SearchStep(field, (candidates == null) ? "scan" : "ngram", (candidates == null) ? size() : candidates.length,
+                    rows -> contains(field, (rows == null) ? rows() : rows, value)));
+        });
+        for (MotorVehicleRange range : search.getRanges()) {
+            steps.add(new SearchStep(range.getAttribute(), "range", countInRange(range),
+                    rows -> (rows == null) ? patch(rangeIndex(range.getAttribute()).rows(range.getMin(), range.getMax()), range::matches)
+                            : rowsInRange(rows, range)));
+        }
+        steps.sort(Comparator.comparingInt(step -> step.estimate));
+        int[] rows = null;
+        for (SearchStep step : steps) {
+            rows = step.filter.apply(rows);
+            plan.add(step.field + ' ' + step.access + ' ' + step.estimate + " -> " + rows.length);
+            if (rows.length == 0) {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    private static int[] equalRows(IntBuffer column, int[] rows, int code) {
+        if (code == StringDictionary.NULL_CODE) {
+            return RowSets.EMPTY;
+        }
+        int[] matches = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            if (column.get(row) == code) {
+                matches[count++] = row;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * @param field generation or trimVersion.
+     */
+    private int[] contains(String field, int[] rows, String lowerCaseValue) {
+        return filter(rows, baseRows -> baseContains(field, baseRows, lowerCaseValue), vehicle -> {
+            Object value = MotorVehicleFields.value(vehicle, field);
+            return value != null && value.toString().toLowerCase(Locale.ROOT).contains(lowerCaseValue);
+        });
+    }
+
+    private int[] baseContains(String field, int[] rows, String lowerCaseValue) {
+        int[] candidates = containsIndex(field).candidates(lowerCaseValue);
+        if (candidates != null) {
+            rows = RowSets.intersect(rows, candidates);
+        }
+        IntBuffer column = field.equals("generation") ? generation : trimVersion;
+        StringDictionary dictionary = field.equals("generation") ? generations : trimVersions;
+        // Rows share few distinct values, each is only decoded and checked once.
+        Map<Integer, Boolean> checked = new HashMap<>();
+        int[] matches = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            int code = column.get(row);
+            if (code != StringDictionary.NULL_CODE && checked.computeIfAbsent(code,
+                    value -> dictionary.decode(value).toLowerCase(Locale.ROOT).contains(lowerCaseValue))) {
+                matches[count++] = row;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * @param field generation or trimVersion.
+     */
+    private NGramIndex containsIndex(String field) {
+        IntBuffer column = field.equals("generation") ? generation : trimVersion;
+        StringDictionary dictionary = field.equals("generation") ? generations : trimVersions;
+        return containsIndexes.computeIfAbsent(field, name -> NGramIndex.build(baseSize, row -> dictionary.decode(column.get(row))));
+    }
+
+    private IntRangeIndex rangeIndex(String attribute) {
+        return rangeIndexes.computeIfAbsent(attribute, name -> IntRangeIndex.build(rangeColumns.get(name)));
+    }
+
+    /**
+     * <p>Computes the facet counts and numeric statistics of the given rows in a single pass over the
+     * dictionary codes and int columns, values are only decoded once per distinct code.</p>
+     * @param rows Row numbers to aggregate.
+     * @return Aggregations of the rows.
+     */
+    MotorVehicleAggregations aggregate(int[] rows) {
+        int[] overlayRows = (overlay.rows.length == 0) ? RowSets.EMPTY : RowSets.intersect(rows, overlay.live);
+        int[] baseRows = RowSets.difference(rows, overlay.rows);
+        StringDictionary[] facetDictionaries = {fuelTypes, transmissions, countries};
+        IntBuffer[] facetColumns = {fuelType, transmission, country};
+        IntBuffer[] statisticColumns = {power, torque, engineSize, fuelCapacity};
+        long[][] counts = new long[facetColumns.length][];
+        for (int facet = 0; facet < facetColumns.length; facet++) {
+            counts[facet] = new long[facetDictionaries[facet].size()];
+        }
+        long[] min = new long[statisticColumns.length];
+        long[] max = new long[statisticColumns.length];
+        long[] sum = new long[statisticColumns.length];
+        Arrays.fill(min, Long.MAX_VALUE);
+        Arrays.fill(max, Long.MIN_VALUE);
+        for (int row : baseRows) {
+            for (int facet = 0; facet < facetColumns.length; facet++) {
+                int code = facetColumns[facet].get(row);
+                if (code != StringDictionary.NULL_CODE) {
+                    counts[facet][code]++;
+                }
+            }
+            for (int statistic = 0; statistic < statisticColumns.length; statistic++) {
+                int value = statisticColumns[statistic].get(row);
+                min[statistic] = Math.min(min[statistic], value);
+                max[statistic] = Math.max(max[statistic], value);
+                sum[statistic] += value;
+            }
+        }
+        Map<String, Map<String, Long>> facets = new HashMap<>();
+        for (int facet = 0; facet < facetColumns.length; facet++) {
+            Map<String, Long> values = new HashMap<>();
+            for (int code = 0; code < counts[facet].length; code++) {
+                if (counts[facet][code] > 0) {
+                    values.put(facetDictionaries[facet].decode(code), counts[facet][code]);
+                }
+            }
+            facets.put(MotorVehicleAggregations.FACETS.get(facet), values);
+        }
+        // Overlay values may not be in the dictionaries, they are counted by value.
+        for (int row : overlayRows) {
+            MotorVehicle vehicle = overlay.vehicles.get(row);
+            String[] facetValues = {vehicle.getFuelType(), vehicle.getTransmission(), vehicle.getCountry()};
+            int[] statisticValues = {vehicle.getPower(), vehicle.getTorque(), vehicle.getEngineSize(), vehicle.getFuelCapacity()};
+            for (int facet = 0; facet < facetValues.length; facet++) {
+                if (facetValues[facet] != null) {
+                    facets.get(MotorVehicleAggregations.FACETS.get(facet)).merge(facetValues[facet], 1L, Long::sum);
+                }
+            }
+            for (int statistic = 0; statistic < statisticValues.length; statistic++) {
+                min[statistic] = Math.min(min[statistic], statisticValues[statistic]);
+                max[statistic] = Math.max(max[statistic], statisticValues[statistic]);
+                sum[statistic] += statisticValues[statistic];
+            }
+        }
+        int records = baseRows.length + overlayRows.length;
+        Map<String, MotorVehicleAggregations.NumericStatistics> statistics = new HashMap<>();
+        for (int statistic = 0; statistic < statisticColumns.length; statistic++) {
+            statistics.put(MotorVehicleAggregations.STATISTICS.get(statistic),
+                    new MotorVehicleAggregations.NumericStatistics(records, min[statistic], max[statistic], sum[statistic]));
+        }
+        return new MotorVehicleAggregations(records, facets, statistics);
+    }
+
+    /**
+     * @param row Row number.
+     * @return Id of the row.
+     */
+    long id(int row) {
+        return (row < baseSize) ? id.get(row) : overlay.appendedIds[row - baseSize];
+    }
+
+    /**
+     * @param id MotorVehicle id.
+     * @return Number of rows with an id less than or equal to the given id, the rows are held in id order.
+     */
+    int rowsUpToId(long id) {
+        // Appended rows all have a higher id than the image rows.
+        int appended = Arrays.binarySearch(overlay.appendedIds, id);
+        appended = (appended >= 0) ? appended + 1 : -appended - 1;
+        if (appended > 0) {
+            return baseSize + appended;
+        }
+        int found = binarySearch(this.id, id);
+        return (found >= 0) ? found + 1 : -found - 1;
+    }
+
+    /**
+     * @return Position of the key in the ascending values, or -(insertion point) - 1 as Arrays.binarySearch.
+     */
+    private static int binarySearch(LongBuffer values, long key) {
+        int low = 0;
+        int high = values.limit() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = values.get(middle);
+            if (value < key) {
+                low = middle + 1;
+            } else if (value > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * @param sort Sort field.
+     * @param row Row number.
+     * @return Sort key of the row, equal to MotorVehicleSort.key of the row entity.
+     */
+    int sortKey(MotorVehicleSort sort, int row) {
+        MotorVehicle changed = overlay.vehicle(row);
+        if (changed != null) {
+            return sort.key(changed);
+        }
+        switch (sort) {
+            case POWER:
+                return power.get(row);
+            case TORQUE:
+                return torque.get(row);
+            case ENGINE_SIZE:
+                return engineSize.get(row);
+            case DATE_FROM:
+                return dateFromMonth.get(row);
+            default:
+                throw new IllegalArgumentException("Unsupported sort " + sort);
+        }
+    }
+
+    /**
+     * @param rows Row numbers to materialise.
+     * @return A List of new MotorVehicle entities for the rows, in the order given.
+     */
+    List<MotorVehicle> vehicles(int[] rows) {
+        List<MotorVehicle> vehicles = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            vehicles.add(vehicle(row));
+        }
+        return vehicles;
+    }
+
+    /**
+     * @param rows Row numbers to materialise.
+     * @return A List of new MotorVehicleView objects for the rows, in the order given.
+     */
+    List<MotorVehicleView> views(int[] rows) {
+        List<MotorVehicleView> views = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            MotorVehicle changed = overlay.vehicle(row);
+            if (changed != null) {
+                views.add(MotorVehicleView.of(changed));
+                continue;
+            }
+            views.add(new MotorVehicleView(id.get(row), makes.decode(make.get(row)), models.decode(model.get(row)),
+                    generations.decode(generation.get(row)), trimVersions.decode(trimVersion.get(row)), dateFromMonth.get(row),
+                    dateToMonth.get(row), newPriceValue.get(row), power.get(row), torque.get(row), fuelCapacity.get(row),
+                    engineSize.get(row), cylinders.get(row), valves.get(row), fuelTypes.decode(fuelType.get(row)),
+                    transmissions.decode(transmission.get(row)), gearboxes.decode(gearbox.get(row)), countries.decode(country.get(row))));
+        }
+        return views;
+    }
+
+    /**
+     * @param rows Row numbers to project.
+     * @param fields Properties to read.
+     * @param sort Page sort field of the projection sort keys, null when ordered by id only.
+     * @return A List of new MotorVehicleProjection objects for the rows, in the order given.
+     */
+    List<MotorVehicleProjection> projections(int[] rows, MotorVehicleFields fields, MotorVehicleSort sort) {
+        // Resolve each selected column once rather than once per row.
+        List<IntFunction<Object>> columns = new ArrayList<>(fields.size());
+        for (String name : fields.getNames()) {
+            columns.add(column(name));
+        }
+        List<MotorVehicleProjection> projections = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            Object[] values = new Object[columns.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = columns.get(i).apply(row);
+            }
+            projections.add(new MotorVehicleProjection(fields, id(row), (sort == null) ? 0 : sortKey(sort, row), values));
+        }
+        return projections;
+    }
+
+    private IntFunction<Object> column(String name) {
+        IntFunction<Object> column = baseColumn(name);
+        if (overlay.rows.length == 0) {
+            return column;
+        }
+        return row -> {
+            MotorVehicle changed = overlay.vehicle(row);
+            return (changed == null) ? column.apply(row) : MotorVehicleFields.value(changed, name);
+        };
+    }
+
+    private IntFunction<Object> baseColumn(String name) {
+        switch (name) {
+            case "id":
+                return row -> id.get(row);
+            case "make":
+                return row -> makes.decode(make.get(row));
+            case "model":
+                return row -> models.decode(model.get(row));
+            case "generation":
+                return row -> generations.decode(generation.get(row));
+            case "trimVersion":
+                return row -> trimVersions.decode(trimVersion.get(row));
+            case "dateFrom":
+                return row -> datesFrom.decode(dateFrom.get(row));
+            case "dateTo":
+                return row -> datesTo.decode(dateTo.get(row));
+            case "newPrice":
+                return row -> newPrices.decode(newPrice.get(row));
+            case "power":
+                return row -> power.get(row);
+            case "torque":
+                return row -> torque.get(row);
+            case "fuelCapacity":
+                return row -> fuelCapacity.get(row);
+            case "engineSize":
+                return row -> engineSize.get(row);
+            case "cylinders":
+                return row -> cylinders.get(row);
+            case "valves":
+                return row -> valves.get(row);
+            case "fuelType":
+                return row -> fuelTypes.decode(fuelType.get(row));
+            case "transmission":
+                return row -> transmissions.decode(transmission.get(row));
+            case "gearbox":
+                return row -> gearboxes.decode(gearbox.get(row));
+            case "country":
+                return row -> countries.decode(country.get(row));
+            default:
+                throw new IllegalArgumentException("Unknown field " + name);
+        }
+    }
+
+    /**
+     * @param row Row number.
+     * @return A new MotorVehicle entity holding the row values.
+     */
+    MotorVehicle vehicle(int row) {
+        MotorVehicle changed = overlay.vehicle(row);
+        if (changed != null) {
+            return changed;
+        }
+        return new MotorVehicle(id.get(row), makes.decode(make.get(row)), models.decode(model.get(row)),
+                generations.decode(generation.get(row)), trimVersions.decode(trimVersion.get(row)), datesFrom.decode(dateFrom.get(row)),
+                datesTo.decode(dateTo.get(row)), newPrices.decode(newPrice.get(row)), power.get(row), torque.get(row),
+                fuelCapacity.get(row), engineSize.get(row), cylinders.get(row), valves.get(row), fuelTypes.decode(fuelType.get(row)),
+                transmissions.decode(transmission.get(row)), gearboxes.decode(gearbox.get(row)), countries.decode(country.get(row)));
+    }
+
+    /**
+     * <p>A search filter with its access path and estimated number of matching rows.</p>
+     */
+    private static final class SearchStep {
+
+        private final String field;
+        private final String access;
+        private final int estimate;
+        // Rows matching the filter out of the given rows, or out of every row when given null.
+        private final UnaryOperator<int[]> filter;
+
+        private SearchStep(String field, String access, int estimate, UnaryOperator<int[]> filter) {
+            this.field = field;
+            this.access = access;
+            this.estimate = estimate;
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * <p>Rows changed since the image was built. Rows keep their position, an update replaces the values of
+     * an image row and a delete leaves an empty position, so row numbers stay in id order. New rows are appended
+     * after the image rows, in id order too.</p>
+     */
+    private static final class Overlay {
+
+        private static final Overlay EMPTY = new Overlay(Map.of(), RowSets.EMPTY, new long[0]);
+
+        // Current entity of each updated or appended row that is not deleted.
+        private final Map<Integer, MotorVehicle> vehicles;
+        // Ascending rows the overlay changes: updated and deleted image rows and every appended row.
+        private final int[] rows;
+        // Ascending rows with an entity.
+        private final int[] live;
+        // Ids of the appended rows, ascending.
+        private final long[] appendedIds;
+
+        private Overlay(Map<Integer, MotorVehicle> vehicles, int[] rows, long[] appendedIds) {
+            this.vehicles = vehicles;
+            this.rows = rows;
+            this.live = vehicles.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+            this.appendedIds = appendedIds;
+        }
+
+        private MotorVehicle vehicle(int row) {
+            return vehicles.isEmpty() ? null : vehicles.get(row);
+        }
+
+        /**
+         * @return Ascending rows with an entity matching the predicate.
+         */
+        private int[] matching(Predicate<MotorVehicle> matches) {
+            return matching(live, matches);
+        }
+
+        /**
+         * @param rows Ascending row numbers.
+         * @return Ascending rows from rows with an entity matching the predicate.
+         */
+        private int[] matching(int[] rows, Predicate<MotorVehicle> matches) {
+            if (vehicles.isEmpty()) {
+                return RowSets.EMPTY;
+            }
+            return Arrays.stream(RowSets.intersect(rows, live)).filter(row -> matches.test(vehicles.get(row))).toArray();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MotorVehicleColumns{" +
+                "size=" + size() +
+                ", overlay=" + overlay.rows.length +
+                ", version=" + snapshot.getVersion() +
+                ", mapped=" + snapshot.isMapped() +
+                ", bytes=" + snapshot.getBytes() +
+                ", makes=" + makes.size() +
+                ", models=" + models.size() +
+                ", makeModelKeys=" + makeModelIndex.keys() +
+                ", rowsPerMake=" + Arrays.toString(IntStream.range(0, makeIndex.keys()).map(makeIndex::count).toArray()) +
+                '}';
+    }
+}
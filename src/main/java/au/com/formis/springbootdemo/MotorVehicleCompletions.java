@@ -0,0 +1,231 @@
+package au.com.formis.springbootdemo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>In-memory prefix completion of makes, models of a make and generations of a make and model, for
+ * typeahead and dropdown lists that would otherwise run full /motorVehicles queries.</p>
+ * <p></p>
+ * <p>The distinct make, model and generation combinations and their row counts are read with a single
+ * GROUP BY query at startup and after each MotorVehicleImporter import, whichever MotorVehicleStore is used.
+ * They are held in one PrefixIndex for the makes, one per make for the models and one per make and model for
+ * the generations, so a completion is a hash lookup of the scope and a binary search. The indexes are
+ * swapped as a whole through a volatile reference, readers never block. A MotorVehicleWriter change adjusts
+ * the counts of the row before and after the change and only rebuilds the indexes they belong to.</p>
+ * <p>Prefixes are matched case insensitively, make and model scopes are case sensitive as in the
+ * /motorVehicles queries. Completions are ordered by row count descending then value.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.PrefixIndex
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @since       0.1
+ * </p>
+ */
+@Component
+public class MotorVehicleCompletions {
+
+    private static final Logger log = LoggerFactory.getLogger(MotorVehicleCompletions.class);
+
+    private final MotorVehicleRepository motorVehicleRepository;
+    private volatile Indexes indexes;
+
+    public MotorVehicleCompletions(MotorVehicleRepository motorVehicleRepository) {
+        this.motorVehicleRepository = motorVehicleRepository;
+    }
+
+    /**
+     * <p>Reads the make, model and generation counts from the MOTORVEHICLE table and replaces the indexes.</p>
+     */
+    @PostConstruct
+    public synchronized void reload() {
+        long start = System.nanoTime();
+        Indexes loaded = new Indexes(motorVehicleRepository.findMakeModelGenerationCounts());
+        indexes = loaded;
+        log.info("Loaded motor vehicle completions for {} makes in {} ms", loaded.makes.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * @param prefix Prefix of the make, empty for every make.
+     * @param limit Maximum number of completions.
+     * @return Makes starting with the prefix and their row counts.
+     */
+    public List<Completion> makes(String prefix, int limit) {
+        return indexes.makes.complete(prefix, limit);
+    }
+
+    /**
+     * @param make Make of motor vehicle, case sensitive.
+     * @param prefix Prefix of the model, empty for every model of the make.
+     * @param limit Maximum number of completions.
+     * @return Models of the make starting with the prefix and their row counts.
+     */
+    public List<Completion> models(String make, String prefix, int limit) {
+        return indexes.models.getOrDefault(make, PrefixIndex.EMPTY).complete(prefix, limit);
+    }
+
+    /**
+     * @param make Make of motor vehicle, case sensitive.
+     * @param model Model of motor vehicle, case sensitive.
+     * @param prefix Prefix of the generation, empty for every generation of the make and model.
+     * @param limit Maximum number of completions.
+     * @return Generations of the make and model starting with the prefix and their row counts.
+     */
+    public List<Completion> generations(String make, String model, String prefix, int limit) {
+        return indexes.generations.getOrDefault(List.of(make, model), PrefixIndex.EMPTY).complete(prefix, limit);
+    }
+
+    /**
+     * <p>Adjusts the counts for one changed row, used by the MotorVehicleWriter. Only the indexes of the
+     * makes, models and generations the row had before and after the change are rebuilt.</p>
+     * @param before The row before the change, null if it was created.
+     * @param after The row after the change, null if it was deleted.
+     */
+    public synchronized void apply(MotorVehicle before, MotorVehicle after) {
+        Indexes changed = new Indexes(indexes);
+        if (before != null) {
+            changed.add(before.getMake(), before.getModel(), before.getGeneration(), -1);
+        }
+        if (after != null) {
+            changed.add(after.getMake(), after.getModel(), after.getGeneration(), 1);
+        }
+        changed.rebuild();
+        indexes = changed;
+    }
+
+    /**
+     * <p>A set of prefix indexes and the counts they were built from, immutable once published.</p>
+     */
+    private static final class Indexes {
+
+        private final Map<String, Long> makeCounts;
+        private final Map<String, Map<String, Long>> modelCounts;
+        private final Map<List<String>, Map<String, Long>> generationCounts;
+
+        private PrefixIndex makes;
+        private final Map<String, PrefixIndex> models;
+        private final Map<List<String>, PrefixIndex> generations;
+
+        // Scopes whose counts changed since the indexes were built.
+        private final Set<String> changedMakes = new HashSet<>();
+        private final Set<List<String>> changedModels = new HashSet<>();
+        private boolean changedMake;
+        private final boolean shared;
+
+        private Indexes(List<Object[]> rows) {
+            shared = false;
+            makeCounts = new HashMap<>();
+            modelCounts = new HashMap<>();
+            generationCounts = new HashMap<>();
+            models = new HashMap<>();
+            generations = new HashMap<>();
+            for (Object[] row : rows) {
+                add((String) row[0], (String) row[1], (String) row[2], ((Number) row[3]).longValue());
+            }
+            makes = PrefixIndex.build(makeCounts);
+            modelCounts.forEach((make, counts) -> models.put(make, PrefixIndex.build(counts)));
+            generationCounts.forEach((makeAndModel, counts) -> generations.put(makeAndModel, PrefixIndex.build(counts)));
+        }
+
+        /**
+         * <p>Copies the maps of another set so counts can be changed without affecting readers of it. The
+         * count maps of each scope are copied when first changed.</p>
+         */
+        private Indexes(Indexes indexes) {
+            shared = true;
+            makeCounts = new HashMap<>(indexes.makeCounts);
+            modelCounts = new HashMap<>(indexes.modelCounts);
+            generationCounts = new HashMap<>(indexes.generationCounts);
+            makes = indexes.makes;
+            models = new HashMap<>(indexes.models);
+            generations = new HashMap<>(indexes.generations);
+        }
+
+        private void add(String make, String model, String generation, long count) {
+            if (make == null) {
+                return;
+            }
+            changedMake = true;
+            add(makeCounts, make, count);
+            if (model == null) {
+                return;
+            }
+            add(counts(modelCounts, make, changedMakes.add(make)), model, count);
+            if (generation != null) {
+                List<String> makeAndModel = List.of(make, model);
+                add(counts(generationCounts, makeAndModel, changedModels.add(makeAndModel)), generation, count);
+            }
+        }
+
+        private <K> Map<String, Long> counts(Map<K, Map<String, Long>> counts, K scope, boolean firstChange) {
+            // The count maps of a copy are shared with the set it was copied from until first changed.
+            return counts.compute(scope, (key, scopeCounts) -> (scopeCounts == null) ? new HashMap<>()
+                    : (shared && firstChange) ? new HashMap<>(scopeCounts) : scopeCounts);
+        }
+
+        private static void add(Map<String, Long> counts, String value, long count) {
+            if (counts.merge(value, count, Long::sum) <= 0) {
+                counts.remove(value);
+            }
+        }
+
+        private void rebuild() {
+            if (changedMake) {
+                makes = PrefixIndex.build(makeCounts);
+            }
+            for (String make : changedMakes) {
+                rebuild(modelCounts, models, make);
+            }
+            for (List<String> makeAndModel : changedModels) {
+                rebuild(generationCounts, generations, makeAndModel);
+            }
+        }
+
+        private static <K> void rebuild(Map<K, Map<String, Long>> counts, Map<K, PrefixIndex> indexes, K scope) {
+            Map<String, Long> scopeCounts = counts.get(scope);
+            if (scopeCounts.isEmpty()) {
+                counts.remove(scope);
+                indexes.remove(scope);
+            } else {
+                indexes.put(scope, PrefixIndex.build(scopeCounts));
+            }
+        }
+    }
+
+    /**
+     * <p>A completed value and the number of rows holding it, serialized as JSON in the completion responses.</p>
+     */
+    public static final class Completion {
+
+        private final String value;
+        private final long count;
+
+        Completion(String value, long count) {
+            this.value = value;
+            this.count = count;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return value + '=' + count;
+        }
+    }
+}
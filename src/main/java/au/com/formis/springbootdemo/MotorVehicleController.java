@@ -1,11 +1,35 @@
 package au.com.formis.springbootdemo;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 
 /**
  * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
@@ -15,52 +39,204 @@ import javax.servlet.http.HttpServletResponse;
  * <p>A controller class to process REST API requests for MotorVehicle data.</p>
  * <p></p>
  * <p>The context root mapping for the REST API is /motorVehicles followed by Get query parameters.
- * Query parameter permutations are mapped to the JPQL queries defined in MotorVehicleRepository.</p>
+ * Query parameter permutations are mapped to the queries defined in MotorVehicleStore, answered either
+ * from the in-memory MotorVehicleCatalog or the JPQL queries in MotorVehicleRepository.</p>
  * <p></p>
  * <p>Currently the response publisher and payloadDescription string class variables hold hard wired strings
  * as this is just a demo.
  * </p>
- * <p>The controller uses Spring field injection for the MotorVehicleRepository interface using the @Autowired
+ * <p>The controller uses Spring field injection for the MotorVehicleStore interface using the @Autowired
  * annotation.</p>
  * <p>#TODO: Resolve field injection is not recommended warning.</p>
  * <p>
  *     &amp;RestController is a convenient annotation that combines @Controller and @ResponseBody annotations.
  * </p>
  * <p>
- * The List of entities returned by the MotorVehicleRepository are encapsulated in an
+ * The List of entities returned by the MotorVehicleStore are encapsulated in an
  * ApiResponsePayload class along with some accompanying data for publisher, payload description
  * and API request URL to be returned in the JSON data.
  * </p>
  * <p>
+ * The /motorVehicles queries are paged using keyset pagination, see MotorVehiclePage. limit (default and
+ * maximum set by motorvehicle.page.max-limit), sort (power, torque, engineSize or dateFrom with an optional
+ * ,asc or ,desc) and cursor can be added to any query. When more records follow the response carries a
+ * nextCursor token to pass as the cursor of the next request. A query without limit, sort or cursor is not
+ * paged and returns every matching record in id order. Invalid paging parameters return http error 400.
+ * </p>
+ * <p>
+ * Range filters on power, torque, engineSize, cylinders, valves, newPrice, dateFrom and dateTo, for example
+ * power=150..250, cylinders=6 or dateFrom=2015-01.., can be added to the /motorVehicles, /motorVehicles/typed,
+ * /motorVehicles/stream and /motorVehicles/aggregations queries, see MotorVehicleRange. Invalid ranges return
+ * http error 400.
+ * </p>
+ * <p>
+ * A fields parameter, for example fields=make,model,trimVersion,power, limits the /motorVehicles records to the
+ * listed MotorVehicle properties, see MotorVehicleFields. The store only reads those columns and the records are
+ * written in MotorVehicle property order. An unknown field returns http error 400.
+ * </p>
+ * <p>
+ * /motorVehicles/typed returns MotorVehicleView objects with parsed dates and prices instead of MotorVehicle entities.
+ * </p>
+ * <p>
+ * Serialized /motorVehicles responses are held in the MotorVehicleResponseCache keyed by the canonical request
+ * URL, which is also returned as the payloadURL. Responses carry a strong ETag so repeat callers sending
+ * If-None-Match get a 304 with no body, and callers accepting gzip get the cached compressed copy.
+ * Cache counters are available from /motorVehicles/cache. Concurrent misses for the same canonical URL are
+ * coalesced into one query and serialization by the MotorVehicleRequestCoalescer.
+ * </p>
+ * <p>
+ * Store, serialization and total times, record counts and response sizes of every endpoint are recorded by
+ * MotorVehicleMetrics and scraped from /actuator/prometheus.
+ * </p>
+ * <p>
+ * The query handlers return a CompletableFuture. With motorvehicle.async.enabled=true the store call and
+ * serialization of a cache miss run on the bounded motorVehicleTaskExecutor (motorvehicle.async.pool-size and
+ * queue-capacity, see MotorVehicleExecutorConfiguration) and the Tomcat thread is released while they run,
+ * cache hits are answered on the Tomcat thread. A full executor queue returns http error 503. With
+ * motorvehicle.async.enabled=false all the work runs on the Tomcat thread.
+ * </p>
+ * <p>
+ * Responses are serialized by MotorVehicleResponseWriter as compact JSON, add pretty=true to any query
+ * to pretty print the response. The /motorVehicles, /motorVehicles/typed, /motorVehicles/aggregations and
+ * batch responses can also be requested as column oriented JSON, Smile or CBOR with the Accept header, see
+ * MotorVehicleFormat, an Accept header matching none of them returns http error 406. /motorVehicles/stream
+ * accepts the same query parameters and streams the entities to the client as they are read instead of building
+ * the whole List and JSON document in memory.
+ * </p>
+ * <p>
+ * /motorVehicles/search accepts any combination of make, model, fuelType, transmission, country, gearbox, generation,
+ * trimVersion and range filters instead of the fixed /motorVehicles permutations, see MotorVehicleSearch. The plan
+ * the store chose is returned in the X-Query-Plan header.
+ * </p>
+ * <p>
+ * /motorVehicles/completions/make, /motorVehicles/completions/model and /motorVehicles/completions/generation
+ * return the distinct makes, models of a make and generations of a make and model starting with a prefix and
+ * their row counts, for typeahead fields, see MotorVehicleCompletions.
+ * </p>
+ * <p>
+ * /motorVehicles/aggregations accepts the same make, model and generation parameters and returns facet counts
+ * and numeric statistics over the matching rows, see MotorVehicleAggregations.
+ * </p>
+ * <p>
+ * POST /motorVehicles/batch answers many make/model(/generation) tuples in one request, see
+ * MotorVehicleBatchItem. The payload holds one ApiResponsePayload per tuple, in request order, each with the
+ * canonical /motorVehicles URL answering the same tuple as its payloadURL.
+ * </p>
+ * <p>
+ * POST /motorVehicles/import replaces the dataset with the rows of a CSV request body, see MotorVehicleImporter.
+ * It is only available with motorvehicle.import.enabled=true.
+ * </p>
+ * <p>
+ * POST /motorVehicles, PUT /motorVehicles/{id} and DELETE /motorVehicles/{id} create, replace and delete single
+ * rows, see MotorVehicleWriter. They are only available with motorvehicle.write.enabled=true. Each change is
+ * given a version, /motorVehicles/changes?since=version returns the rows changed after a version so mirrors
+ * can synchronize incrementally.
+ * </p>
+ * <p>
+ * The controller is replaced by the WebFlux MotorVehicleReactiveController when the reactive profile is active.
+ * </p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleStore
  * @see au.com.formis.springbootdemo.MotorVehicleRepository
  * @see au.com.formis.springbootdemo.MotorVehicle
  * @see au.com.formis.springbootdemo.ApiResponsePayload
+ * @see au.com.formis.springbootdemo.MotorVehicleResponseWriter
+ * @see au.com.formis.springbootdemo.MotorVehicleFormat
+ * @see au.com.formis.springbootdemo.MotorVehiclePage
+ * @see au.com.formis.springbootdemo.MotorVehicleResponseCache
+ * @see au.com.formis.springbootdemo.MotorVehicleRequestCoalescer
+ * @see au.com.formis.springbootdemo.MotorVehicleBatchItem
+ * @see au.com.formis.springbootdemo.MotorVehicleAggregations
+ * @see au.com.formis.springbootdemo.MotorVehicleRange
+ * @see au.com.formis.springbootdemo.MotorVehicleFields
+ * @see au.com.formis.springbootdemo.MotorVehicleSearch
+ * @see au.com.formis.springbootdemo.MotorVehicleCompletions
+ * @see au.com.formis.springbootdemo.MotorVehicleView
+ * @see au.com.formis.springbootdemo.MotorVehicleMetrics
+ * @see au.com.formis.springbootdemo.MotorVehicleImporter
+ * @see au.com.formis.springbootdemo.MotorVehicleWriter
+ * @see au.com.formis.springbootdemo.MotorVehicleChange
  * @see org.springframework.beans.factory.annotation
  * @since       0.1
  * </p>
  */
 @RestController
+@Profile("!reactive")
 public class MotorVehicleController {
 
     // Hard wired strings used, this is just a demo.
     private static final String publisher = "Spring Boot Demo Service";
     private static final String payloadDescription = "Motor vehicle data set";
 
+    /**
+     * Response header holding the plan a /motorVehicles/search was run with.
+     */
+    static final String QUERY_PLAN_HEADER = "X-Query-Plan";
+
+    /**
+     * Response header holding the latest change version, see /motorVehicles/changes.
+     */
+    static final String CHANGE_VERSION_HEADER = "X-Change-Version";
+
+    @Autowired
+    private MotorVehicleStore motorVehicleStore;
+
+    @Autowired
+    private MotorVehicleResponseWriter motorVehicleResponseWriter;
+
+    @Autowired
+    private MotorVehicleResponseCache motorVehicleResponseCache;
+
+    @Autowired
+    private MotorVehicleMetrics motorVehicleMetrics;
+
     @Autowired
-    private MotorVehicleRepository motorVehicleRepository;
+    private MotorVehicleRequestCoalescer motorVehicleRequestCoalescer;
+
+    @Autowired
+    private MotorVehicleImporter motorVehicleImporter;
+
+    @Autowired
+    private MotorVehicleCompletions motorVehicleCompletions;
+
+    @Autowired
+    private MotorVehicleWriter motorVehicleWriter;
+
+    @Autowired
+    @Qualifier("motorVehicleTaskExecutor")
+    private AsyncTaskExecutor motorVehicleTaskExecutor;
+
+    @Value("${motorvehicle.async.enabled:false}")
+    private boolean async;
+
+    @Value("${motorvehicle.import.enabled:false}")
+    private boolean importEnabled;
+
+    @Value("${motorvehicle.write.enabled:false}")
+    private boolean writeEnabled;
+
+    @Value("${motorvehicle.page.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${motorvehicle.batch.max-queries:1000}")
+    private int maxBatchQueries;
+
+    @Value("${motorvehicle.completions.max-limit:100}")
+    private int maxCompletions;
 
     /**
      * <p>Controller for /motorVehicles when no query parameters are defined, returns and empty payload
      * with http error 405 to avoid dumping entire database.</p>
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
      * @param request Request object for REST API query, used to fetch original URL.
-     * @param response Response object for API response, used to see http error code 405.
-     * @return ApiResponsePayload containing response JSON metadata and empty List.
+     * @return Response with http error code 405 containing response JSON metadata and empty List.
+     * @throws IOException If the response cannot be serialized.
      */
     @RequestMapping(value = "/motorVehicles",  method = RequestMethod.GET)
-    public ApiResponsePayload<MotorVehicle> motorVehicleNoParams(HttpServletRequest request, HttpServletResponse response) {
+    public ResponseEntity<byte[]> motorVehicleNoParams(@RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) throws IOException {
         List<MotorVehicle> emptyPayload = new ArrayList<MotorVehicle>();
-        response.setStatus((HttpServletResponse.SC_METHOD_NOT_ALLOWED));
-        return new ApiResponsePayload<MotorVehicle>(publisher, payloadDescription, request.getRequestURL().toString(), emptyPayload);
+        var payLoad = new ApiResponsePayload<MotorVehicle>(publisher, payloadDescription, request.getRequestURL().toString(), emptyPayload);
+        return json(HttpStatus.METHOD_NOT_ALLOWED, motorVehicleResponseWriter.write(payLoad, pretty));
     }
 
     /**
@@ -68,21 +244,20 @@ public class MotorVehicleController {
      * </p>
      *
      * @param make The make REST query parameter.
+     * @param limit The optional limit REST query parameter, maximum number of records to return.
+     * @param cursor The optional cursor REST query parameter, nextCursor of the previous page.
+     * @param sort The optional sort REST query parameter, power, torque, engineSize or dateFrom with an optional ,asc or ,desc.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
      * @param request Request object for REST API query, used to fetch original URL.
-     * @param response Response object for API response, used to set http error code 404 for zero records.
-     * @return ApiResponsePayload containing response JSON metadata and List of MotorVehicle entities.
+     * @return Response containing response JSON metadata and List of MotorVehicle entities, http error code 404 for zero records.
      */
     // #Note : @GetMapping is a composed annotation shortcut for @RequestMapping(method=RequestMethod.Get).
     // @RequestMapping can be class and method level, @GetMapping is method level only.
     // @RequestMapping provides easy to read mapping for defined query parameters.
     // @GetMapping("/motorVehicles")
     @RequestMapping(value = "/motorVehicles", params = {"make"}, method = RequestMethod.GET)
-    public ApiResponsePayload<MotorVehicle> motorVehicleMake(@RequestParam(value = "make") String make, HttpServletRequest request, HttpServletResponse response) {
-        var payLoad = new ApiResponsePayload<MotorVehicle>(publisher, payloadDescription, request.getRequestURL().append('?').append(request.getQueryString()).toString(), motorVehicleRepository.findMotorVehiclesByMake(make));
-        if (payLoad.getNumberOfRecords() == 0) {
-            response.setStatus((HttpServletResponse.SC_NOT_FOUND));
-        }
-        return payLoad;
+    public CompletableFuture<ResponseEntity<byte[]>> motorVehicleMake(@RequestParam(value = "make") String make, @RequestParam(value = "limit", required = false) Integer limit, @RequestParam(value = "cursor", required = false) String cursor, @RequestParam(value = "sort", required = false) String sort, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) {
+        return respond(withRanges(MotorVehicleQuery.byMake(make), request), page(limit, cursor, sort), pretty, request);
     }
 
     /**
@@ -91,17 +266,16 @@ public class MotorVehicleController {
      *
      * @param make The make REST query parameter.
      * @param model The model REST query parameter.
+     * @param limit The optional limit REST query parameter, maximum number of records to return.
+     * @param cursor The optional cursor REST query parameter, nextCursor of the previous page.
+     * @param sort The optional sort REST query parameter, power, torque, engineSize or dateFrom with an optional ,asc or ,desc.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
      * @param request Request object for REST API query, used to fetch original URL.
-     * @param response Response object for API response, used to set http error code 404 for zero records.
-     * @return ApiResponsePayload containing response JSON metadata and List of MotorVehicle entities.
+     * @return Response containing response JSON metadata and List of MotorVehicle entities, http error code 404 for zero records.
      */
     @RequestMapping(value = "/motorVehicles", params = {"make", "model"}, method = RequestMethod.GET)
-    public ApiResponsePayload<MotorVehicle> motorVehicleMakeAndModel(@RequestParam(value = "make") String make, @RequestParam(value = "model") String model, HttpServletRequest request, HttpServletResponse response) {
-        var payLoad = new ApiResponsePayload<MotorVehicle>(publisher, payloadDescription, request.getRequestURL().append('?').append(request.getQueryString()).toString(), motorVehicleRepository.findMotorVehiclesByMakeAndModel(make, model));
-        if (payLoad.getNumberOfRecords() == 0) {
-            response.setStatus((HttpServletResponse.SC_NOT_FOUND));
-        }
-        return payLoad;
+    public CompletableFuture<ResponseEntity<byte[]>> motorVehicleMakeAndModel(@RequestParam(value = "make") String make, @RequestParam(value = "model") String model, @RequestParam(value = "limit", required = false) Integer limit, @RequestParam(value = "cursor", required = false) String cursor, @RequestParam(value = "sort", required = false) String sort, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) {
+        return respond(withRanges(MotorVehicleQuery.byMakeAndModel(make, model), request), page(limit, cursor, sort), pretty, request);
     }
 
     /**
@@ -113,18 +287,630 @@ public class MotorVehicleController {
      * @param make The make REST query parameter.
      * @param model The model REST query parameter.
      * @param generation The generation REST query parameter.
+     * @param limit The optional limit REST query parameter, maximum number of records to return.
+     * @param cursor The optional cursor REST query parameter, nextCursor of the previous page.
+     * @param sort The optional sort REST query parameter, power, torque, engineSize or dateFrom with an optional ,asc or ,desc.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
      * @param request Request object for REST API query, used to fetch original URL.
-     * @param response Response object for API response, used to set http error code 404 for zero records.
-     * @return ApiResponsePayload containing response JSON metadata and List of MotorVehicle entities.
+     * @return Response containing response JSON metadata and List of MotorVehicle entities, http error code 404 for zero records.
      */
     @RequestMapping(value = "/motorVehicles", params = {"make", "model", "generation"}, method = RequestMethod.GET)
-    public ApiResponsePayload<MotorVehicle> motorVehicleMakeAndModelAndGeneration(@RequestParam(value = "make") String make, @RequestParam(value = "model") String model, @RequestParam(value = "generation") String generation, HttpServletRequest request, HttpServletResponse response) {
-        var payLoad = new ApiResponsePayload<MotorVehicle>(publisher, payloadDescription, request.getRequestURL().append('?').append(request.getQueryString()).toString(), motorVehicleRepository.findMotorVehiclesByMakeAndModelAndGenerationContains(make, model, generation));
-        if (payLoad.getNumberOfRecords() == 0) {
-            response.setStatus((HttpServletResponse.SC_NOT_FOUND));
+    public CompletableFuture<ResponseEntity<byte[]>> motorVehicleMakeAndModelAndGeneration(@RequestParam(value = "make") String make, @RequestParam(value = "model") String model, @RequestParam(value = "generation") String generation, @RequestParam(value = "limit", required = false) Integer limit, @RequestParam(value = "cursor", required = false) String cursor, @RequestParam(value = "sort", required = false) String sort, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) {
+        return respond(withRanges(MotorVehicleQuery.byMakeAndModelAndGeneration(make, model, generation), request), page(limit, cursor, sort), pretty, request);
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/typed, a variant of the /motorVehicles queries returning MotorVehicleView
+     * objects with dateFrom and dateTo as yyyy-MM and newPrice as a number of pounds. make is required, model and
+     * generation are optional and follow the same rules as /motorVehicles (generation is ignored without a model).
+     * Range filters, including newPrice, dateFrom and dateTo, and paging work as for /motorVehicles.</p>
+     *
+     * @param make The make REST query parameter.
+     * @param model The optional model REST query parameter.
+     * @param generation The optional generation REST query parameter.
+     * @param limit The optional limit REST query parameter, maximum number of records to return.
+     * @param cursor The optional cursor REST query parameter, nextCursor of the previous page.
+     * @param sort The optional sort REST query parameter, power, torque, engineSize or dateFrom with an optional ,asc or ,desc.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, used to fetch original URL.
+     * @return Response containing response JSON metadata and List of MotorVehicleView objects, http error code 404 for zero records.
+     */
+    @RequestMapping(value = "/motorVehicles/typed", params = {"make"}, method = RequestMethod.GET)
+    public CompletableFuture<ResponseEntity<byte[]>> motorVehicleTyped(@RequestParam(value = "make") String make, @RequestParam(value = "model", required = false) String model, @RequestParam(value = "generation", required = false) String generation, @RequestParam(value = "limit", required = false) Integer limit, @RequestParam(value = "cursor", required = false) String cursor, @RequestParam(value = "sort", required = false) String sort, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) {
+        var query = withRanges(MotorVehicleQuery.of(make, model, generation), request);
+        var page = page(limit, cursor, sort);
+        String payloadURL = canonicalURL(request, query, page, pretty);
+        return respond("typed", query, payloadURL, pretty, request, () -> pagePayload(payloadURL, page,
+                motorVehicleStore.findViews(query.withPage(peek(page))), MotorVehiclePage::cursorAfter));
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/search, answers any combination of filters: equality on make, model, fuelType,
+     * transmission, country and gearbox, case insensitive contains on generation and trimVersion and the range
+     * filters of /motorVehicles. At least one filter is required, see MotorVehicleSearch. Paging works as for
+     * /motorVehicles.</p>
+     * <p>The X-Query-Plan response header shows how the store ran the search, for the catalog store the access
+     * path, estimated rows and rows left of each filter in the order applied. Search responses are not held in
+     * the MotorVehicleResponseCache so every response carries the plan it was answered with.</p>
+     *
+     * @param limit The optional limit REST query parameter, maximum number of records to return.
+     * @param cursor The optional cursor REST query parameter, nextCursor of the previous page.
+     * @param sort The optional sort REST query parameter, power, torque, engineSize or dateFrom with an optional ,asc or ,desc.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, the filters are read from its parameters.
+     * @return Response containing response JSON metadata and List of MotorVehicle entities, http error code 404 for zero records.
+     */
+    @RequestMapping(value = "/motorVehicles/search", method = RequestMethod.GET)
+    public CompletableFuture<ResponseEntity<byte[]>> motorVehicleSearch(@RequestParam(value = "limit", required = false) Integer limit, @RequestParam(value = "cursor", required = false) String cursor, @RequestParam(value = "sort", required = false) String sort, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) {
+        long start = System.nanoTime();
+        var search = search(request);
+        var page = page(limit, cursor, sort);
+        MotorVehicleFormat format = format(request);
+        String payloadURL = canonicalURL(request, search.canonicalParameters(), page, null, pretty);
+        return execute(() -> {
+            MotorVehicleSearch.Result result = motorVehicleMetrics.search("search", () -> motorVehicleStore.search(search.withPage(peek(page))));
+            ApiResponsePayload<MotorVehicle> payLoad = pagePayload(payloadURL, page, result.getVehicles(), MotorVehiclePage::cursorAfter);
+            HttpStatus status = (payLoad.getNumberOfRecords() == 0) ? HttpStatus.NOT_FOUND : HttpStatus.OK;
+            byte[] body = motorVehicleMetrics.serialization("search", () -> motorVehicleResponseWriter.write(payLoad, pretty, format));
+            motorVehicleMetrics.response("search", format.getMediaType(), false, start, payLoad.getNumberOfRecords(), body.length, false);
+            return ResponseEntity.status(status).contentType(format.getMediaType()).header(HttpHeaders.VARY, HttpHeaders.ACCEPT)
+                    .header(QUERY_PLAN_HEADER, result.getPlan()).body(body);
+        });
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/completions/make, returns the makes starting with a prefix, ignoring
+     * case, with their row counts ordered by count descending.</p>
+     *
+     * @param prefix The optional prefix REST query parameter, every make when empty.
+     * @param limit The optional limit REST query parameter, maximum number of completions, 10 by default.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, used to fetch original URL.
+     * @return Response containing response JSON metadata and List of completions, http error code 404 for zero records.
+     * @throws IOException If the response cannot be serialized.
+     */
+    @RequestMapping(value = "/motorVehicles/completions/make", method = RequestMethod.GET)
+    public ResponseEntity<byte[]> motorVehicleMakeCompletions(@RequestParam(value = "prefix", defaultValue = "") String prefix, @RequestParam(value = "limit", defaultValue = "10") int limit, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) throws IOException {
+        return completions(limit, pretty, request, () -> motorVehicleCompletions.makes(prefix, limit));
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/completions/model, returns the models of a make starting with a prefix,
+     * ignoring case, with their row counts ordered by count descending.</p>
+     *
+     * @param make The make REST query parameter, case sensitive.
+     * @param prefix The optional prefix REST query parameter, every model of the make when empty.
+     * @param limit The optional limit REST query parameter, maximum number of completions, 10 by default.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, used to fetch original URL.
+     * @return Response containing response JSON metadata and List of completions, http error code 404 for zero records.
+     * @throws IOException If the response cannot be serialized.
+     */
+    @RequestMapping(value = "/motorVehicles/completions/model", params = {"make"}, method = RequestMethod.GET)
+    public ResponseEntity<byte[]> motorVehicleModelCompletions(@RequestParam(value = "make") String make, @RequestParam(value = "prefix", defaultValue = "") String prefix, @RequestParam(value = "limit", defaultValue = "10") int limit, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) throws IOException {
+        return completions(limit, pretty, request, () -> motorVehicleCompletions.models(make, prefix, limit));
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/completions/generation, returns the generations of a make and model
+     * starting with a prefix, ignoring case, with their row counts ordered by count descending.</p>
+     *
+     * @param make The make REST query parameter, case sensitive.
+     * @param model The model REST query parameter, case sensitive.
+     * @param prefix The optional prefix REST query parameter, every generation of the make and model when empty.
+     * @param limit The optional limit REST query parameter, maximum number of completions, 10 by default.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, used to fetch original URL.
+     * @return Response containing response JSON metadata and List of completions, http error code 404 for zero records.
+     * @throws IOException If the response cannot be serialized.
+     */
+    @RequestMapping(value = "/motorVehicles/completions/generation", params = {"make", "model"}, method = RequestMethod.GET)
+    public ResponseEntity<byte[]> motorVehicleGenerationCompletions(@RequestParam(value = "make") String make, @RequestParam(value = "model") String model, @RequestParam(value = "prefix", defaultValue = "") String prefix, @RequestParam(value = "limit", defaultValue = "10") int limit, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) throws IOException {
+        return completions(limit, pretty, request, () -> motorVehicleCompletions.generations(make, model, prefix, limit));
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/stream, a streaming variant of the /motorVehicles queries for large
+     * result sets. make is required, model and generation are optional and follow the same rules as
+     * /motorVehicles (generation is ignored without a model).</p>
+     * <p>The response has the same fields as ApiResponsePayload but numberOfRecords is written after the
+     * payload entities. The status is always 200 as it is sent before the first entity is read.</p>
+     *
+     * @param make The make REST query parameter.
+     * @param model The optional model REST query parameter.
+     * @param generation The optional generation REST query parameter.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, used to fetch original URL.
+     * @return Response body writing the JSON document to the client as MotorVehicle entities are read.
+     */
+    @RequestMapping(value = "/motorVehicles/stream", params = {"make"}, method = RequestMethod.GET)
+    public ResponseEntity<StreamingResponseBody> motorVehicleStream(@RequestParam(value = "make") String make, @RequestParam(value = "model", required = false) String model, @RequestParam(value = "generation", required = false) String generation, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) {
+        var query = withRanges(MotorVehicleQuery.of(make, model, generation), request);
+        String payloadURL = requestURL(request);
+        long start = System.nanoTime();
+        StreamingResponseBody body = out -> {
+            int numberOfRecords = motorVehicleResponseWriter.<MotorVehicle>writeStreaming(out, publisher, payloadDescription, payloadURL, pretty,
+                    action -> motorVehicleStore.forEachMotorVehicle(query, action));
+            motorVehicleMetrics.response("stream", MediaType.APPLICATION_JSON, false, start, numberOfRecords, -1, false);
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/aggregations, returns facet counts per fuelType, transmission and
+     * country and the min, max and average of power, torque, engineSize and fuelCapacity over the rows
+     * matching the query instead of the rows themselves. make is required, model and generation are optional
+     * and follow the same rules as /motorVehicles (generation is ignored without a model).</p>
+     * <p>The payload holds a single MotorVehicleAggregations, or is empty with http error code 404 when no row
+     * matches. Responses are cached like /motorVehicles responses.</p>
+     *
+     * @param make The make REST query parameter.
+     * @param model The optional model REST query parameter.
+     * @param generation The optional generation REST query parameter.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, used to fetch original URL.
+     * @return Response containing response JSON metadata and the aggregations, http error code 404 for zero records.
+     */
+    @RequestMapping(value = "/motorVehicles/aggregations", params = {"make"}, method = RequestMethod.GET)
+    public CompletableFuture<ResponseEntity<byte[]>> motorVehicleAggregations(@RequestParam(value = "make") String make, @RequestParam(value = "model", required = false) String model, @RequestParam(value = "generation", required = false) String generation, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) {
+        var query = withRanges(MotorVehicleQuery.of(make, model, generation), request);
+        String payloadURL = canonicalURL(request, query, null, pretty);
+        return respond("aggregations", query, payloadURL, pretty, request, () -> {
+            MotorVehicleAggregations aggregations = motorVehicleStore.aggregate(query);
+            return new ApiResponsePayload<MotorVehicleAggregations>(publisher, payloadDescription + " aggregations", payloadURL,
+                    (aggregations.getNumberOfRecords() == 0) ? List.of() : List.of(aggregations));
+        });
+    }
+
+    /**
+     * <p>Controller for POST /motorVehicles/batch, resolves a JSON array of make/model(/generation) tuples
+     * with a single MotorVehicleStore call instead of one request per tuple.</p>
+     * <p>Tuples are not paged. Duplicate tuples are only queried once but each appears in the response.
+     * A missing make or more than motorvehicle.batch.max-queries tuples return http error 400.</p>
+     *
+     * @param items The request body, a JSON array of MotorVehicleBatchItem.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, used to fetch original URL.
+     * @return Response containing response JSON metadata and a List with one ApiResponsePayload per tuple.
+     */
+    @RequestMapping(value = "/motorVehicles/batch", method = RequestMethod.POST)
+    public CompletableFuture<ResponseEntity<byte[]>> motorVehicleBatch(@RequestBody List<MotorVehicleBatchItem> items, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) {
+        long start = System.nanoTime();
+        if (items.size() > maxBatchQueries) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A batch is limited to " + maxBatchQueries + " queries");
+        }
+        List<MotorVehicleQuery> queries = new ArrayList<>(items.size());
+        for (MotorVehicleBatchItem item : items) {
+            try {
+                queries.add(item.toQuery());
+            } catch (IllegalArgumentException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+            }
+        }
+        MotorVehicleFormat format = format(request);
+        String requestURL = request.getRequestURL().toString();
+        String baseURL = requestURL.replaceFirst("/batch$", "");
+        return execute(() -> {
+            Map<MotorVehicleQuery, List<MotorVehicle>> results = motorVehicleMetrics.query("batch", null, () -> motorVehicleStore.findAll(queries));
+            List<ApiResponsePayload<MotorVehicle>> payloads = new ArrayList<>(queries.size());
+            for (MotorVehicleQuery query : queries) {
+                payloads.add(new ApiResponsePayload<MotorVehicle>(publisher, payloadDescription, baseURL + '?' + query.canonicalParameters(), results.get(query)));
+            }
+            var payLoad = new ApiResponsePayload<ApiResponsePayload<MotorVehicle>>(publisher, payloadDescription + " batch", requestURL, payloads);
+            byte[] body = motorVehicleMetrics.serialization("batch", () -> motorVehicleResponseWriter.write(payLoad, pretty, format));
+            motorVehicleMetrics.response("batch", format.getMediaType(), false, start, payLoad.getNumberOfRecords(), body.length, false);
+            return ResponseEntity.ok().contentType(format.getMediaType()).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(body);
+        });
+    }
+
+    /**
+     * <p>Controller for POST /motorVehicles/import, replaces every MotorVehicle row with the rows of the CSV
+     * request body (Content-Type text/csv), then refreshes the catalog and clears the response cache. The rows
+     * are inserted into a staging table, committing each JDBC batch, and swapped in with one atomic synonym
+     * change once every row is in, see MotorVehicleImporter. Reads are served from the previous dataset until
+     * the swap, a failed import leaves it in place.</p>
+     * <p>Returns http error 403 unless motorvehicle.import.enabled is true, 400 for an invalid CSV file and
+     * 409 while another import is running.</p>
+     *
+     * @param request Request object for REST API query, the CSV file is read from its body.
+     * @return The number of rows imported and the time taken.
+     * @throws IOException If the request body cannot be read.
+     * @throws SQLException If the database update fails.
+     */
+    @RequestMapping(value = "/motorVehicles/import", method = RequestMethod.POST, consumes = "text/csv")
+    public MotorVehicleImporter.Result motorVehicleImport(HttpServletRequest request) throws IOException, SQLException {
+        if (!importEnabled) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Import is disabled, set motorvehicle.import.enabled=true");
+        }
+        Charset charset = (request.getCharacterEncoding() == null) ? StandardCharsets.UTF_8 : Charset.forName(request.getCharacterEncoding());
+        try (Reader csv = new InputStreamReader(request.getInputStream(), charset)) {
+            return motorVehicleImporter.importCsv(csv);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * <p>Controller for POST /motorVehicles, creates a row from the JSON request body, a MotorVehicle without
+     * an id, and logs the change.</p>
+     * <p>Returns http error 403 unless motorvehicle.write.enabled is true and 400 without make or model.</p>
+     *
+     * @param vehicle The request body.
+     * @return http status 201 with the CREATE change, holding the new row and its id.
+     * @throws SQLException If the database update fails.
+     */
+    @RequestMapping(value = "/motorVehicles", method = RequestMethod.POST)
+    public ResponseEntity<MotorVehicleChange> motorVehicleCreate(@RequestBody MotorVehicle vehicle) throws SQLException {
+        checkWriteEnabled();
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(motorVehicleWriter.create(vehicle));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * <p>Controller for PUT /motorVehicles/{id}, replaces every column of a row with those of the JSON request
+     * body and logs the change. The id of the body is ignored.</p>
+     * <p>Returns http error 403 unless motorvehicle.write.enabled is true, 400 without make or model and 404
+     * for an unknown id.</p>
+     *
+     * @param id The id path variable.
+     * @param vehicle The request body.
+     * @return The UPDATE change.
+     * @throws SQLException If the database update fails.
+     */
+    @RequestMapping(value = "/motorVehicles/{id}", method = RequestMethod.PUT)
+    public MotorVehicleChange motorVehicleUpdate(@PathVariable("id") long id, @RequestBody MotorVehicle vehicle) throws SQLException {
+        checkWriteEnabled();
+        try {
+            return motorVehicleWriter.update(id, vehicle);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * <p>Controller for DELETE /motorVehicles/{id}, deletes a row and logs the change.</p>
+     * <p>Returns http error 403 unless motorvehicle.write.enabled is true and 404 for an unknown id.</p>
+     *
+     * @param id The id path variable.
+     * @return The DELETE change.
+     * @throws SQLException If the database update fails.
+     */
+    @RequestMapping(value = "/motorVehicles/{id}", method = RequestMethod.DELETE)
+    public MotorVehicleChange motorVehicleDelete(@PathVariable("id") long id) throws SQLException {
+        checkWriteEnabled();
+        try {
+            return motorVehicleWriter.delete(id);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/changes, the incremental synchronization feed. Returns the latest change
+     * of each row changed after the since version, in version order, see MotorVehicleChange. A mirror
+     * applies them and asks again with the version of the last one, or the nextCursor when there are more.</p>
+     * <p>The X-Change-Version header holds the latest version. A new mirror reads it before copying the
+     * dataset through the other endpoints, then follows the changes from it. Changes made while copying are
+     * returned again and can be applied twice.</p>
+     * <p>An empty payload means the mirror is up to date. If the dataset was imported after the since version
+     * the changes cannot be replayed, the response is http error 410 and the mirror has to copy the dataset
+     * again.</p>
+     *
+     * @param since The since REST query parameter, the version the caller has synchronized to.
+     * @param limit The optional limit REST query parameter, maximum number of changes, motorvehicle.page.max-limit by default.
+     * @param pretty The optional pretty REST query parameter, true to pretty print the JSON response.
+     * @param request Request object for REST API query, used to fetch original URL.
+     * @return Response containing response JSON metadata and List of MotorVehicleChange.
+     * @throws IOException If the response cannot be serialized.
+     * @throws SQLException If the change log cannot be read.
+     */
+    @RequestMapping(value = "/motorVehicles/changes", params = {"since"}, method = RequestMethod.GET)
+    public ResponseEntity<byte[]> motorVehicleChanges(@RequestParam(value = "since") long since, @RequestParam(value = "limit", required = false) Integer limit, @RequestParam(value = "pretty", defaultValue = "false") boolean pretty, HttpServletRequest request) throws IOException, SQLException {
+        long start = System.nanoTime();
+        int max = (limit == null) ? maxLimit : limit;
+        if (since < 0 || max < 1 || max > maxLimit) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "since must not be negative and limit must be between 1 and " + maxLimit);
+        }
+        MotorVehicleFormat format = format(request);
+        long version = motorVehicleWriter.getVersion();
+        // Ask for one extra change to find out whether there are more.
+        List<MotorVehicleChange> changes = motorVehicleWriter.changes(since, max + 1);
+        // Checked after reading the changes so an import committed meanwhile is noticed.
+        boolean reset = since < motorVehicleWriter.getResetVersion();
+        String nextCursor = null;
+        if (reset) {
+            changes = List.of();
+        } else if (changes.size() > max) {
+            changes = changes.subList(0, max);
+            nextCursor = Long.toString(changes.get(max - 1).getVersion());
+        }
+        var payLoad = new ApiResponsePayload<MotorVehicleChange>(publisher, payloadDescription + " changes", requestURL(request), changes, nextCursor);
+        byte[] body = motorVehicleResponseWriter.write(payLoad, pretty, format);
+        motorVehicleMetrics.response("changes", format.getMediaType(), false, start, payLoad.getNumberOfRecords(), body.length, false);
+        return ResponseEntity.status(reset ? HttpStatus.GONE : HttpStatus.OK).contentType(format.getMediaType())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT).header(CHANGE_VERSION_HEADER, Long.toString(version)).body(body);
+    }
+
+    /**
+     * <p>Controller for /motorVehicles/cache, returns the MotorVehicleResponseCache hit, miss and eviction
+     * counters and its current size.</p>
+     * @return Cache statistics.
+     */
+    @RequestMapping(value = "/motorVehicles/cache", method = RequestMethod.GET)
+    public MotorVehicleResponseCache.Statistics motorVehicleCacheStatistics() {
+        return motorVehicleResponseCache.getStatistics();
+    }
+
+    private void checkWriteEnabled() {
+        if (!writeEnabled) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Writes are disabled, set motorvehicle.write.enabled=true");
+        }
+    }
+
+    private CompletableFuture<ResponseEntity<byte[]>> respond(MotorVehicleQuery query, MotorVehiclePage page, boolean pretty, HttpServletRequest request) {
+        MotorVehicleFields fields = fields(request);
+        String payloadURL = canonicalURL(request, query, page, fields, pretty);
+        var pageQuery = query.withPage(peek(page));
+        if (fields != null) {
+            return respond("find", query, payloadURL, pretty, request, () -> pagePayload(payloadURL, page,
+                    motorVehicleStore.find(pageQuery, fields), MotorVehiclePage::cursorAfter));
+        }
+        return respond("find", query, payloadURL, pretty, request, () -> pagePayload(payloadURL, page,
+                motorVehicleStore.find(pageQuery), MotorVehiclePage::cursorAfter));
+    }
+
+    /**
+     * @return A copy of the page asking for one extra record to find out whether there is a next page, null
+     * when the query is not paged.
+     */
+    private static MotorVehiclePage peek(MotorVehiclePage page) {
+        return (page == null) ? null : page.withLimit(page.getLimit() + 1);
+    }
+
+    /**
+     * <p>Builds the payload for a page from up to one more record than the page limit, adding a nextCursor
+     * when the extra record shows there is a next page. Without a page every record is returned.</p>
+     */
+    private static <T> ApiResponsePayload<T> pagePayload(String payloadURL, MotorVehiclePage page, List<T> records, BiFunction<MotorVehiclePage, T, String> cursorAfter) {
+        String nextCursor = null;
+        if (page != null && records.size() > page.getLimit()) {
+            records = records.subList(0, page.getLimit());
+            nextCursor = cursorAfter.apply(page, records.get(records.size() - 1));
+        }
+        return new ApiResponsePayload<T>(publisher, payloadDescription, payloadURL, records, nextCursor);
+    }
+
+    /**
+     * <p>Sends the cached response for payloadURL in the format negotiated from the Accept header, building,
+     * serializing and caching the payload first on a cache miss. Payloads with zero records are sent with
+     * http error code 404. The store call, the serialization and the whole response are recorded by
+     * MotorVehicleMetrics under the endpoint name.</p>
+     * <p>Cache hits are answered on the calling thread, misses are built by execute, once for all the identical
+     * requests in flight.</p>
+     */
+    private CompletableFuture<ResponseEntity<byte[]>> respond(String endpoint, MotorVehicleQuery query, String payloadURL, boolean pretty, HttpServletRequest request, Supplier<ApiResponsePayload<?>> payload) {
+        long start = System.nanoTime();
+        // Read the request headers on the container thread, the task below may run after the handler returned.
+        MotorVehicleFormat format = format(request);
+        boolean acceptsGzip = acceptsGzip(request);
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        String cacheKey = format.cacheKey(payloadURL);
+        MotorVehicleResponseCache.CachedResponse cached = motorVehicleResponseCache.get(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(send(endpoint, format, true, start, cached, acceptsGzip, ifNoneMatch));
+        }
+        long stamp = motorVehicleResponseCache.stamp();
+        // Identical requests in flight share one query and serialization, each gets its own gzip and ETag handling.
+        return motorVehicleRequestCoalescer.execute(endpoint, cacheKey, () -> execute(() -> {
+            ApiResponsePayload<?> payLoad = motorVehicleMetrics.query(endpoint, query, payload);
+            HttpStatus status = (payLoad.getNumberOfRecords() == 0) ? HttpStatus.NOT_FOUND : HttpStatus.OK;
+            byte[] body = motorVehicleMetrics.serialization(endpoint, () -> motorVehicleResponseWriter.write(payLoad, pretty, format));
+            return motorVehicleResponseCache.put(cacheKey, query, stamp, status, body, payLoad.getNumberOfRecords());
+        })).thenApply(response -> send(endpoint, format, false, start, response, acceptsGzip, ifNoneMatch));
+    }
+
+    private ResponseEntity<byte[]> send(String endpoint, MotorVehicleFormat format, boolean cacheHit, long start, MotorVehicleResponseCache.CachedResponse response, boolean acceptsGzip, String ifNoneMatch) {
+        // Spring answers 304 Not Modified for a 200 response whose ETag matches If-None-Match.
+        var builder = ResponseEntity.status(response.getStatus()).contentType(format.getMediaType())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+        boolean gzip = response.getGzipBody() != null && acceptsGzip;
+        String etag = gzip ? response.getGzipEtag() : response.getEtag();
+        byte[] body = gzip ? response.getGzipBody() : response.getBody();
+        boolean notModified = ifNoneMatch != null && ifNoneMatch.contains(etag);
+        motorVehicleMetrics.response(endpoint, format.getMediaType(), cacheHit, start, response.getNumberOfRecords(), notModified ? 0 : body.length, gzip);
+        if (gzip) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return builder.eTag(etag).body(body);
+    }
+
+    /**
+     * <p>Sends the completions of a completion endpoint in the format negotiated from the Accept header, with
+     * http error code 404 if there are none. Completions are not cached and are built on the calling thread.</p>
+     * @throws ResponseStatusException With http error code 400 if limit is not between 1 and the maximum.
+     */
+    private ResponseEntity<byte[]> completions(int limit, boolean pretty, HttpServletRequest request, Supplier<List<MotorVehicleCompletions.Completion>> completions) throws IOException {
+        long start = System.nanoTime();
+        if (limit < 1 || limit > maxCompletions) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "limit must be between 1 and " + maxCompletions);
+        }
+        MotorVehicleFormat format = format(request);
+        var payLoad = new ApiResponsePayload<MotorVehicleCompletions.Completion>(publisher, payloadDescription + " completions",
+                (request.getQueryString() == null) ? request.getRequestURL().toString() : requestURL(request), completions.get());
+        HttpStatus status = (payLoad.getNumberOfRecords() == 0) ? HttpStatus.NOT_FOUND : HttpStatus.OK;
+        byte[] body = motorVehicleResponseWriter.write(payLoad, pretty, format);
+        motorVehicleMetrics.response("completions", format.getMediaType(), false, start, payLoad.getNumberOfRecords(), body.length, false);
+        return ResponseEntity.status(status).contentType(format.getMediaType()).header(HttpHeaders.VARY, HttpHeaders.ACCEPT).body(body);
+    }
+
+    /**
+     * <p>Runs a task on the motorVehicleTaskExecutor when motorvehicle.async.enabled is true, otherwise on the
+     * calling thread. Exceptions thrown by the task complete the future exceptionally and are resolved by
+     * Spring MVC as if thrown by the handler.</p>
+     * @throws ResponseStatusException With http error code 503 if the executor queue is full.
+     */
+    private <T> CompletableFuture<T> execute(Callable<T> task) {
+        if (!async) {
+            try {
+                return CompletableFuture.completedFuture(task.call());
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return task.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, motorVehicleTaskExecutor);
+        } catch (RejectedExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many motor vehicle requests in progress", e);
+        }
+    }
+
+    private String canonicalURL(HttpServletRequest request, MotorVehicleQuery query, MotorVehiclePage page, boolean pretty) {
+        return canonicalURL(request, query, page, null, pretty);
+    }
+
+    private String canonicalURL(HttpServletRequest request, MotorVehicleQuery query, MotorVehiclePage page, MotorVehicleFields fields, boolean pretty) {
+        return canonicalURL(request, query.canonicalParameters(), page, fields, pretty);
+    }
+
+    private String canonicalURL(HttpServletRequest request, String parameters, MotorVehiclePage page, MotorVehicleFields fields, boolean pretty) {
+        var url = request.getRequestURL().append('?').append(parameters);
+        String pageParameters = (page == null) ? "" : page.canonicalParameters(maxLimit);
+        if (!pageParameters.isEmpty()) {
+            url.append('&').append(pageParameters);
+        }
+        if (fields != null) {
+            url.append("&fields=").append(fields.canonicalParameter());
+        }
+        if (pretty) {
+            url.append("&pretty=true");
+        }
+        return url.toString();
+    }
+
+    /**
+     * <p>Negotiates the MotorVehicleFormat from the Accept header, an Accept header matching none of the
+     * formats returns http error 406.</p>
+     */
+    private static MotorVehicleFormat format(HttpServletRequest request) {
+        try {
+            return MotorVehicleFormat.negotiate(request.getHeader(HttpHeaders.ACCEPT));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_ACCEPTABLE, e.getMessage(), e);
+        }
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>Adds the MotorVehicleRange filters present in the request query parameters, invalid ranges
+     * return http error 400.</p>
+     */
+    private static MotorVehicleQuery withRanges(MotorVehicleQuery query, HttpServletRequest request) {
+        try {
+            return query.withRanges(ranges(request));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException If a range is invalid.
+     */
+    private static List<MotorVehicleRange> ranges(HttpServletRequest request) {
+        List<MotorVehicleRange> ranges = new ArrayList<>();
+        for (String attribute : MotorVehicleRange.attributes()) {
+            String value = request.getParameter(attribute);
+            if (value != null) {
+                ranges.add(MotorVehicleRange.parse(attribute, value));
+            }
         }
-        return payLoad;
+        return ranges;
     }
 
+    /**
+     * <p>Reads the optional fields query parameter, an unknown field returns http error 400.</p>
+     * @return The selected fields, null for whole MotorVehicle entities.
+     */
+    private static MotorVehicleFields fields(HttpServletRequest request) {
+        String fields = request.getParameter("fields");
+        if (fields == null) {
+            return null;
+        }
+        try {
+            return MotorVehicleFields.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * <p>Reads the MotorVehicleSearch filters from the request query parameters, invalid filters or a search
+     * without any return http error 400.</p>
+     */
+    private static MotorVehicleSearch search(HttpServletRequest request) {
+        Map<String, String> filters = new HashMap<>();
+        for (String field : MotorVehicleSearch.EQUALS) {
+            if (request.getParameter(field) != null) {
+                filters.put(field, request.getParameter(field));
+            }
+        }
+        for (String field : MotorVehicleSearch.CONTAINS) {
+            if (request.getParameter(field) != null) {
+                filters.put(field, request.getParameter(field));
+            }
+        }
+        try {
+            return MotorVehicleSearch.of(filters, ranges(request));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return The page of the paging parameters, null for all records in id order when none of them is given.
+     */
+    private MotorVehiclePage page(Integer limit, String cursor, String sort) {
+        if (limit == null && (cursor == null || cursor.isEmpty()) && (sort == null || sort.isEmpty())) {
+            return null;
+        }
+        try {
+            return MotorVehiclePage.of(limit, cursor, sort, maxLimit);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+    }
+
+    private static ResponseEntity<byte[]> json(HttpStatus status, byte[] body) {
+        return ResponseEntity.status(status).contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    private static String requestURL(HttpServletRequest request) {
+        return request.getRequestURL().append('?').append(request.getQueryString()).toString();
+    }
 
 }
@@ -0,0 +1,115 @@
+package au.com.formis.springbootdemo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Streaming RFC 4180 CSV record reader used by the MotorVehicleImporter.</p>
+ * <p></p>
+ * <p>Records are read one at a time through a fixed size buffer, so memory use does not depend on the
+ * file size. Fields may be quoted, quoted fields may hold commas, doubled quotes and line breaks.
+ * Records end with LF or CRLF, empty lines are skipped and a leading byte order mark is ignored.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleImporter
+ * @since       0.1
+ * </p>
+ */
+final class MotorVehicleCsvReader {
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+    private final char[] buffer = new char[64 * 1024];
+    private final StringBuilder field = new StringBuilder(64);
+    private int position;
+    private int limit;
+    private long line = 1;
+    private long recordLine;
+
+    MotorVehicleCsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return Line number the last record returned by next started on, for error messages.
+     */
+    long getLine() {
+        return recordLine;
+    }
+
+    /**
+     * @return The fields of the next record, null at the end of the input.
+     * @throws IOException If reading fails.
+     * @throws IllegalArgumentException If a quoted field is not closed.
+     */
+    String[] next() throws IOException {
+        int c = read();
+        while (c == '\r' || c == '\n') {
+            if (c == '\n') {
+                line++;
+            }
+            c = read();
+        }
+        if (c == EOF) {
+            return null;
+        }
+        if (c == '\uFEFF' && line == 1) {
+            c = read();
+        }
+        List<String> fields = new ArrayList<>(20);
+        recordLine = line;
+        while (true) {
+            field.setLength(0);
+            if (c == '"') {
+                while (true) {
+                    c = read();
+                    if (c == EOF) {
+                        throw new IllegalArgumentException("Unterminated quoted field starting on line " + recordLine);
+                    }
+                    if (c == '"') {
+                        c = read();
+                        if (c != '"') {
+                            break;
+                        }
+                    } else if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            }
+            while (c != ',' && c != '\n' && c != EOF) {
+                if (c != '\r') {
+                    field.append((char) c);
+                }
+                c = read();
+            }
+            fields.add(field.toString());
+            if (c != ',') {
+                break;
+            }
+            c = read();
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+}
@@ -0,0 +1,72 @@
+package au.com.formis.springbootdemo;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.flyway.FlywayMigrationStrategy;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Replaces the spring.datasource DataSource with a MotorVehicleRoutingDataSource over the primary data/myDB
+ * pool and <code>motorvehicle.replicas.count</code> MotorVehicleReplicas, when the count is above 0.</p>
+ * <p></p>
+ * <p>The primary pool is still built from the spring.datasource properties and sized by
+ * spring.datasource.hikari.maximum-pool-size, each replica pool by motorvehicle.replicas.pool-size. The replicas
+ * are migrated and loaded by the Flyway migration strategy, right after the primary is migrated and before the
+ * EntityManagerFactory and the stores reading through it are created.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleReplicas
+ * @see au.com.formis.springbootdemo.MotorVehicleRoutingDataSource
+ * @since       0.1
+ * </p>
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnExpression("${motorvehicle.replicas.count:0} > 0")
+public class MotorVehicleDataSourceConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public MotorVehicleReplicas motorVehicleReplicas(HikariDataSource primaryDataSource,
+                                                     @Value("${motorvehicle.replicas.count}") int count,
+                                                     @Value("${motorvehicle.replicas.pool-size:10}") int poolSize,
+                                                     @Value("${motorvehicle.replicas.selection:round-robin}") String selection,
+                                                     MeterRegistry meterRegistry) {
+        return new MotorVehicleReplicas(primaryDataSource, count, poolSize, selection, meterRegistry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, MotorVehicleReplicas motorVehicleReplicas) {
+        return new LazyConnectionDataSourceProxy(new MotorVehicleRoutingDataSource(primaryDataSource, motorVehicleReplicas));
+    }
+
+    @Bean
+    public FlywayMigrationStrategy motorVehicleReplicaMigrationStrategy(MotorVehicleReplicas motorVehicleReplicas) {
+        return flyway -> {
+            flyway.migrate();
+            motorVehicleReplicas.migrate(flyway.getConfiguration());
+            try {
+                motorVehicleReplicas.load();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not load the motor vehicle replicas", e);
+            }
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package au.com.formis.springbootdemo;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.task.TaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>The bounded motorVehicleTaskExecutor running the /motorVehicles store calls and serialization when
+ * motorvehicle.async.enabled is true, sized by motorvehicle.async.pool-size and motorvehicle.async.queue-capacity.
+ * A task submitted while the queue is full is rejected, which the MotorVehicleController answers with http
+ * error 503.</p>
+ * <p></p>
+ * <p>Declaring an Executor bean turns off the Spring Boot applicationTaskExecutor, so it is declared here as well,
+ * built from the spring.task.execution properties as Spring Boot would. Spring MVC keeps using it for
+ * /motorVehicles/stream and the motor vehicle settings do not change it.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @see au.com.formis.springbootdemo.MotorVehicleMetrics
+ * @since       0.1
+ * </p>
+ */
+@Configuration(proxyBeanMethods = false)
+public class MotorVehicleExecutorConfiguration {
+
+    @Bean
+    public ThreadPoolTaskExecutor motorVehicleTaskExecutor(@Value("${motorvehicle.async.pool-size:16}") int poolSize,
+                                                           @Value("${motorvehicle.async.queue-capacity:10000}") int queueCapacity) {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("motorvehicle-");
+        return executor;
+    }
+
+    @Lazy
+    @Bean(name = {TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME, "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(TaskExecutorBuilder builder) {
+        return builder.build();
+    }
+}
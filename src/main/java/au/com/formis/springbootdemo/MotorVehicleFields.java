@@ -0,0 +1,157 @@
+package au.com.formis.springbootdemo;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable selection of the MotorVehicle properties a /motorVehicles response should hold.</p>
+ * <p></p>
+ * <p>Built from the fields REST query parameter, a comma separated list of MotorVehicle JSON property
+ * names, for example fields=make,model,trimVersion,power. The fields are held, queried and written in the
+ * MotorVehicle property order whatever order they were requested in, so requests for the same fields share
+ * a canonical URL and response cache entry.</p>
+ * <p>The stores only read the selected columns, see MotorVehicleStore.find(MotorVehicleQuery, MotorVehicleFields),
+ * and return MotorVehicleProjection records that only serialize the selected properties.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleProjection
+ * @see au.com.formis.springbootdemo.MotorVehicleStore
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleFields {
+
+    // LinkedHashMap iteration order is the MotorVehicle property order.
+    private static final Map<String, Function<MotorVehicle, Object>> PROPERTIES = new LinkedHashMap<>();
+
+    static {
+        PROPERTIES.put("id", MotorVehicle::getId);
+        PROPERTIES.put("make", MotorVehicle::getMake);
+        PROPERTIES.put("model", MotorVehicle::getModel);
+        PROPERTIES.put("generation", MotorVehicle::getGeneration);
+        PROPERTIES.put("trimVersion", MotorVehicle::getTrimVersion);
+        PROPERTIES.put("dateFrom", MotorVehicle::getDateFrom);
+        PROPERTIES.put("dateTo", MotorVehicle::getDateTo);
+        PROPERTIES.put("newPrice", MotorVehicle::getNewPrice);
+        PROPERTIES.put("power", MotorVehicle::getPower);
+        PROPERTIES.put("torque", MotorVehicle::getTorque);
+        PROPERTIES.put("fuelCapacity", MotorVehicle::getFuelCapacity);
+        PROPERTIES.put("engineSize", MotorVehicle::getEngineSize);
+        PROPERTIES.put("cylinders", MotorVehicle::getCylinders);
+        PROPERTIES.put("valves", MotorVehicle::getValves);
+        PROPERTIES.put("fuelType", MotorVehicle::getFuelType);
+        PROPERTIES.put("transmission", MotorVehicle::getTransmission);
+        PROPERTIES.put("gearbox", MotorVehicle::getGearbox);
+        PROPERTIES.put("country", MotorVehicle::getCountry);
+    }
+
+    private static final List<String> PROPERTY_NAMES = List.copyOf(PROPERTIES.keySet());
+
+    private final List<String> names;
+
+    private MotorVehicleFields(List<String> names) {
+        this.names = names;
+    }
+
+    /**
+     * @return Every property that can be selected, in MotorVehicle property order.
+     */
+    public static List<String> properties() {
+        return PROPERTY_NAMES;
+    }
+
+    /**
+     * @param fields The fields REST query parameter, comma separated MotorVehicle property names.
+     * @return The selection, in MotorVehicle property order without duplicates.
+     * @throws IllegalArgumentException If no field or an unknown field is given.
+     */
+    public static MotorVehicleFields parse(String fields) {
+        List<String> requested = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!name.isEmpty()) {
+                if (!PROPERTIES.containsKey(name)) {
+                    throw new IllegalArgumentException("Unknown field '" + name + "', expected one of " + String.join(", ", PROPERTY_NAMES));
+                }
+                requested.add(name);
+            }
+        }
+        if (requested.isEmpty()) {
+            throw new IllegalArgumentException("fields must name at least one of " + String.join(", ", PROPERTY_NAMES));
+        }
+        List<String> names = new ArrayList<>(requested.size());
+        for (String name : PROPERTY_NAMES) {
+            if (requested.contains(name)) {
+                names.add(name);
+            }
+        }
+        return new MotorVehicleFields(List.copyOf(names));
+    }
+
+    /**
+     * @return Selected MotorVehicle property names, also the JPA attribute names, in MotorVehicle property order.
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * @param vehicle MotorVehicle entity.
+     * @param property One of properties.
+     * @return The value of the property of the entity.
+     */
+    static Object value(MotorVehicle vehicle, String property) {
+        return PROPERTIES.get(property).apply(vehicle);
+    }
+
+    /**
+     * @param vehicle MotorVehicle entity.
+     * @param sortKey Page sort key of the entity.
+     * @return A projection holding the selected properties of the entity.
+     */
+    public MotorVehicleProjection project(MotorVehicle vehicle, int sortKey) {
+        Object[] values = new Object[names.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = PROPERTIES.get(names.get(i)).apply(vehicle);
+        }
+        return new MotorVehicleProjection(this, vehicle.getId(), sortKey, values);
+    }
+
+    /**
+     * @return Canonical fields query parameter value, see MotorVehicleQuery.canonicalParameters.
+     */
+    public String canonicalParameter() {
+        return String.join(",", names);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MotorVehicleFields)) {
+            return false;
+        }
+        return names.equals(((MotorVehicleFields) o).names);
+    }
+
+    @Override
+    public int hashCode() {
+        return names.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "MotorVehicleFields" + names;
+    }
+}
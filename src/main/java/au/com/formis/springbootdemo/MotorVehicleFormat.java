@@ -0,0 +1,78 @@
+package au.com.formis.springbootdemo;
+
+import java.util.List;
+import org.springframework.http.MediaType;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Response body formats of the /motorVehicles queries, chosen from the request Accept header.</p>
+ * <p></p>
+ * <ul>
+ *     <li>JSON - application/json, the ApiResponsePayload as compact JSON (the default).</li>
+ *     <li>COLUMNS - application/vnd.motorvehicle.columns+json, the ApiResponsePayload JSON with the payload
+ *     written column by column, an object holding one array of values per field, so each field name is
+ *     written once instead of once per record.</li>
+ *     <li>SMILE - application/x-jackson-smile, the ApiResponsePayload as binary Smile.</li>
+ *     <li>CBOR - application/cbor, the ApiResponsePayload as binary CBOR (RFC 8949).</li>
+ * </ul>
+ * <p>The Accept media types are tried by quality then specificity and the first format they include wins,
+ * wildcards and a missing Accept header select JSON.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleResponseWriter
+ * @since       0.1
+ * </p>
+ */
+public enum MotorVehicleFormat {
+
+    JSON(MediaType.APPLICATION_JSON),
+    COLUMNS(new MediaType("application", "vnd.motorvehicle.columns+json")),
+    SMILE(new MediaType("application", "x-jackson-smile")),
+    CBOR(MediaType.APPLICATION_CBOR);
+
+    private final MediaType mediaType;
+
+    MotorVehicleFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * @param accept Request Accept header, may be null.
+     * @return The format to respond with.
+     * @throws IllegalArgumentException If the header is invalid or accepts none of the formats.
+     */
+    public static MotorVehicleFormat negotiate(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON;
+        }
+        List<MediaType> accepted = MediaType.parseMediaTypes(accept);
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType mediaType : accepted) {
+            if (mediaType.getQualityValue() == 0) {
+                continue;
+            }
+            for (MotorVehicleFormat format : values()) {
+                if (mediaType.includes(format.mediaType)) {
+                    return format;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Cannot respond with " + accept + ", expected one of " + JSON.mediaType + ", "
+                + COLUMNS.mediaType + ", " + SMILE.mediaType + " or " + CBOR.mediaType);
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param payloadURL Canonical request URL of the response.
+     * @return MotorVehicleResponseCache key of the response in this format.
+     */
+    public String cacheKey(String payloadURL) {
+        // A URL has no fragment part here, so the suffix cannot collide with another request.
+        return (this == JSON) ? payloadURL : payloadURL + '#' + name();
+    }
+}
@@ -0,0 +1,369 @@
+package au.com.formis.springbootdemo;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import org.hibernate.Cache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Replaces the MOTORVEHICLE table with the rows of a CSV file in the teoalida car dataset layout.</p>
+ * <p></p>
+ * <p>The first record is the header. Columns are matched by name ignoring case, spaces and punctuation,
+ * so "Trim / Version", "trim_version" and "TrimVersion" are the same column, and unknown columns are
+ * ignored. make and model are required. A missing or blank int column is stored as 0, a blank text column
+ * as null. When there is no id column rows are numbered from 1 in file order.</p>
+ * <p></p>
+ * <p>The file is streamed through a MotorVehicleCsvReader and written with plain JDBC batch inserts of
+ * motorvehicle.import.batch-size rows, bypassing Hibernate, into a staging table that readers cannot see.
+ * Each batch is committed so the transaction stays small. motorvehicle is then an H2 synonym for one of two
+ * physical tables, motorvehicle_a and motorvehicle_b. The new dataset is swapped in by pointing the synonym
+ * at the staging table in a single statement, so readers see either the old or the new rows and are never
+ * offline, and nothing changes if a row is invalid. Deleting the old rows instead would cost as much as
+ * inserting them. The replaced table is dropped by the next import rather than under readers still
+ * streaming from it. The first import renames the original motorvehicle table, leaving a sub-millisecond
+ * window in which JPA queries can fail.</p>
+ * <p>The staging table copies the column types of motorvehicle and is given the same computed
+ * generation_lower column and make, model, generation index as the db/migration scripts, the index is
+ * built once the rows are in. As motorvehicle is a synonym after the first import, migrations altering
+ * the table have to alter the motorvehicle_a or motorvehicle_b table it points to.</p>
+ * <p>After the swap the motorvehicle_seq id sequence is moved past the new ids, any MotorVehicleReplicas are
+ * loaded with the new rows, the MotorVehicleCatalog snapshot is replaced with one built from the imported
+ * rows without reading them back, the MotorVehicleCompletions are reloaded, and the Hibernate second-level
+ * and query caches and the MotorVehicleResponseCache are cleared.</p>
+ * <p>The import is logged as a RESET in the MotorVehicleWriter change log, mirrors synchronized to an earlier
+ * version have to read the whole dataset again.</p>
+ * <p>One import runs at a time, a second concurrent import, or one started during a MotorVehicleWriter
+ * write, fails with an IllegalStateException.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleCsvReader
+ * @see au.com.formis.springbootdemo.MotorVehicle
+ * @see au.com.formis.springbootdemo.MotorVehicleWriter
+ * @since       0.1
+ * </p>
+ */
+@Component
+public class MotorVehicleImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(MotorVehicleImporter.class);
+
+    private static final String TABLE = "motorvehicle";
+    private static final String TABLE_A = "motorvehicle_a";
+    private static final String TABLE_B = "motorvehicle_b";
+
+    private static final String INSERT = "insert into %s (id, make, model, generation, trim_version, date_from, date_to, new_price,"
+            + " power, torque, fuel_capacity, engine_size, cylinders, valves, fuel_type, transmission, gearbox, country)"
+            + " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String[] COLUMNS = {"id", "make", "model", "generation", "trim_version", "date_from", "date_to", "new_price",
+            "power", "torque", "fuel_capacity", "engine_size", "cylinders", "valves", "fuel_type", "transmission", "gearbox", "country"};
+
+    // The staging table gets the computed column and index the db/migration scripts add to motorvehicle,
+    // create table as select copies neither.
+    private static final String GENERATION_LOWER = "alter table %s add column generation_lower varchar as lower(generation)";
+    private static final String INDEX = "create index %1$s_make_model_generation on %1$s (make, model, generation_lower)";
+
+    private static final int ID = 0;
+    private static final int FIRST_INT = 8;
+    private static final int LAST_INT = 13;
+
+    // Normalized header names, including the teoalida column titles, to COLUMNS positions.
+    private static final Map<String, Integer> HEADERS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            HEADERS.put(normalize(COLUMNS[i]), i);
+        }
+        HEADERS.put("trim", 4);
+        HEADERS.put("version", 4);
+        HEADERS.put("from", 5);
+        HEADERS.put("productionfrom", 5);
+        HEADERS.put("to", 6);
+        HEADERS.put("productionto", 6);
+        HEADERS.put("price", 7);
+        HEADERS.put("powerbhp", 8);
+        HEADERS.put("powerhp", 8);
+        HEADERS.put("torquenm", 9);
+        HEADERS.put("fueltankcapacity", 10);
+        HEADERS.put("fueltankcapacityl", 10);
+        HEADERS.put("fuelcapacityl", 10);
+        HEADERS.put("enginesizecc", 11);
+        HEADERS.put("countryoforigin", 17);
+    }
+
+    private final DataSource dataSource;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ObjectProvider<MotorVehicleCatalog> motorVehicleCatalog;
+    private final ObjectProvider<MotorVehicleReplicas> motorVehicleReplicas;
+    private final MotorVehicleResponseCache motorVehicleResponseCache;
+    private final MotorVehicleCompletions motorVehicleCompletions;
+    private final MotorVehicleWriter motorVehicleWriter;
+    private final int batchSize;
+    private final ReentrantLock lock;
+
+    public MotorVehicleImporter(DataSource dataSource, EntityManagerFactory entityManagerFactory,
+                                ObjectProvider<MotorVehicleCatalog> motorVehicleCatalog, ObjectProvider<MotorVehicleReplicas> motorVehicleReplicas,
+                                MotorVehicleResponseCache motorVehicleResponseCache, MotorVehicleCompletions motorVehicleCompletions,
+                                MotorVehicleWriter motorVehicleWriter, @Value("${motorvehicle.import.batch-size:1000}") int batchSize) {
+        this.dataSource = dataSource;
+        this.entityManagerFactory = entityManagerFactory;
+        this.motorVehicleCatalog = motorVehicleCatalog;
+        this.motorVehicleReplicas = motorVehicleReplicas;
+        this.motorVehicleResponseCache = motorVehicleResponseCache;
+        this.motorVehicleCompletions = motorVehicleCompletions;
+        this.motorVehicleWriter = motorVehicleWriter;
+        // Shared with the writer, a row written during an import would be lost by the swap.
+        this.lock = motorVehicleWriter.getLock();
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param csv CSV file, read to the end but not closed.
+     * @return Number of rows imported and time taken.
+     * @throws IOException If the CSV cannot be read.
+     * @throws SQLException If the database update fails, the previous rows are kept unless the swap itself fails.
+     * @throws IllegalArgumentException If the CSV is invalid, the previous rows are kept.
+     * @throws IllegalStateException If another import is running.
+     */
+    public Result importCsv(Reader csv) throws IOException, SQLException {
+        if (!lock.tryLock()) {
+            throw new IllegalStateException("A motor vehicle import is already running");
+        }
+        try {
+            long start = System.nanoTime();
+            MotorVehicleCsvReader reader = new MotorVehicleCsvReader(csv);
+            int[] columns = columns(reader.next());
+            MotorVehicleCatalog catalog = motorVehicleCatalog.getIfAvailable();
+            List<MotorVehicle> vehicles = (catalog == null) ? null : new ArrayList<>();
+            long maxId = 0;
+            int records = 0;
+            try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+                String current = physicalTable(connection);
+                String staging = TABLE_B.equals(current) ? TABLE_A : TABLE_B;
+                // Also drops the table replaced by the previous import, kept until now for readers still using it.
+                statement.execute("drop table if exists " + staging);
+                statement.execute("create table " + staging + " as select " + String.join(", ", COLUMNS) + " from " + TABLE + " where 1 = 0");
+                statement.execute("alter table " + staging + " alter column id set not null");
+                statement.execute("alter table " + staging + " add primary key (id)");
+                statement.execute(String.format(GENERATION_LOWER, staging));
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try (PreparedStatement insert = connection.prepareStatement(String.format(INSERT, staging))) {
+                    Object[] row = new Object[COLUMNS.length];
+                    for (String[] fields = reader.next(); fields != null; fields = reader.next()) {
+                        records++;
+                        parse(fields, columns, row, records, reader.getLine());
+                        bind(insert, row);
+                        insert.addBatch();
+                        if (records % batchSize == 0) {
+                            // Readers cannot see the staging table, committing each batch keeps the transaction small.
+                            insert.executeBatch();
+                            connection.commit();
+                        }
+                        maxId = Math.max(maxId, (Long) row[ID]);
+                        if (vehicles != null) {
+                            vehicles.add(vehicle(row));
+                        }
+                    }
+                    insert.executeBatch();
+                    connection.commit();
+                    // Indexing the filled table is cheaper than maintaining the index row by row.
+                    statement.execute(String.format(INDEX, staging));
+                } catch (IOException | SQLException | RuntimeException e) {
+                    connection.rollback();
+                    connection.setAutoCommit(autoCommit);
+                    statement.execute("drop table if exists " + staging);
+                    throw e;
+                }
+                connection.setAutoCommit(autoCommit);
+                if (current == null) {
+                    // First import, turn the original table into the first of the two swapped tables.
+                    statement.execute("alter table " + TABLE + " rename to " + TABLE_A);
+                    statement.execute("create synonym " + TABLE + " for " + staging);
+                } else {
+                    statement.execute("create or replace synonym " + TABLE + " for " + staging);
+                }
+                // The pooled optimizer hands out the allocationSize ids below each sequence value.
+                statement.execute("alter sequence " + MotorVehicle.ID_SEQUENCE + " restart with " + (maxId + MotorVehicle.ID_ALLOCATION_SIZE));
+            }
+            MotorVehicleReplicas replicas = motorVehicleReplicas.getIfAvailable();
+            if (replicas != null) {
+                replicas.load();
+            }
+            // The rows were written with JDBC, behind the back of the Hibernate entity and query caches.
+            entityManagerFactory.getCache().unwrap(Cache.class).evictAllRegions();
+            if (catalog != null) {
+                catalog.load(vehicles);
+            }
+            motorVehicleCompletions.reload();
+            motorVehicleResponseCache.clear();
+            motorVehicleWriter.reset();
+            Result result = new Result(records, (System.nanoTime() - start) / 1_000_000);
+            log.info("Imported {} motor vehicles in {} ms", result.getRecords(), result.getMillis());
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The table the motorvehicle synonym points to, null while motorvehicle is still a table.
+     */
+    private static String physicalTable(Connection connection) throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(
+                "select synonym_for from information_schema.synonyms where synonym_schema = schema() and lower(synonym_name) = ?")) {
+            query.setString(1, TABLE);
+            try (ResultSet result = query.executeQuery()) {
+                return result.next() ? result.getString(1).toLowerCase(Locale.ROOT) : null;
+            }
+        }
+    }
+
+    /**
+     * @return COLUMNS position of each CSV column, -1 for ignored columns.
+     */
+    private static int[] columns(String[] header) {
+        if (header == null) {
+            throw new IllegalArgumentException("The CSV file is empty");
+        }
+        int[] columns = new int[header.length];
+        boolean[] found = new boolean[COLUMNS.length];
+        for (int i = 0; i < header.length; i++) {
+            Integer column = HEADERS.get(normalize(header[i]));
+            columns[i] = (column == null || found[column]) ? -1 : column;
+            if (column != null) {
+                found[column] = true;
+            }
+        }
+        if (!found[1] || !found[2]) {
+            throw new IllegalArgumentException("The CSV header must have make and model columns");
+        }
+        return columns;
+    }
+
+    private static void parse(String[] fields, int[] columns, Object[] row, int records, long line) {
+        for (int i = FIRST_INT; i <= LAST_INT; i++) {
+            row[i] = 0;
+        }
+        for (int i = 1; i < COLUMNS.length; i++) {
+            if (i < FIRST_INT || i > LAST_INT) {
+                row[i] = null;
+            }
+        }
+        row[ID] = (long) records;
+        for (int i = 0; i < fields.length && i < columns.length; i++) {
+            int column = columns[i];
+            if (column < 0) {
+                continue;
+            }
+            String value = fields[i].trim();
+            if (column == ID) {
+                row[ID] = (long) number(value, COLUMNS[ID], line);
+            } else if (column >= FIRST_INT && column <= LAST_INT) {
+                row[column] = number(value, COLUMNS[column], line);
+            } else {
+                row[column] = value.isEmpty() ? null : value;
+            }
+        }
+        if (row[1] == null || row[2] == null) {
+            throw new IllegalArgumentException("Line " + line + ": make and model are required");
+        }
+    }
+
+    /**
+     * <p>Parses the leading integer of a value, "1,995 cc" is 1995. Blank values are 0.</p>
+     */
+    private static int number(String value, String column, long line) {
+        long number = 0;
+        int digits = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                number = number * 10 + (c - '0');
+                digits++;
+                if (number > Integer.MAX_VALUE) {
+                    break;
+                }
+            } else if (c != ',' || digits == 0) {
+                break;
+            }
+        }
+        if (number > Integer.MAX_VALUE || (digits == 0 && !value.isEmpty())) {
+            throw new IllegalArgumentException("Line " + line + ": invalid " + column + " '" + value + "'");
+        }
+        return (int) number;
+    }
+
+    private static void bind(PreparedStatement insert, Object[] row) throws SQLException {
+        insert.setLong(1, (Long) row[ID]);
+        for (int i = 1; i < COLUMNS.length; i++) {
+            if (i >= FIRST_INT && i <= LAST_INT) {
+                insert.setInt(i + 1, (Integer) row[i]);
+            } else if (row[i] == null) {
+                insert.setNull(i + 1, Types.VARCHAR);
+            } else {
+                insert.setString(i + 1, (String) row[i]);
+            }
+        }
+    }
+
+    private static MotorVehicle vehicle(Object[] row) {
+        return new MotorVehicle((Long) row[0], (String) row[1], (String) row[2], (String) row[3], (String) row[4], (String) row[5],
+                (String) row[6], (String) row[7], (Integer) row[8], (Integer) row[9], (Integer) row[10], (Integer) row[11],
+                (Integer) row[12], (Integer) row[13], (String) row[14], (String) row[15], (String) row[16], (String) row[17]);
+    }
+
+    private static String normalize(String header) {
+        StringBuilder normalized = new StringBuilder(header.length());
+        for (int i = 0; i < header.length(); i++) {
+            char c = header.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                normalized.append(c);
+            }
+        }
+        return normalized.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * <p>Outcome of an import.</p>
+     */
+    public static final class Result {
+
+        private final int records;
+        private final long millis;
+
+        Result(int records, long millis) {
+            this.records = records;
+            this.millis = millis;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+    }
+}
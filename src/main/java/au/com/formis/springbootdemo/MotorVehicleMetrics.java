@@ -0,0 +1,206 @@
+package au.com.formis.springbootdemo;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import io.micrometer.core.instrument.config.MeterFilter;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Micrometer meters for the MotorVehicleController endpoints, scraped in Prometheus format from
+ * /actuator/prometheus together with the Spring MVC, Hibernate and Hikari pool metrics.</p>
+ * <p></p>
+ * <p>Meters, all tagged with the endpoint (find, typed, search, aggregations, batch or stream):</p>
+ * <ul>
+ *     <li>motorvehicle.query - time spent in the MotorVehicleStore, also tagged with the store, the query
+ *     parameter permutation and the make and model queried.</li>
+ *     <li>motorvehicle.serialization - time spent serializing the response with Jackson.</li>
+ *     <li>motorvehicle.request - total handler time, tagged with whether the response cache was hit.</li>
+ *     <li>motorvehicle.request.coalesced - requests that shared the execution of an identical request in flight,
+ *     see MotorVehicleRequestCoalescer.</li>
+ *     <li>motorvehicle.response.records - numberOfRecords of each response.</li>
+ *     <li>motorvehicle.response.bytes - body size of each response, tagged with the format (Content-Type subtype,
+ *     json, cbor, ...) and the content encoding.</li>
+ * </ul>
+ * <p>The MotorVehicleResponseCache counters are also registered, as motorvehicle.response.cache.requests
+ * (tagged hit or miss), motorvehicle.response.cache.evictions, motorvehicle.response.cache.entries and
+ * motorvehicle.response.cache.bytes.</p>
+ * <p>The motorVehicleTaskExecutor running the handlers when motorvehicle.async.enabled is true is monitored
+ * with the Micrometer executor metrics (executor.active, executor.queued, ...) tagged
+ * name=motorVehicleTaskExecutor.</p>
+ * <p>The make and model tags let the p99 be broken down by query, they are lower cased and capped at
+ * motorvehicle.metrics.max-make-model-tags distinct values each so arbitrary client input cannot grow
+ * the number of time series without bound, further values are recorded under the tag value other. Percentile
+ * histograms are enabled in application.properties.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @since       0.1
+ * </p>
+ */
+@Component
+public class MotorVehicleMetrics {
+
+    static final String QUERY = "motorvehicle.query";
+    static final String SERIALIZATION = "motorvehicle.serialization";
+    static final String REQUEST = "motorvehicle.request";
+    static final String RECORDS = "motorvehicle.response.records";
+    static final String BYTES = "motorvehicle.response.bytes";
+    static final String CACHE = "motorvehicle.response.cache";
+    static final String COALESCED = "motorvehicle.request.coalesced";
+
+    private static final String NONE = "none";
+    static final String OTHER = "other";
+
+    private final MeterRegistry registry;
+    private final String store;
+
+    public MotorVehicleMetrics(MeterRegistry registry, MotorVehicleResponseCache responseCache,
+                               @Qualifier("motorVehicleTaskExecutor") ThreadPoolTaskExecutor motorVehicleTaskExecutor,
+                               @Value("${motorvehicle.store:catalog}") String store,
+                               @Value("${motorvehicle.metrics.max-make-model-tags:100}") int maxMakeModelTags) {
+        this.registry = registry;
+        this.store = store;
+        registry.config().meterFilter(otherAfter("make", maxMakeModelTags));
+        registry.config().meterFilter(otherAfter("model", maxMakeModelTags));
+        FunctionCounter.builder(CACHE + ".requests", responseCache, cache -> cache.getStatistics().getHits()).tag("result", "hit").register(registry);
+        FunctionCounter.builder(CACHE + ".requests", responseCache, cache -> cache.getStatistics().getMisses()).tag("result", "miss").register(registry);
+        FunctionCounter.builder(CACHE + ".evictions", responseCache, cache -> cache.getStatistics().getEvictions()).register(registry);
+        Gauge.builder(CACHE + ".entries", responseCache, cache -> cache.getStatistics().getEntries()).register(registry);
+        Gauge.builder(CACHE + ".bytes", responseCache, cache -> cache.getStatistics().getBytes()).baseUnit("bytes").register(registry);
+        new ExecutorServiceMetrics(motorVehicleTaskExecutor.getThreadPoolExecutor(), "motorVehicleTaskExecutor", Tags.empty()).bindTo(registry);
+    }
+
+    /**
+     * <p>Counts a request coalesced onto an identical request in flight.</p>
+     * @param endpoint Endpoint tag.
+     */
+    public void coalesced(String endpoint) {
+        Counter.builder(COALESCED).tag("endpoint", endpoint).register(registry).increment();
+    }
+
+    /**
+     * <p>Runs and times a MotorVehicleStore call.</p>
+     * @param endpoint Endpoint tag.
+     * @param query Query being run, null for a batch of queries.
+     * @param action The store call.
+     * @return The result of the store call.
+     */
+    public <T> T query(String endpoint, MotorVehicleQuery query, Supplier<T> action) {
+        Tags tags = Tags.of("endpoint", endpoint, "store", store, "query", permutation(query),
+                "make", (query == null) ? NONE : tagValue(query.getMake()), "model", (query == null || !query.hasModel()) ? NONE : tagValue(query.getModel()));
+        return Timer.builder(QUERY).tags(tags).register(registry).record(action);
+    }
+
+    /**
+     * <p>Runs and times a MotorVehicleStore search, tagged with the search query permutation and no make or model.</p>
+     * @param endpoint Endpoint tag.
+     * @param action The store call.
+     * @return The result of the store call.
+     */
+    public <T> T search(String endpoint, Supplier<T> action) {
+        Tags tags = Tags.of("endpoint", endpoint, "store", store, "query", "search", "make", NONE, "model", NONE);
+        return Timer.builder(QUERY).tags(tags).register(registry).record(action);
+    }
+
+    /**
+     * <p>Runs and times the serialization of a response.</p>
+     * @param endpoint Endpoint tag.
+     * @param serializer Serializes the response.
+     * @return The serialized response.
+     * @throws IOException If the response cannot be serialized.
+     */
+    public byte[] serialization(String endpoint, Serializer serializer) throws IOException {
+        long start = System.nanoTime();
+        try {
+            return serializer.serialize();
+        } finally {
+            Timer.builder(SERIALIZATION).tag("endpoint", endpoint).register(registry).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * <p>Records a completed response.</p>
+     * @param endpoint Endpoint tag.
+     * @param contentType Response Content-Type, its subtype is the format tag.
+     * @param cacheHit Whether the response came from the MotorVehicleResponseCache.
+     * @param startNanos System.nanoTime when the handler started.
+     * @param records numberOfRecords of the response, negative if unknown.
+     * @param bytes Response body size, negative if unknown.
+     * @param gzip Whether the body is gzip compressed.
+     */
+    public void response(String endpoint, MediaType contentType, boolean cacheHit, long startNanos, int records, int bytes, boolean gzip) {
+        Timer.builder(REQUEST).tags("endpoint", endpoint, "cache", cacheHit ? "hit" : "miss").register(registry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (records >= 0) {
+            DistributionSummary.builder(RECORDS).tag("endpoint", endpoint).register(registry).record(records);
+        }
+        if (bytes >= 0) {
+            DistributionSummary.builder(BYTES).baseUnit("bytes").tags("endpoint", endpoint, "format", contentType.getSubtype(), "encoding", gzip ? "gzip" : "identity")
+                    .register(registry).record(bytes);
+        }
+    }
+
+    private static String tagValue(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return A filter keeping the first max values of the motorvehicle.query tag and renaming further values to other.
+     */
+    private static MeterFilter otherAfter(String tagKey, int max) {
+        Set<String> values = ConcurrentHashMap.newKeySet();
+        return new MeterFilter() {
+            @Override
+            public Meter.Id map(Meter.Id id) {
+                String value = id.getTag(tagKey);
+                if (!id.getName().equals(QUERY) || value == null || value.equals(NONE) || values.contains(value)) {
+                    return id;
+                }
+                synchronized (values) {
+                    if (values.size() < max) {
+                        values.add(value);
+                        return id;
+                    }
+                }
+                return id.withTag(Tag.of(tagKey, OTHER));
+            }
+        };
+    }
+
+    private static String permutation(MotorVehicleQuery query) {
+        if (query == null) {
+            return "batch";
+        }
+        String permutation = query.hasGeneration() ? "make_model_generation" : query.hasModel() ? "make_model" : "make";
+        return query.hasRanges() ? permutation + "_ranges" : permutation;
+    }
+
+    /**
+     * <p>Serialization step that can fail with an IOException.</p>
+     */
+    @FunctionalInterface
+    public interface Serializer {
+        byte[] serialize() throws IOException;
+    }
+}
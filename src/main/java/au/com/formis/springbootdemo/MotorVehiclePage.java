@@ -0,0 +1,234 @@
+package au.com.formis.springbootdemo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Objects;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable keyset (cursor) pagination and sort order for a MotorVehicle query.</p>
+ * <p></p>
+ * <p>Results are ordered by the optional sort field and then by id, or by id alone when no sort is
+ * given. A page starts strictly after the (sort key, id) position held by the cursor, so a deep page
+ * costs the same as the first one instead of skipping OFFSET rows.</p>
+ * <p></p>
+ * <p>REST query parameters:</p>
+ * <ul>
+ *     <li>limit - maximum number of records in the page, 1 up to the configured maximum.</li>
+ *     <li>sort - power, torque, engineSize or dateFrom, optionally followed by ,asc or ,desc.</li>
+ *     <li>cursor - opaque nextCursor token from the previous page, only valid with the same sort.</li>
+ * </ul>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleSort
+ * @see au.com.formis.springbootdemo.MotorVehicleQuery
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehiclePage {
+
+    private static final String ID_ORDER = "id";
+
+    private final MotorVehicleSort sort;
+    private final boolean descending;
+    private final int limit;
+    private final boolean hasCursor;
+    private final int afterKey;
+    private final long afterId;
+
+    private MotorVehiclePage(MotorVehicleSort sort, boolean descending, int limit, boolean hasCursor, int afterKey, long afterId) {
+        this.sort = sort;
+        this.descending = descending;
+        this.limit = limit;
+        this.hasCursor = hasCursor;
+        this.afterKey = afterKey;
+        this.afterId = afterId;
+    }
+
+    /**
+     * <p>Builds a page from the REST query parameters.</p>
+     * @param limit The optional limit REST query parameter, maxLimit when null.
+     * @param cursor The optional cursor REST query parameter.
+     * @param sort The optional sort REST query parameter.
+     * @param maxLimit Largest limit accepted.
+     * @return The requested page.
+     * @throws IllegalArgumentException If a parameter is invalid.
+     */
+    public static MotorVehiclePage of(Integer limit, String cursor, String sort, int maxLimit) {
+        int pageLimit = (limit == null) ? maxLimit : limit;
+        if (pageLimit < 1 || pageLimit > maxLimit) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxLimit);
+        }
+        MotorVehicleSort sortField = null;
+        boolean descending = false;
+        if (sort != null && !sort.isEmpty()) {
+            String[] parts = sort.split(",", 2);
+            sortField = MotorVehicleSort.ofParameter(parts[0]);
+            if (parts.length == 2) {
+                if (!parts[1].equalsIgnoreCase("asc") && !parts[1].equalsIgnoreCase("desc")) {
+                    throw new IllegalArgumentException("Sort direction must be asc or desc");
+                }
+                descending = parts[1].equalsIgnoreCase("desc");
+            }
+        }
+        if (cursor == null || cursor.isEmpty()) {
+            return new MotorVehiclePage(sortField, descending, pageLimit, false, 0, 0L);
+        }
+        String[] position;
+        try {
+            position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (position.length != 4 || !position[0].equals(order(sortField)) || !position[1].equals(direction(descending))) {
+            throw new IllegalArgumentException("Invalid cursor for sort " + order(sortField) + "," + direction(descending));
+        }
+        try {
+            return new MotorVehiclePage(sortField, descending, pageLimit, true, Integer.parseInt(position[2]), Long.parseLong(position[3]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+
+    /**
+     * @param limit New limit.
+     * @return A copy of this page with a different limit.
+     */
+    public MotorVehiclePage withLimit(int limit) {
+        return new MotorVehiclePage(sort, descending, limit, hasCursor, afterKey, afterId);
+    }
+
+    /**
+     * @return Sort field or null when ordered by id only.
+     */
+    public MotorVehicleSort getSort() {
+        return sort;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasCursor() {
+        return hasCursor;
+    }
+
+    public int getAfterKey() {
+        return afterKey;
+    }
+
+    public long getAfterId() {
+        return afterId;
+    }
+
+    /**
+     * @param vehicle MotorVehicle entity.
+     * @return Sort key of the entity, 0 when ordered by id only.
+     */
+    public int key(MotorVehicle vehicle) {
+        return (sort == null) ? 0 : sort.key(vehicle);
+    }
+
+    /**
+     * @param key Sort key of a row.
+     * @param id Id of a row.
+     * @return true if the row comes after the cursor position in this page order, always true without a cursor.
+     */
+    public boolean isAfterCursor(int key, long id) {
+        if (!hasCursor) {
+            return true;
+        }
+        int compare = (key != afterKey) ? Integer.compare(key, afterKey) : Long.compare(id, afterId);
+        return descending ? compare < 0 : compare > 0;
+    }
+
+    /**
+     * @param last Last MotorVehicle entity of a page.
+     * @return Cursor token for the page starting after the entity.
+     */
+    public String cursorAfter(MotorVehicle last) {
+        return cursor(key(last), last.getId());
+    }
+
+    /**
+     * @param last Last MotorVehicleView of a page.
+     * @return Cursor token for the page starting after the view.
+     */
+    public String cursorAfter(MotorVehicleView last) {
+        return cursor((sort == null) ? 0 : sort.key(last), last.getId());
+    }
+
+    /**
+     * @param last Last MotorVehicleProjection of a page.
+     * @return Cursor token for the page starting after the projection.
+     */
+    public String cursorAfter(MotorVehicleProjection last) {
+        return cursor(last.getSortKey(), last.getId());
+    }
+
+    /**
+     * <p>Paging parameters in canonical form, see MotorVehicleQuery.canonicalParameters.</p>
+     * @param defaultLimit Limit used when the limit parameter is missing, left out of the result.
+     * @return Canonical paging query string, empty for the first page in id order with the default limit.
+     */
+    public String canonicalParameters(int defaultLimit) {
+        var parameters = new StringBuilder();
+        if (sort != null) {
+            parameters.append("&sort=").append(sort.getParameter()).append(descending ? ",desc" : "");
+        }
+        if (limit != defaultLimit) {
+            parameters.append("&limit=").append(limit);
+        }
+        if (hasCursor) {
+            parameters.append("&cursor=").append(cursor(afterKey, afterId));
+        }
+        return (parameters.length() == 0) ? "" : parameters.substring(1);
+    }
+
+    private String cursor(int key, long id) {
+        String position = order(sort) + '|' + direction(descending) + '|' + key + '|' + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String order(MotorVehicleSort sort) {
+        return (sort == null) ? ID_ORDER : sort.getParameter();
+    }
+
+    private static String direction(boolean descending) {
+        return descending ? "desc" : "asc";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MotorVehiclePage)) {
+            return false;
+        }
+        MotorVehiclePage that = (MotorVehiclePage) o;
+        return descending == that.descending && limit == that.limit && hasCursor == that.hasCursor
+                && afterKey == that.afterKey && afterId == that.afterId && sort == that.sort;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sort, descending, limit, hasCursor, afterKey, afterId);
+    }
+
+    @Override
+    public String toString() {
+        return "MotorVehiclePage{" +
+                "sort=" + order(sort) +
+                ", direction=" + direction(descending) +
+                ", limit=" + limit +
+                (hasCursor ? ", after=" + afterKey + '/' + afterId : "") +
+                '}';
+    }
+}
@@ -0,0 +1,96 @@
+package au.com.formis.springbootdemo;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.WritableTypeId;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable MotorVehicle row holding only the properties selected by a MotorVehicleFields, returned by
+ * /motorVehicles queries with a fields parameter.</p>
+ * <p></p>
+ * <p>It serializes as a JSON object with just the selected properties, with the same names and values as the
+ * MotorVehicle JSON. The id and page sort key are always kept, even when not selected, so the page cursor
+ * can be built from the last projection of a page.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleFields
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleProjection implements JsonSerializable {
+
+    private final MotorVehicleFields fields;
+    private final long id;
+    private final int sortKey;
+    private final Object[] values;
+
+    /**
+     * @param fields Selected properties.
+     * @param id MotorVehicle id.
+     * @param sortKey Page sort key, 0 when ordered by id only.
+     * @param values Value of each selected property, in MotorVehicleFields order.
+     */
+    MotorVehicleProjection(MotorVehicleFields fields, long id, int sortKey, Object[] values) {
+        this.fields = fields;
+        this.id = id;
+        this.sortKey = sortKey;
+        this.values = values;
+    }
+
+    public MotorVehicleFields getFields() {
+        return fields;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getSortKey() {
+        return sortKey;
+    }
+
+    /**
+     * @param index Position of the property in MotorVehicleFields.getNames.
+     * @return Value of the property, a String, Integer, Long or null.
+     */
+    public Object getValue(int index) {
+        return values[index];
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(this);
+        writeFields(generator, provider);
+        generator.writeEndObject();
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        WritableTypeId typeId = typeSerializer.writeTypePrefix(generator, typeSerializer.typeId(this, JsonToken.START_OBJECT));
+        writeFields(generator, provider);
+        typeSerializer.writeTypeSuffix(generator, typeId);
+    }
+
+    private void writeFields(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            provider.defaultSerializeField(fields.getNames().get(i), values[i], generator);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MotorVehicleProjection{" +
+                "fields=" + fields.getNames() +
+                ", id=" + id +
+                ", values=" + Arrays.toString(values) +
+                '}';
+    }
+}
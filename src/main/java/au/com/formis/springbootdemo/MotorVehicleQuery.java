@@ -0,0 +1,202 @@
+package au.com.formis.springbootdemo;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable value object holding the REST API query parameters for a MotorVehicle query.</p>
+ * <p></p>
+ * <p>The supported parameter permutations match the MotorVehicleRepository queries:</p>
+ * <ul>
+ *     <li>Make</li>
+ *     <li>Make AND Model</li>
+ *     <li>Make AND Model and Generation (case insensitive containing string, not equality)</li>
+ * </ul>
+ * <p>Any permutation can be narrowed further with MotorVehicleRange filters on numeric attributes.</p>
+ * <p>Unused parameters are null. An optional MotorVehiclePage adds sort order and keyset pagination,
+ * without one results are returned in id order without a limit.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleStore
+ * @see au.com.formis.springbootdemo.MotorVehiclePage
+ * @see au.com.formis.springbootdemo.MotorVehicleRange
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleQuery {
+
+    private final String make;
+    private final String model;
+    private final String generation;
+    private final List<MotorVehicleRange> ranges;
+    private final MotorVehiclePage page;
+
+    private MotorVehicleQuery(String make, String model, String generation, List<MotorVehicleRange> ranges, MotorVehiclePage page) {
+        this.make = Objects.requireNonNull(make, "make");
+        this.model = model;
+        this.generation = generation;
+        this.ranges = ranges;
+        this.page = page;
+    }
+
+    private MotorVehicleQuery(String make, String model, String generation) {
+        this(make, model, generation, List.of(), null);
+    }
+
+    public static MotorVehicleQuery byMake(String make) {
+        return new MotorVehicleQuery(make, null, null);
+    }
+
+    public static MotorVehicleQuery byMakeAndModel(String make, String model) {
+        return new MotorVehicleQuery(make, Objects.requireNonNull(model, "model"), null);
+    }
+
+    public static MotorVehicleQuery byMakeAndModelAndGeneration(String make, String model, String generation) {
+        return new MotorVehicleQuery(make, Objects.requireNonNull(model, "model"), Objects.requireNonNull(generation, "generation"));
+    }
+
+    /**
+     * <p>Builds a query from optional REST query parameters, a generation is only used together with a model.</p>
+     * @param make The make REST query parameter.
+     * @param model The model REST query parameter, may be null.
+     * @param generation The generation REST query parameter, may be null.
+     * @return The query for the most specific parameter permutation present.
+     */
+    public static MotorVehicleQuery of(String make, String model, String generation) {
+        if (model == null) {
+            return byMake(make);
+        }
+        return (generation == null) ? byMakeAndModel(make, model) : byMakeAndModelAndGeneration(make, model, generation);
+    }
+
+    /**
+     * @param page Sort order and keyset pagination, null for all results in id order.
+     * @return A copy of this query with the given page.
+     */
+    public MotorVehicleQuery withPage(MotorVehiclePage page) {
+        return new MotorVehicleQuery(make, model, generation, ranges, page);
+    }
+
+    /**
+     * @param ranges Range filters, at most one per attribute.
+     * @return A copy of this query with the given range filters.
+     * @throws IllegalArgumentException If an attribute has more than one range.
+     */
+    public MotorVehicleQuery withRanges(List<MotorVehicleRange> ranges) {
+        return new MotorVehicleQuery(make, model, generation, MotorVehicleRange.canonical(ranges), page);
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    public boolean hasModel() {
+        return model != null;
+    }
+
+    public boolean hasGeneration() {
+        return generation != null;
+    }
+
+    /**
+     * @return Range filters in canonical attribute order, empty if there are none.
+     */
+    public List<MotorVehicleRange> getRanges() {
+        return ranges;
+    }
+
+    public boolean hasRanges() {
+        return !ranges.isEmpty();
+    }
+
+    /**
+     * @param vehicle MotorVehicle entity with the make, model and generation of this query.
+     * @return true if the entity is in every range filter.
+     */
+    public boolean matchesRanges(MotorVehicle vehicle) {
+        for (MotorVehicleRange range : ranges) {
+            if (!range.matches(vehicle)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Sort order and keyset pagination, null for all results in id order.
+     */
+    public MotorVehiclePage getPage() {
+        return page;
+    }
+
+    public boolean isPaged() {
+        return page != null;
+    }
+
+    /**
+     * <p>Query parameters in canonical form: fixed parameter order, URL encoded, and the generation lower
+     * cased as it is matched case insensitively. Queries returning the same results have the same
+     * canonical parameters, paging parameters are not included.</p>
+     * @return Canonical query string, for example make=BMW&amp;model=3-Series&amp;generation=saloon&amp;power=150..250
+     */
+    public String canonicalParameters() {
+        var parameters = new StringBuilder("make=").append(encode(make));
+        if (model != null) {
+            parameters.append("&model=").append(encode(model));
+        }
+        if (generation != null) {
+            parameters.append("&generation=").append(encode(generation.toLowerCase(Locale.ROOT)));
+        }
+        for (MotorVehicleRange range : ranges) {
+            parameters.append('&').append(range.getAttribute()).append('=').append(range.toParameter());
+        }
+        return parameters.toString();
+    }
+
+    static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MotorVehicleQuery)) {
+            return false;
+        }
+        MotorVehicleQuery that = (MotorVehicleQuery) o;
+        return make.equals(that.make) && Objects.equals(model, that.model) && Objects.equals(generation, that.generation)
+                && ranges.equals(that.ranges) && Objects.equals(page, that.page);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(make, model, generation, ranges, page);
+    }
+
+    @Override
+    public String toString() {
+        return "MotorVehicleQuery{" +
+                "make='" + make + '\'' +
+                ", model='" + model + '\'' +
+                ", generation='" + generation + '\'' +
+                ", ranges=" + ranges +
+                ", page=" + page +
+                '}';
+    }
+}
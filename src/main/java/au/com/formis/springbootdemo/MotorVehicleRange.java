@@ -0,0 +1,248 @@
+package au.com.formis.springbootdemo;
+
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable inclusive range filter on a numeric MotorVehicle attribute.</p>
+ * <p></p>
+ * <p>Range filters are REST query parameters named after the attribute (power, torque, engineSize,
+ * cylinders, valves, newPrice, dateFrom or dateTo) and can be added to any /motorVehicles query. Values
+ * are written as:</p>
+ * <ul>
+ *     <li>6 - equal to 6.</li>
+ *     <li>150..250 - between 150 and 250 inclusive.</li>
+ *     <li>150.. - 150 or more.</li>
+ *     <li>..250 - 250 or less.</li>
+ * </ul>
+ * <p>newPrice is in whole pounds. dateFrom and dateTo bounds are written as yyyy-MM, for example
+ * dateFrom=2015-01..2018-12, and an open ended dateTo range includes vehicles still in production.
+ * Rows with no price or date are never in a newPrice, dateFrom or dateTo range.</p>
+ * <p>Internally every attribute is compared as an int key, see MotorVehicleValues.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleQuery
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleRange {
+
+    private static final String SEPARATOR = "..";
+
+    // LinkedHashMap iteration order is the canonical parameter order.
+    private static final Map<String, Attribute> ATTRIBUTES = new LinkedHashMap<>();
+
+    static {
+        ATTRIBUTES.put("power", new Attribute("power", MotorVehicle::getPower, false, false));
+        ATTRIBUTES.put("torque", new Attribute("torque", MotorVehicle::getTorque, false, false));
+        ATTRIBUTES.put("engineSize", new Attribute("engineSize", MotorVehicle::getEngineSize, false, false));
+        ATTRIBUTES.put("cylinders", new Attribute("cylinders", MotorVehicle::getCylinders, false, false));
+        ATTRIBUTES.put("valves", new Attribute("valves", MotorVehicle::getValves, false, false));
+        ATTRIBUTES.put("newPrice", new Attribute("newPriceValue", vehicle -> MotorVehicleValues.priceKey(vehicle.getNewPrice()), true, false));
+        ATTRIBUTES.put("dateFrom", new Attribute("dateFromMonth", vehicle -> MotorVehicleValues.yearMonthKey(vehicle.getDateFrom()), true, true));
+        ATTRIBUTES.put("dateTo", new Attribute("dateToMonth", vehicle -> MotorVehicleValues.dateToKey(vehicle.getDateTo()), true, true));
+    }
+
+    private static final List<String> ATTRIBUTE_NAMES = List.copyOf(ATTRIBUTES.keySet());
+
+    private final String attribute;
+    private final int min;
+    private final int max;
+
+    private MotorVehicleRange(String attribute, int min, int max) {
+        this.attribute = attribute;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * @return Attributes a range filter can be applied to, in canonical parameter order.
+     */
+    public static List<String> attributes() {
+        return ATTRIBUTE_NAMES;
+    }
+
+    /**
+     * @param attribute MotorVehicle attribute.
+     * @param min Smallest value, inclusive.
+     * @param max Largest value, inclusive.
+     * @return The range.
+     * @throws IllegalArgumentException If the attribute cannot be filtered on or min is greater than max.
+     */
+    public static MotorVehicleRange of(String attribute, int min, int max) {
+        attribute(attribute);
+        if (min > max) {
+            throw new IllegalArgumentException(attribute + " range minimum " + min + " is greater than maximum " + max);
+        }
+        return new MotorVehicleRange(attribute, min, max);
+    }
+
+    /**
+     * @param attribute MotorVehicle attribute, the REST query parameter name.
+     * @param value The REST query parameter value, for example 150..250.
+     * @return The range.
+     * @throws IllegalArgumentException If the attribute cannot be filtered on or the value is invalid.
+     */
+    public static MotorVehicleRange parse(String attribute, String value) {
+        Attribute definition = attribute(attribute);
+        try {
+            int separator = value.indexOf(SEPARATOR);
+            if (separator < 0) {
+                int exact = definition.parse(value.trim());
+                return of(attribute, exact, exact);
+            }
+            String from = value.substring(0, separator).trim();
+            String to = value.substring(separator + SEPARATOR.length()).trim();
+            if (from.isEmpty() && to.isEmpty()) {
+                throw new IllegalArgumentException("Invalid " + attribute + " range '" + value + "'");
+            }
+            return of(attribute, from.isEmpty() ? definition.openMin() : definition.parse(from), to.isEmpty() ? Integer.MAX_VALUE : definition.parse(to));
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid " + attribute + " range '" + value + "', expected "
+                    + (definition.yearMonth ? "yyyy-MM" : "n") + ", min..max, min.. or ..max");
+        }
+    }
+
+    /**
+     * @param ranges Range filters, at most one per attribute.
+     * @return An immutable copy of the ranges in canonical attribute order.
+     * @throws IllegalArgumentException If an attribute has more than one range.
+     */
+    public static List<MotorVehicleRange> canonical(List<MotorVehicleRange> ranges) {
+        MotorVehicleRange[] sorted = ranges.toArray(new MotorVehicleRange[0]);
+        Arrays.sort(sorted, Comparator.comparingInt(range -> ATTRIBUTE_NAMES.indexOf(range.getAttribute())));
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].getAttribute().equals(sorted[i - 1].getAttribute())) {
+                throw new IllegalArgumentException("More than one " + sorted[i].getAttribute() + " range");
+            }
+        }
+        return List.of(sorted);
+    }
+
+    private static Attribute attribute(String attribute) {
+        Attribute definition = ATTRIBUTES.get(attribute);
+        if (definition == null) {
+            throw new IllegalArgumentException("Cannot filter on '" + attribute + "', expected one of " + String.join(", ", ATTRIBUTE_NAMES));
+        }
+        return definition;
+    }
+
+    /**
+     * @return Attribute name, the REST query parameter name.
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * @return MotorVehicle JPA attribute holding the int key compared with the range.
+     */
+    public String getKeyAttribute() {
+        return ATTRIBUTES.get(attribute).keyAttribute;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * @return true if the range has a lower bound, open ranges on attributes that can be missing still have
+     * a minimum of 1 to leave out rows without a value.
+     */
+    public boolean hasMin() {
+        return min != ATTRIBUTES.get(attribute).openMin();
+    }
+
+    public boolean hasMax() {
+        return max != Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param vehicle MotorVehicle entity.
+     * @return true if the attribute value of the entity is in this range.
+     */
+    public boolean matches(MotorVehicle vehicle) {
+        int value = ATTRIBUTES.get(attribute).key.applyAsInt(vehicle);
+        return value >= min && value <= max;
+    }
+
+    /**
+     * @return The REST query parameter value in canonical form.
+     */
+    public String toParameter() {
+        Attribute definition = ATTRIBUTES.get(attribute);
+        if (min == max) {
+            return definition.format(min);
+        }
+        return ((hasMin() || !hasMax()) ? definition.format(min) : "") + SEPARATOR + (hasMax() ? definition.format(max) : "");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MotorVehicleRange)) {
+            return false;
+        }
+        MotorVehicleRange that = (MotorVehicleRange) o;
+        return min == that.min && max == that.max && attribute.equals(that.attribute);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(attribute, min, max);
+    }
+
+    @Override
+    public String toString() {
+        return attribute + '=' + toParameter();
+    }
+
+    /**
+     * <p>How the values of a range attribute are keyed, parsed and formatted.</p>
+     */
+    private static final class Attribute {
+
+        private final String keyAttribute;
+        private final ToIntFunction<MotorVehicle> key;
+        private final boolean canBeMissing;
+        private final boolean yearMonth;
+
+        private Attribute(String keyAttribute, ToIntFunction<MotorVehicle> key, boolean canBeMissing, boolean yearMonth) {
+            this.keyAttribute = keyAttribute;
+            this.key = key;
+            this.canBeMissing = canBeMissing;
+            this.yearMonth = yearMonth;
+        }
+
+        /**
+         * Missing values are keyed as 0 and real values are positive, so an open range starts at 1.
+         */
+        private int openMin() {
+            return canBeMissing ? 1 : Integer.MIN_VALUE;
+        }
+
+        private int parse(String value) {
+            return yearMonth ? MotorVehicleValues.yearMonthKey(YearMonth.parse(value)) : Integer.parseInt(value);
+        }
+
+        private String format(int value) {
+            return yearMonth ? String.format("%04d-%02d", value / 100, value % 100) : Integer.toString(value);
+        }
+    }
+}
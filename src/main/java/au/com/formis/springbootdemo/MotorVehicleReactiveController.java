@@ -0,0 +1,156 @@
+package au.com.formis.springbootdemo;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>WebFlux controller answering the three /motorVehicles queries from the R2DBC
+ * MotorVehicleReactiveRepository, active with the reactive profile in place of MotorVehicleController.</p>
+ * <p></p>
+ * <p>The make, make and model, and make, model and generation query parameter permutations are mapped
+ * like MotorVehicleController. Paging, range filters and the other /motorVehicles endpoints are not
+ * available on this path.</p>
+ * <p></p>
+ * <p>Entities are written as they are read from the database and the database read only advances as fast
+ * as the client consumes the response (backpressure). Two formats are offered:</p>
+ * <ul>
+ *     <li>application/json (default) - the ApiResponsePayload fields with numberOfRecords written after the
+ *     payload entities, as for /motorVehicles/stream.</li>
+ *     <li>application/x-ndjson (Accept: application/x-ndjson) - one MotorVehicle JSON object per line, with
+ *     no payload metadata.</li>
+ * </ul>
+ * <p>The status is always 200 as it is sent before the first entity is read. Responses are compact JSON.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleReactiveRepository
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @see au.com.formis.springbootdemo.ApiResponsePayload
+ * @since       0.1
+ * </p>
+ */
+@RestController
+@Profile("reactive")
+public class MotorVehicleReactiveController {
+
+    // Hard wired strings used, this is just a demo.
+    private static final String publisher = "Spring Boot Demo Service";
+    private static final String payloadDescription = "Motor vehicle data set";
+
+    private static final byte[] NEWLINE = {'\n'};
+    private static final byte[] COMMA = {','};
+
+    private final MotorVehicleReactiveRepository motorVehicleReactiveRepository;
+    private final MotorVehicleMetrics motorVehicleMetrics;
+    private final ObjectWriter writer;
+
+    public MotorVehicleReactiveController(MotorVehicleReactiveRepository motorVehicleReactiveRepository, MotorVehicleMetrics motorVehicleMetrics,
+                                          ObjectMapper objectMapper) {
+        this.motorVehicleReactiveRepository = motorVehicleReactiveRepository;
+        this.motorVehicleMetrics = motorVehicleMetrics;
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * <p>Controller for /motorVehicles with only the make query parameter defined.</p>
+     * @param make The make REST query parameter.
+     * @param exchange The request and response, used to fetch the original URL and Accept header.
+     * @return Response body streaming the MotorVehicle entities.
+     */
+    @RequestMapping(value = "/motorVehicles", params = {"make"}, method = RequestMethod.GET)
+    public ResponseEntity<Flux<DataBuffer>> motorVehicleMake(@RequestParam(value = "make") String make, ServerWebExchange exchange) {
+        return respond(MotorVehicleQuery.byMake(make), exchange);
+    }
+
+    /**
+     * <p>Controller for /motorVehicles with the make AND model query parameters defined.</p>
+     * @param make The make REST query parameter.
+     * @param model The model REST query parameter.
+     * @param exchange The request and response, used to fetch the original URL and Accept header.
+     * @return Response body streaming the MotorVehicle entities.
+     */
+    @RequestMapping(value = "/motorVehicles", params = {"make", "model"}, method = RequestMethod.GET)
+    public ResponseEntity<Flux<DataBuffer>> motorVehicleMakeAndModel(@RequestParam(value = "make") String make, @RequestParam(value = "model") String model, ServerWebExchange exchange) {
+        return respond(MotorVehicleQuery.byMakeAndModel(make, model), exchange);
+    }
+
+    /**
+     * <p>Controller for /motorVehicles with the make AND model AND generation query parameters defined.
+     * The generation value is used as a 'contains' case insensitive match.</p>
+     * @param make The make REST query parameter.
+     * @param model The model REST query parameter.
+     * @param generation The generation REST query parameter.
+     * @param exchange The request and response, used to fetch the original URL and Accept header.
+     * @return Response body streaming the MotorVehicle entities.
+     */
+    @RequestMapping(value = "/motorVehicles", params = {"make", "model", "generation"}, method = RequestMethod.GET)
+    public ResponseEntity<Flux<DataBuffer>> motorVehicleMakeAndModelAndGeneration(@RequestParam(value = "make") String make, @RequestParam(value = "model") String model, @RequestParam(value = "generation") String generation, ServerWebExchange exchange) {
+        return respond(MotorVehicleQuery.byMakeAndModelAndGeneration(make, model, generation), exchange);
+    }
+
+    private ResponseEntity<Flux<DataBuffer>> respond(MotorVehicleQuery query, ServerWebExchange exchange) {
+        ServerHttpRequest request = exchange.getRequest();
+        DataBufferFactory buffers = exchange.getResponse().bufferFactory();
+        boolean ndjson = request.getHeaders().getAccept().stream().anyMatch(MediaType.APPLICATION_NDJSON::equalsTypeAndSubtype);
+        MediaType contentType = ndjson ? MediaType.APPLICATION_NDJSON : MediaType.APPLICATION_JSON;
+        long start = System.nanoTime();
+        AtomicInteger numberOfRecords = new AtomicInteger();
+        AtomicLong bytes = new AtomicLong();
+        Flux<byte[]> body = ndjson
+                ? motorVehicleReactiveRepository.find(query).doOnNext(vehicle -> numberOfRecords.incrementAndGet()).map(vehicle -> concat(json(vehicle), NEWLINE))
+                : jsonDocument(request.getURI().toString(), motorVehicleReactiveRepository.find(query), numberOfRecords);
+        Flux<DataBuffer> content = body
+                .doOnNext(chunk -> bytes.addAndGet(chunk.length))
+                .doOnComplete(() -> motorVehicleMetrics.response("reactive", contentType, false, start, numberOfRecords.get(), (int) bytes.get(), false))
+                .map(buffers::wrap);
+        return ResponseEntity.ok().contentType(contentType).body(content);
+    }
+
+    /**
+     * <p>The ApiResponsePayload JSON shape with the payload entities streamed and numberOfRecords last.</p>
+     */
+    private Flux<byte[]> jsonDocument(String payloadURL, Flux<MotorVehicle> vehicles, AtomicInteger numberOfRecords) {
+        Mono<byte[]> header = Mono.fromCallable(() -> ("{\"publisher\":" + writer.writeValueAsString(publisher)
+                + ",\"payloadDescription\":" + writer.writeValueAsString(payloadDescription)
+                + ",\"payloadURL\":" + writer.writeValueAsString(payloadURL) + ",\"payload\":[").getBytes(StandardCharsets.UTF_8));
+        Flux<byte[]> payload = vehicles.map(vehicle -> (numberOfRecords.getAndIncrement() == 0) ? json(vehicle) : concat(COMMA, json(vehicle)));
+        Mono<byte[]> trailer = Mono.fromSupplier(() -> ("],\"numberOfRecords\":" + numberOfRecords.get() + "}").getBytes(StandardCharsets.UTF_8));
+        return Flux.concat(header, payload, trailer);
+    }
+
+    private byte[] json(MotorVehicle vehicle) {
+        try {
+            return writer.writeValueAsBytes(vehicle);
+        } catch (JsonProcessingException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] joined = new byte[first.length + second.length];
+        System.arraycopy(first, 0, joined, 0, first.length);
+        System.arraycopy(second, 0, joined, first.length, second.length);
+        return joined;
+    }
+}
@@ -0,0 +1,144 @@
+package au.com.formis.springbootdemo;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Row;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.jpa.repository.query.EscapeCharacter;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>R2DBC variant of the three MotorVehicleRepository queries, used by the WebFlux
+ * MotorVehicleReactiveController when the reactive profile is active.</p>
+ * <p></p>
+ * <p>r2dbc-h2 is not a non-blocking driver: it runs the embedded H2 engine, which reads the database file with
+ * blocking I/O on the thread that subscribes or requests rows. The queries are therefore subscribed on the
+ * Reactor boundedElastic scheduler so the WebFlux event loop threads never wait for H2.</p>
+ * <p></p>
+ * <p>Rows are read from the same H2 database as the JPA repository through an r2dbc-pool ConnectionPool
+ * and mapped to MotorVehicle entities as the subscriber requests them, so a slow client holds back the
+ * database read instead of buffering the result set. Results are in id order.</p>
+ * <p></p>
+ * <p>The ConnectionPool is deliberately not a Spring bean: a ConnectionFactory bean would make Spring Boot
+ * back off its JDBC DataSource, which the JPA repository and the MotorVehicleCatalog still need. For the
+ * same reason R2dbcAutoConfiguration is excluded in application.properties.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleRepository
+ * @see au.com.formis.springbootdemo.MotorVehicleReactiveController
+ * @see org.springframework.r2dbc.core.DatabaseClient
+ * @since       0.1
+ * </p>
+ */
+@Repository
+@Profile("reactive")
+public class MotorVehicleReactiveRepository {
+
+    private static final String SELECT = "select id, make, model, generation, trim_version, date_from, date_to, new_price, power, torque,"
+            + " fuel_capacity, engine_size, cylinders, valves, fuel_type, transmission, gearbox, country from motorvehicle";
+
+    private final ConnectionPool connectionPool;
+    private final DatabaseClient databaseClient;
+
+    public MotorVehicleReactiveRepository(@Value("${motorvehicle.r2dbc.url}") String url,
+                                          @Value("${spring.datasource.username}") String username,
+                                          @Value("${spring.datasource.password}") String password,
+                                          @Value("${motorvehicle.r2dbc.pool.max-size:10}") int maxSize) {
+        ConnectionFactoryOptions options = ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build();
+        this.connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactories.get(options))
+                .initialSize(Math.min(2, maxSize))
+                .maxSize(maxSize)
+                .build());
+        this.databaseClient = DatabaseClient.create(connectionPool);
+    }
+
+    /**
+     * <p>Query select data using the Make field/column only.</p>
+     * @param make Make of motor vehicle
+     * @return Returns a Flux of MotorVehicle entities matching the SQL query.
+     */
+    public Flux<MotorVehicle> findMotorVehiclesByMake(String make) {
+        return databaseClient.sql(SELECT + " where make = :make order by id")
+                .bind("make", make)
+                .map(MotorVehicleReactiveRepository::motorVehicle)
+                .all()
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * <p>Query select data using the Make AND Model fields/columns.</p>
+     * @param make Make of motor vehicle
+     * @param model Model of motor vehicle
+     * @return Returns a Flux of MotorVehicle entities matching the SQL query.
+     */
+    public Flux<MotorVehicle> findMotorVehiclesByMakeAndModel(String make, String model) {
+        return databaseClient.sql(SELECT + " where make = :make and model = :model order by id")
+                .bind("make", make)
+                .bind("model", model)
+                .map(MotorVehicleReactiveRepository::motorVehicle)
+                .all()
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * <p>Query select data using the Make AND Model AND Generation fields/columns.
+     * The select uses a case insensitive query for the generation column using a contains (ie: like)
+     * match not equality, with the like wildcards of the generation escaped.</p>
+     * @param make Make of motor vehicle
+     * @param model Model of motor vehicle
+     * @param generation Generation of motor vehicle
+     * @return Returns a Flux of MotorVehicle entities matching the SQL query.
+     */
+    public Flux<MotorVehicle> findMotorVehiclesByMakeAndModelAndGenerationContains(String make, String model, String generation) {
+        return databaseClient.sql(SELECT + " where make = :make and model = :model and generation_lower like lower(concat('%', :generation, '%')) escape '\\' order by id")
+                .bind("make", make)
+                .bind("model", model)
+                .bind("generation", EscapeCharacter.DEFAULT.escape(generation))
+                .map(MotorVehicleReactiveRepository::motorVehicle)
+                .all()
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * <p>Runs the query matching the make, model and generation of a MotorVehicleQuery, its page and range
+     * filters are not applied.</p>
+     * @param query make, model and generation to select.
+     * @return Returns a Flux of MotorVehicle entities matching the query.
+     */
+    public Flux<MotorVehicle> find(MotorVehicleQuery query) {
+        if (query.hasGeneration()) {
+            return findMotorVehiclesByMakeAndModelAndGenerationContains(query.getMake(), query.getModel(), query.getGeneration());
+        }
+        if (query.hasModel()) {
+            return findMotorVehiclesByMakeAndModel(query.getMake(), query.getModel());
+        }
+        return findMotorVehiclesByMake(query.getMake());
+    }
+
+    @PreDestroy
+    public void close() {
+        connectionPool.dispose();
+    }
+
+    private static MotorVehicle motorVehicle(Row row) {
+        return new MotorVehicle(row.get("id", Long.class), row.get("make", String.class), row.get("model", String.class),
+                row.get("generation", String.class), row.get("trim_version", String.class), row.get("date_from", String.class),
+                row.get("date_to", String.class), row.get("new_price", String.class), row.get("power", Integer.class),
+                row.get("torque", Integer.class), row.get("fuel_capacity", Integer.class), row.get("engine_size", Integer.class),
+                row.get("cylinders", Integer.class), row.get("valves", Integer.class), row.get("fuel_type", String.class),
+                row.get("transmission", String.class), row.get("gearbox", String.class), row.get("country", String.class));
+    }
+}
@@ -0,0 +1,223 @@
+package au.com.formis.springbootdemo;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.configuration.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>In-memory H2 read replicas of the motorvehicle table, each with its own Hikari connection pool.</p>
+ * <p></p>
+ * <p>Created by the MotorVehicleDataSourceConfiguration when <code>motorvehicle.replicas.count</code> is above 0.
+ * At startup each replica gets the schema of the db/migration scripts, run on the empty in-memory database, and
+ * a copy of every motorvehicle row of the primary data/myDB database. The MotorVehicleRoutingDataSource sends
+ * the connections of read only transactions to one of them, picked round robin or as the replica with the
+ * fewest active connections (least-busy), so concurrent readers do not contend on the one file backed
+ * database.</p>
+ * <p>Only the primary is written to. The MotorVehicleWriter copies each row it changes and the
+ * MotorVehicleImporter the whole imported dataset to every replica before refreshing the caches, so a read
+ * after a write returns the new row. Each copy is one transaction per replica, readers see the rows
+ * before or after it.</p>
+ * <p>The replica pools are sized by <code>motorvehicle.replicas.pool-size</code> and publish the hikaricp.*
+ * metrics tagged with pool motorvehicle-replica-n.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleDataSourceConfiguration
+ * @see au.com.formis.springbootdemo.MotorVehicleRoutingDataSource
+ * @since       0.1
+ * </p>
+ */
+public class MotorVehicleReplicas implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(MotorVehicleReplicas.class);
+
+    /**
+     * Round robin replica selection.
+     */
+    public static final String ROUND_ROBIN = "round-robin";
+
+    /**
+     * Selection of the replica with the fewest active connections.
+     */
+    public static final String LEAST_BUSY = "least-busy";
+
+    // Kept until close shuts them down, not when the last connection closes or by the H2 shutdown hook.
+    private static final String URL = "jdbc:h2:mem:motorvehicle_replica_%d;MODE=MySQL;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE";
+
+    // generation_lower is computed by each database.
+    private static final String[] COLUMNS = {"id", "make", "model", "generation", "trim_version", "date_from", "date_to", "new_price",
+            "power", "torque", "fuel_capacity", "engine_size", "cylinders", "valves", "fuel_type", "transmission", "gearbox", "country"};
+
+    private static final String SELECT = "select " + String.join(", ", COLUMNS) + " from motorvehicle";
+    private static final String INSERT = "insert into motorvehicle (" + String.join(", ", COLUMNS) + ") values (?"
+            + ", ?".repeat(COLUMNS.length - 1) + ")";
+    private static final String DELETE = "delete from motorvehicle";
+    private static final String BY_ID = " where id = ?";
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final DataSource primary;
+    private final List<HikariDataSource> replicas = new ArrayList<>();
+    private final boolean leastBusy;
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param primary The data/myDB database the rows are copied from.
+     * @param count Number of replicas.
+     * @param poolSize Maximum pool size of each replica.
+     * @param selection round-robin or least-busy.
+     * @param meterRegistry Registry of the replica pool metrics.
+     * @throws IllegalArgumentException If count is not positive or the selection is unknown.
+     */
+    public MotorVehicleReplicas(DataSource primary, int count, int poolSize, String selection, MeterRegistry meterRegistry) {
+        if (count < 1) {
+            throw new IllegalArgumentException("motorvehicle.replicas.count must be positive");
+        }
+        if (!ROUND_ROBIN.equals(selection) && !LEAST_BUSY.equals(selection)) {
+            throw new IllegalArgumentException("motorvehicle.replicas.selection must be " + ROUND_ROBIN + " or " + LEAST_BUSY + ", not " + selection);
+        }
+        this.primary = primary;
+        this.leastBusy = LEAST_BUSY.equals(selection);
+        for (int i = 0; i < count; i++) {
+            HikariConfig config = new HikariConfig();
+            config.setPoolName("motorvehicle-replica-" + i);
+            config.setJdbcUrl(String.format(URL, i));
+            config.setUsername("sa");
+            config.setMaximumPoolSize(poolSize);
+            config.setMetricRegistry(meterRegistry);
+            replicas.add(new HikariDataSource(config));
+        }
+    }
+
+    /**
+     * @return The replica connection pools, in replica number order.
+     */
+    public List<? extends DataSource> getDataSources() {
+        return replicas;
+    }
+
+    /**
+     * @return Number of the replica the next read only connection should come from.
+     */
+    public int select() {
+        // Ties go round robin too, so idle replicas share the load.
+        int first = Math.floorMod(next.getAndIncrement(), replicas.size());
+        if (!leastBusy) {
+            return first;
+        }
+        int selected = first;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.size(); i++) {
+            int replica = (first + i) % replicas.size();
+            int active = replicas.get(replica).getHikariPoolMXBean().getActiveConnections();
+            if (active < fewest) {
+                selected = replica;
+                fewest = active;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * <p>Creates the schema of every replica with the db/migration scripts of the primary, called once the
+     * primary has been migrated.</p>
+     * @param configuration Flyway configuration of the primary.
+     */
+    public void migrate(Configuration configuration) {
+        for (HikariDataSource replica : replicas) {
+            Flyway.configure().configuration(configuration).dataSource(replica).load().migrate();
+        }
+    }
+
+    /**
+     * <p>Replaces the rows of every replica with those of the primary.</p>
+     * @throws SQLException If a database cannot be read or written, the replica keeps its previous rows.
+     */
+    public void load() throws SQLException {
+        long start = System.nanoTime();
+        int rows = copyRows(null);
+        log.info("Loaded {} motor vehicles into {} replicas in {} ms", rows, replicas.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * <p>Replaces a row of every replica with the row of the primary, deleting it if the primary has no row with
+     * the id.</p>
+     * @param id MotorVehicle id.
+     * @throws SQLException If a database cannot be read or written, the replica keeps its previous row.
+     */
+    public void copy(long id) throws SQLException {
+        copyRows(id);
+    }
+
+    private int copyRows(Long id) throws SQLException {
+        String where = (id == null) ? "" : BY_ID;
+        int rows = 0;
+        for (HikariDataSource replica : replicas) {
+            rows = 0;
+            try (Connection source = primary.getConnection(); PreparedStatement select = source.prepareStatement(SELECT + where);
+                 Connection target = replica.getConnection()) {
+                boolean autoCommit = target.getAutoCommit();
+                target.setAutoCommit(false);
+                try (PreparedStatement delete = target.prepareStatement(DELETE + where); PreparedStatement insert = target.prepareStatement(INSERT)) {
+                    if (id != null) {
+                        select.setLong(1, id);
+                        delete.setLong(1, id);
+                    }
+                    delete.executeUpdate();
+                    try (ResultSet result = select.executeQuery()) {
+                        while (result.next()) {
+                            for (int i = 1; i <= COLUMNS.length; i++) {
+                                insert.setObject(i, result.getObject(i));
+                            }
+                            insert.addBatch();
+                            if (++rows % BATCH_SIZE == 0) {
+                                insert.executeBatch();
+                            }
+                        }
+                    }
+                    insert.executeBatch();
+                    target.commit();
+                } catch (SQLException | RuntimeException e) {
+                    target.rollback();
+                    throw e;
+                } finally {
+                    target.setAutoCommit(autoCommit);
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * <p>Drops the in-memory databases and closes the pools.</p>
+     */
+    @Override
+    public void close() {
+        for (HikariDataSource replica : replicas) {
+            replica.close();
+            // A pooled connection would fail to reset itself on the closed database.
+            try (Connection connection = DriverManager.getConnection(replica.getJdbcUrl(), replica.getUsername(), replica.getPassword());
+                 Statement statement = connection.createStatement()) {
+                statement.execute("shutdown");
+            } catch (SQLException e) {
+                log.warn("Could not shut down replica {}", replica.getPoolName(), e);
+            }
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package au.com.formis.springbootdemo;
 
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 
 /**
@@ -24,6 +31,16 @@ import java.util.List;
  *     <li>Make AND Model and Generation (case insensitive containing string, not equality)</li>
  * </ul>
  * <p>The above query fields map to equivalent query parameters for the REST API URL.</p>
+ * <p>The In queries select the rows for many makes (and models) at once for batch lookups.</p>
+ * <p>Every query seeks on the motorvehicle_make_model_generation index created by the db/migration scripts,
+ * the generation contains search compares against the computed generation_lower column.</p>
+ * <p>The make, make and model, and make, model and generation finders are cacheable, their results are
+ * kept as lists of ids in the Hibernate query cache and the entities in the second-level cache, so a
+ * repeated query runs no SQL.</p>
+ * <p>Each query also has a Stream variant with a JDBC fetch size hint for streaming large result sets.
+ * Streams must be consumed and closed inside a transaction.</p>
+ * <p>Every query runs in a read only transaction, which the MotorVehicleRoutingDataSource sends to a
+ * MotorVehicleReplicas replica when motorvehicle.replicas.count is set.</p>
  * <p>Examples</p>
  * <ul>
  *     <li>/motorVehicles?make=BMW</li>
@@ -38,37 +55,105 @@ import java.util.List;
  * @see org.springframework.stereotype.Repository
  * @see org.springframework.data.repository.CrudRepository
  * @see org.springframework.data.jpa.repository.Query
+ * @see org.springframework.data.jpa.repository.QueryHints
  * @see <a href="https://docs.oracle.com/html/E13946_04/ejb3_langref.html">https://docs.oracle.com/html/E13946_04/ejb3_langref.html</a>
  * @since       0.1
  * </p>
  */
 @Repository
+@Transactional(readOnly = true)
 public interface MotorVehicleRepository extends CrudRepository<MotorVehicle, Long> {
+
+    /**
+     * JDBC fetch size used by the streaming queries, rows are fetched from the database in chunks of this size.
+     */
+    int STREAM_FETCH_SIZE = 500;
+
     /**
      * <p>Query select data using the Make field/column only.</p>
      * @param make Make of motor vehicle
-     * @return Returns a List of MotorVehicle entities matching the JPQL query.
+     * @return Returns a List of MotorVehicle entities matching the JPQL query in id order.
      */
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select c from MotorVehicle c where c.make = ?1 order by c.id")
     List<MotorVehicle> findMotorVehiclesByMake(String make);
 
     /**
      * <p>Query select data using the Make AND Model fields/columns.</p>
      * @param make Make of motor vehicle
      * @param model Model of motor vehicle
-     * @return Returns a List of MotorVehicle entities matching the JPQL query.
+     * @return Returns a List of MotorVehicle entities matching the JPQL query in id order.
      */
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select c from MotorVehicle c where c.make = ?1 and c.model = ?2 order by c.id")
     List<MotorVehicle> findMotorVehiclesByMakeAndModel(String make, String model);
 
     /**
      * <p>Query select data using the Make AND Model AND Generation fields/columns.
      * The select uses a case insensitive query for the generation column using a contains (ie: like)
-     * match not equality.</p>
+     * match not equality, with the like wildcards of the generation escaped.</p>
      * @param make Make of motor vehicle
      * @param model Model of motor vehicle
      * @param generation Generation of motor vehicle
-     * @return Returns a List of MotorVehicle entities matching the JPQL query.
+     * @return Returns a List of MotorVehicle entities matching the JPQL query in id order.
      */
-    @Query("select c from MotorVehicle c where c.make = ?1 and c.model = ?2 and lower(c.generation) like lower(concat('%', ?3, '%'))")
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    @Query("select c from MotorVehicle c where c.make = ?1 and c.model = ?2 and c.generationLower like lower(concat('%', ?#{escape([2])}, '%')) escape '\\' order by c.id")
     List<MotorVehicle> findMotorVehiclesByMakeAndModelAndGenerationContains(String make, String model, String generation);
 
+    /**
+     * <p>Query select data for any of a collection of makes.</p>
+     * @param makes Makes of motor vehicle
+     * @return Returns a List of MotorVehicle entities matching the JPQL query in id order.
+     */
+    @Query("select c from MotorVehicle c where c.make in ?1 order by c.id")
+    List<MotorVehicle> findMotorVehiclesByMakeIn(Collection<String> makes);
+
+    /**
+     * <p>Query select data for any combination of a collection of makes and a collection of models.</p>
+     * @param makes Makes of motor vehicle
+     * @param models Models of motor vehicle
+     * @return Returns a List of MotorVehicle entities matching the JPQL query in id order.
+     */
+    @Query("select c from MotorVehicle c where c.make in ?1 and c.model in ?2 order by c.id")
+    List<MotorVehicle> findMotorVehiclesByMakeInAndModelIn(Collection<String> makes, Collection<String> models);
+
+    /**
+     * <p>Streaming variant of findMotorVehiclesByMake.</p>
+     * @param make Make of motor vehicle
+     * @return Returns a Stream of MotorVehicle entities matching the JPQL query.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query("select c from MotorVehicle c where c.make = ?1 order by c.id")
+    Stream<MotorVehicle> streamMotorVehiclesByMake(String make);
+
+    /**
+     * <p>Streaming variant of findMotorVehiclesByMakeAndModel.</p>
+     * @param make Make of motor vehicle
+     * @param model Model of motor vehicle
+     * @return Returns a Stream of MotorVehicle entities matching the JPQL query.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query("select c from MotorVehicle c where c.make = ?1 and c.model = ?2 order by c.id")
+    Stream<MotorVehicle> streamMotorVehiclesByMakeAndModel(String make, String model);
+
+    /**
+     * <p>Streaming variant of findMotorVehiclesByMakeAndModelAndGenerationContains.</p>
+     * @param make Make of motor vehicle
+     * @param model Model of motor vehicle
+     * @param generation Generation of motor vehicle
+     * @return Returns a Stream of MotorVehicle entities matching the JPQL query.
+     */
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE))
+    @Query("select c from MotorVehicle c where c.make = ?1 and c.model = ?2 and c.generationLower like lower(concat('%', ?#{escape([2])}, '%')) escape '\\' order by c.id")
+    Stream<MotorVehicle> streamMotorVehiclesByMakeAndModelAndGenerationContains(String make, String model, String generation);
+
+    /**
+     * <p>Counts the rows of each distinct make, model and generation combination, read by MotorVehicleCompletions
+     * to build its prefix indexes without loading every entity.</p>
+     * @return make, model, generation and row count of each combination.
+     */
+    @Query("select c.make, c.model, c.generation, count(c) from MotorVehicle c group by c.make, c.model, c.generation")
+    List<Object[]> findMakeModelGenerationCounts();
+
 }
@@ -0,0 +1,87 @@
+package au.com.formis.springbootdemo;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Single flight coalescing of concurrent identical REST API requests.</p>
+ * <p></p>
+ * <p>The first request for a key runs the query and serialization, requests for the same key arriving
+ * before it completes are handed the same future instead of running their own. The MotorVehicleController
+ * keys requests by the same format and canonical URL as the MotorVehicleResponseCache, so requests that
+ * differ only in parameter order or generation case are coalesced too. A burst of requests for a popular
+ * make and model then costs one store query and one serialization, whether or not the response cache is
+ * enabled or has room for the response.</p>
+ * <p>Nothing is kept once the execution completes, a request arriving after that starts a new one. A
+ * failed execution fails every request coalesced onto it. Coalesced requests are counted by
+ * MotorVehicleMetrics.</p>
+ * <p>Set <code>motorvehicle.coalescing.enabled=false</code> to run every request on its own.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @see au.com.formis.springbootdemo.MotorVehicleResponseCache
+ * @since       0.1
+ * </p>
+ */
+@Component
+public class MotorVehicleRequestCoalescer {
+
+    private final boolean enabled;
+    private final MotorVehicleMetrics motorVehicleMetrics;
+    private final ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    public MotorVehicleRequestCoalescer(@Value("${motorvehicle.coalescing.enabled:true}") boolean enabled, MotorVehicleMetrics motorVehicleMetrics) {
+        this.enabled = enabled;
+        this.motorVehicleMetrics = motorVehicleMetrics;
+    }
+
+    /**
+     * @param endpoint Endpoint tag of the coalesced request counter.
+     * @param key Normalized request, requests with equal keys must have equal results.
+     * @param execution Starts the execution, only called if no execution for the key is in flight.
+     * @return The result of the execution in flight for the key, or of the one started.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> execute(String endpoint, String key, Supplier<CompletableFuture<T>> execution) {
+        if (!enabled) {
+            return execution.get();
+        }
+        CompletableFuture<T> flight = new CompletableFuture<>();
+        CompletableFuture<T> existing = (CompletableFuture<T>) inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            motorVehicleMetrics.coalesced(endpoint);
+            return existing;
+        }
+        CompletableFuture<T> started;
+        try {
+            started = execution.get();
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        started.whenComplete((result, failure) -> {
+            // Removed first so a request arriving once the result is out starts afresh.
+            inFlight.remove(key, flight);
+            if (failure == null) {
+                flight.complete(result);
+            } else {
+                flight.completeExceptionally(failure);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * @return Number of executions in flight.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,320 @@
+package au.com.formis.springbootdemo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>A bounded, size aware LRU cache of fully serialized REST API responses.</p>
+ * <p></p>
+ * <p>Entries are keyed by the canonical request URL built by the MotorVehicleController (fixed parameter
+ * order, case folded generation) and hold the response status, the serialized JSON bytes, a gzip
+ * compressed copy for bodies of at least motorvehicle.response-cache.gzip-min-bytes and a strong ETag
+ * derived from a SHA-256 digest of the body. Repeat requests skip the query and serialization, and
+ * callers sending a matching If-None-Match header get a 304 with no body.</p>
+ * <p></p>
+ * <p>The cache is bounded by motorvehicle.response-cache.max-bytes, the sum of the key and body sizes of
+ * all entries. The least recently used entries are evicted once the bound is exceeded. Hit, miss and
+ * eviction counts are kept for monitoring.</p>
+ * <p></p>
+ * <p>Each entry is scoped by the make, or make and model, of the MotorVehicleQuery it answers. A
+ * MotorVehicleWriter change only invalidates the entries of the make and model it touched, an import clears
+ * the whole cache. A response computed from data read before an invalidation of its scope is not stored,
+ * callers take a stamp before running the query and pass it to put. The last invalidation is kept for at
+ * most MAX_INVALIDATED_SCOPES scopes, dropping the oldest one counts as an invalidation of every scope.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleController
+ * @since       0.1
+ * </p>
+ */
+@Component
+public class MotorVehicleResponseCache {
+
+    static final int MAX_INVALIDATED_SCOPES = 1024;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final int gzipMinBytes;
+
+    // Access ordered LinkedHashMap gives least recently used iteration order.
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes;
+
+    // Invalidations are numbered, put drops responses computed before the last invalidation of their scope.
+    // invalidatedAt is in ascending stamp order, clearedAt is raised to the stamps it drops.
+    private long invalidations;
+    private long clearedAt;
+    private final LinkedHashMap<String, Long> invalidatedAt = new LinkedHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public MotorVehicleResponseCache(@Value("${motorvehicle.response-cache.enabled:true}") boolean enabled,
+                                     @Value("${motorvehicle.response-cache.max-bytes:16777216}") long maxBytes,
+                                     @Value("${motorvehicle.response-cache.gzip-min-bytes:1024}") int gzipMinBytes) {
+        this.enabled = enabled;
+        this.maxBytes = maxBytes;
+        this.gzipMinBytes = gzipMinBytes;
+    }
+
+    /**
+     * @param key Canonical request URL.
+     * @return The cached response or null if there is none.
+     */
+    public CachedResponse get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        CachedResponse response;
+        synchronized (this) {
+            response = entries.get(key);
+        }
+        (response == null ? misses : hits).increment();
+        return response;
+    }
+
+    /**
+     * @return The current invalidation stamp, to be taken before reading the data of a response and passed to put.
+     */
+    public synchronized long stamp() {
+        return invalidations;
+    }
+
+    /**
+     * <p>Prepares a response for caching (ETag and gzip copy) and stores it, evicting least recently used
+     * entries if the cache grows past its size bound. Responses larger than the bound, or computed before
+     * their make and model were last invalidated, are not stored.</p>
+     * @param key Canonical request URL.
+     * @param query Query the response answers, its make and model scope the entry.
+     * @param stamp The stamp taken before the query was run.
+     * @param status Response status.
+     * @param body Serialized response body.
+     * @param numberOfRecords numberOfRecords of the response payload.
+     * @return The prepared response, returned whether or not it was stored.
+     */
+    public CachedResponse put(String key, MotorVehicleQuery query, long stamp, HttpStatus status, byte[] body, int numberOfRecords) {
+        String scope = query.hasModel() ? scope(query.getMake(), query.getModel()) : query.getMake();
+        CachedResponse response = new CachedResponse(scope, status, body, (body.length >= gzipMinBytes) ? gzip(body) : null, etag(body), numberOfRecords);
+        long size = weight(key, response);
+        if (!enabled || size > maxBytes) {
+            return response;
+        }
+        synchronized (this) {
+            if (clearedAt > stamp || invalidatedAt.getOrDefault(scope, 0L) > stamp) {
+                return response;
+            }
+            CachedResponse previous = entries.put(key, response);
+            if (previous != null) {
+                bytes -= weight(key, previous);
+            }
+            bytes += size;
+            Iterator<Map.Entry<String, CachedResponse>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, CachedResponse> entry = eldest.next();
+                bytes -= weight(entry.getKey(), entry.getValue());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        return response;
+    }
+
+    /**
+     * <p>Removes every entry, used when the whole dataset is replaced.</p>
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+        clearedAt = ++invalidations;
+        invalidatedAt.clear();
+    }
+
+    /**
+     * <p>Removes the entries of queries that can include rows of a make and model: those for the make alone
+     * and those for the make and model. Entries of other models of the make are kept.</p>
+     * @param make Make of the changed row.
+     * @param model Model of the changed row.
+     */
+    public synchronized void invalidate(String make, String model) {
+        long stamp = ++invalidations;
+        String makeScope = (make == null) ? "" : make;
+        String modelScope = scope(make, model);
+        invalidated(makeScope, stamp);
+        invalidated(modelScope, stamp);
+        Iterator<Map.Entry<String, CachedResponse>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, CachedResponse> entry = iterator.next();
+            String scope = entry.getValue().scope;
+            if (scope.equals(makeScope) || scope.equals(modelScope)) {
+                bytes -= weight(entry.getKey(), entry.getValue());
+                iterator.remove();
+            }
+        }
+    }
+
+    private void invalidated(String scope, long stamp) {
+        // Removed first so the scope moves to the end of the insertion order.
+        invalidatedAt.remove(scope);
+        invalidatedAt.put(scope, stamp);
+        Iterator<Long> eldest = invalidatedAt.values().iterator();
+        while (invalidatedAt.size() > MAX_INVALIDATED_SCOPES) {
+            clearedAt = Math.max(clearedAt, eldest.next());
+            eldest.remove();
+        }
+    }
+
+    private static String scope(String make, String model) {
+        // Makes and models are REST parameters, they hold no NUL character.
+        return make + '\0' + model;
+    }
+
+    /**
+     * @return A point in time copy of the cache counters.
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits.sum(), misses.sum(), evictions.sum(), entries.size(), bytes, maxBytes);
+    }
+
+    private static long weight(String key, CachedResponse response) {
+        return 2L * key.length() + response.getBody().length + ((response.getGzipBody() == null) ? 0 : response.getGzipBody().length);
+    }
+
+    private static byte[] gzip(byte[] body) {
+        var compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (var gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static String etag(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            var etag = new StringBuilder(2 + 32).append('"');
+            for (int i = 0; i < 16; i++) {
+                etag.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return etag.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * <p>An immutable serialized response.</p>
+     */
+    public static final class CachedResponse {
+
+        private final String scope;
+        private final HttpStatus status;
+        private final byte[] body;
+        private final byte[] gzipBody;
+        private final String etag;
+        private final int numberOfRecords;
+
+        CachedResponse(String scope, HttpStatus status, byte[] body, byte[] gzipBody, String etag, int numberOfRecords) {
+            this.scope = scope;
+            this.status = status;
+            this.body = body;
+            this.gzipBody = gzipBody;
+            this.etag = etag;
+            this.numberOfRecords = numberOfRecords;
+        }
+
+        public HttpStatus getStatus() {
+            return status;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return gzip compressed body, null if the body is too small to be worth compressing.
+         */
+        public byte[] getGzipBody() {
+            return gzipBody;
+        }
+
+        public int getNumberOfRecords() {
+            return numberOfRecords;
+        }
+
+        /**
+         * @return Strong ETag of the uncompressed body, quoted.
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return Strong ETag of the gzip compressed body, quoted.
+         */
+        public String getGzipEtag() {
+            return etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+    }
+
+    /**
+     * <p>Cache counters, serialized as JSON by the /motorVehicles/cache endpoint.</p>
+     */
+    public static final class Statistics {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int entries;
+        private final long bytes;
+        private final long maxBytes;
+
+        Statistics(long hits, long misses, long evictions, int entries, long bytes, long maxBytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public int getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+    }
+}
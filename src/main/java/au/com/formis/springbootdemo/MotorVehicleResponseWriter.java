@@ -0,0 +1,211 @@
+package au.com.formis.springbootdemo;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.PropertyWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Serializes REST API responses to JSON using the Spring Boot configured ObjectMapper.</p>
+ * <p></p>
+ * <p>Pretty printing is chosen per request (the pretty=true query parameter) rather than globally
+ * through spring.jackson.serialization.indent_output, so the default response is compact JSON.</p>
+ * <p></p>
+ * <p>Two output modes are supported:</p>
+ * <ul>
+ *     <li>write - the whole ApiResponsePayload is serialized to a byte array in one of the
+ *     MotorVehicleFormat formats. Smile and CBOR use ObjectMappers built from the Spring Boot
+ *     Jackson2ObjectMapperBuilder so they have the same modules and features as the JSON one, pretty is
+ *     ignored for them. The COLUMNS layout writes the payload records as one array per property, in the
+ *     order and with the serializers Jackson would use for the record, nulls included so the arrays line up.
+ *     MotorVehicleProjection records have one array per selected field.</li>
+ *     <li>writeStreaming - the ApiResponsePayload JSON shape is written field by field to an
+ *     OutputStream. publisher, payloadDescription and payloadURL are written first, then each
+ *     payload entity as it is produced, and numberOfRecords last as a trailer because the count is
+ *     only known once every entity has been written. Heap usage does not depend on the result size.</li>
+ * </ul>
+ * <p>
+ * @see au.com.formis.springbootdemo.ApiResponsePayload
+ * @see au.com.formis.springbootdemo.MotorVehicleFormat
+ * @see com.fasterxml.jackson.databind.ObjectWriter
+ * @since       0.1
+ * </p>
+ */
+@Component
+public class MotorVehicleResponseWriter {
+
+    private final ObjectWriter compactWriter;
+    private final ObjectWriter prettyWriter;
+    private final ObjectWriter compactColumnsWriter;
+    private final ObjectWriter prettyColumnsWriter;
+    private final ObjectWriter smileWriter;
+    private final ObjectWriter cborWriter;
+
+    public MotorVehicleResponseWriter(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        this.compactWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.prettyWriter = objectMapper.writerWithDefaultPrettyPrinter();
+        ObjectMapper columnsMapper = objectMapper.copy().registerModule(new SimpleModule().addSerializer(ColumnsPayload.class, new ColumnsSerializer()));
+        this.compactColumnsWriter = columnsMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.prettyColumnsWriter = columnsMapper.writerWithDefaultPrettyPrinter();
+        this.smileWriter = objectMapperBuilder.factory(new SmileFactory()).build().writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.cborWriter = objectMapperBuilder.factory(new CBORFactory()).build().writer().without(SerializationFeature.INDENT_OUTPUT);
+    }
+
+    /**
+     * @param payload Response payload to serialize.
+     * @param pretty true to pretty print the JSON.
+     * @return The JSON document as UTF-8 bytes.
+     * @throws IOException If the payload cannot be serialized.
+     */
+    public byte[] write(ApiResponsePayload<?> payload, boolean pretty) throws IOException {
+        return writer(pretty).writeValueAsBytes(payload);
+    }
+
+    /**
+     * @param payload Response payload to serialize.
+     * @param pretty true to pretty print JSON and COLUMNS responses.
+     * @param format Response body format.
+     * @return The serialized payload.
+     * @throws IOException If the payload cannot be serialized.
+     */
+    public byte[] write(ApiResponsePayload<?> payload, boolean pretty, MotorVehicleFormat format) throws IOException {
+        switch (format) {
+            case COLUMNS:
+                return (pretty ? prettyColumnsWriter : compactColumnsWriter).writeValueAsBytes(new ColumnsPayload(payload));
+            case SMILE:
+                return smileWriter.writeValueAsBytes(payload);
+            case CBOR:
+                return cborWriter.writeValueAsBytes(payload);
+            default:
+                return write(payload, pretty);
+        }
+    }
+
+    /**
+     * <p>Writes a JSON document with the ApiResponsePayload fields, streaming the payload entities.</p>
+     * @param out Stream to write to, not closed by this method.
+     * @param publisher Payload publisher metadata.
+     * @param payloadDescription Payload description metadata.
+     * @param payloadURL Payload request URL metadata.
+     * @param pretty true to pretty print the JSON.
+     * @param source Passes each payload entity to the given consumer and returns the number of entities.
+     * @param <T> Payload entity type.
+     * @return The number of payload entities written.
+     * @throws IOException If writing to the stream fails.
+     */
+    public <T> int writeStreaming(OutputStream out, String publisher, String payloadDescription, String payloadURL,
+                                   boolean pretty, ToIntFunction<Consumer<T>> source) throws IOException {
+        // Let the generator buffer between entities rather than flushing the response after each one.
+        ObjectWriter writer = writer(pretty).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = writer.createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)) {
+            generator.writeStartObject();
+            generator.writeStringField("publisher", publisher);
+            generator.writeStringField("payloadDescription", payloadDescription);
+            generator.writeStringField("payloadURL", payloadURL);
+            generator.writeArrayFieldStart("payload");
+            int numberOfRecords;
+            try {
+                numberOfRecords = source.applyAsInt(entity -> {
+                    try {
+                        writer.writeValue(generator, entity);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("numberOfRecords", numberOfRecords);
+            generator.writeEndObject();
+            return numberOfRecords;
+        }
+    }
+
+    private ObjectWriter writer(boolean pretty) {
+        return pretty ? prettyWriter : compactWriter;
+    }
+
+    /**
+     * <p>An ApiResponsePayload to be written in the MotorVehicleFormat.COLUMNS layout.</p>
+     */
+    private static final class ColumnsPayload {
+
+        private final ApiResponsePayload<?> payload;
+
+        private ColumnsPayload(ApiResponsePayload<?> payload) {
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * <p>Writes the ApiResponsePayload fields with the payload as an object of property name to the array of
+     * that property's values, one per record.</p>
+     */
+    private static final class ColumnsSerializer extends JsonSerializer<ColumnsPayload> {
+
+        @Override
+        public void serialize(ColumnsPayload value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            ApiResponsePayload<?> payload = value.payload;
+            generator.writeStartObject();
+            generator.writeStringField("publisher", payload.getPublisher());
+            generator.writeStringField("payloadDescription", payload.getPayloadDescription());
+            generator.writeStringField("payloadURL", payload.getPayloadURL());
+            generator.writeNumberField("numberOfRecords", payload.getNumberOfRecords());
+            generator.writeObjectFieldStart("payload");
+            List<?> records = payload.getPayload();
+            if (!records.isEmpty() && records.get(0) instanceof MotorVehicleProjection) {
+                List<String> names = ((MotorVehicleProjection) records.get(0)).getFields().getNames();
+                for (int i = 0; i < names.size(); i++) {
+                    generator.writeArrayFieldStart(names.get(i));
+                    for (Object record : records) {
+                        provider.defaultSerializeValue(((MotorVehicleProjection) record).getValue(i), generator);
+                    }
+                    generator.writeEndArray();
+                }
+            } else if (!records.isEmpty()) {
+                // The bean serializer of the record type lists the properties a JSON object of the record would have.
+                Iterator<PropertyWriter> properties = provider.findValueSerializer(records.get(0).getClass()).properties();
+                while (properties.hasNext()) {
+                    PropertyWriter property = properties.next();
+                    generator.writeArrayFieldStart(property.getName());
+                    for (Object record : records) {
+                        try {
+                            property.serializeAsElement(record, generator, provider);
+                        } catch (IOException | RuntimeException e) {
+                            throw e;
+                        } catch (Exception e) {
+                            throw JsonMappingException.from(generator, "Cannot write " + property.getName(), e);
+                        }
+                    }
+                    generator.writeEndArray();
+                }
+            }
+            generator.writeEndObject();
+            if (payload.getNextCursor() != null) {
+                generator.writeStringField("nextCursor", payload.getNextCursor());
+            }
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package au.com.formis.springbootdemo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>DataSource handing out connections of the MotorVehicleReplicas inside read only transactions and of the
+ * primary data/myDB database otherwise.</p>
+ * <p></p>
+ * <p>Every MotorVehicleRepository query and JpaMotorVehicleStore method runs in a read only transaction. The
+ * JpaTransactionManager asks for the connection before it marks the transaction read only, so this DataSource
+ * has to be wrapped in a LazyConnectionDataSourceProxy, which only fetches the connection when the first
+ * statement runs. Plain JDBC access outside a transaction, such as the MotorVehicleWriter and
+ * MotorVehicleImporter, uses the primary.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleReplicas
+ * @see org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy
+ * @since       0.1
+ * </p>
+ */
+public class MotorVehicleRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+
+    private final MotorVehicleReplicas motorVehicleReplicas;
+
+    public MotorVehicleRoutingDataSource(DataSource primary, MotorVehicleReplicas motorVehicleReplicas) {
+        this.motorVehicleReplicas = motorVehicleReplicas;
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        List<? extends DataSource> replicas = motorVehicleReplicas.getDataSources();
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(i, replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly() ? motorVehicleReplicas.select() : PRIMARY;
+    }
+}
@@ -0,0 +1,202 @@
+package au.com.formis.springbootdemo;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable value object holding the filters of a /motorVehicles/search query, any combination of:</p>
+ * <ul>
+ *     <li>Equality filters on make, model, fuelType, transmission, country and gearbox (case sensitive, as the
+ *     /motorVehicles make and model parameters).</li>
+ *     <li>Case insensitive contains filters on generation and trimVersion.</li>
+ *     <li>MotorVehicleRange filters on the numeric attributes.</li>
+ * </ul>
+ * <p>Unlike MotorVehicleQuery no filter is required, but a search needs at least one of them. An optional
+ * MotorVehiclePage adds sort order and keyset pagination, without one results are returned in id order.</p>
+ * <p>The MotorVehicleStore answering a search reports how it ran it as a query plan, see Result.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleStore
+ * @see au.com.formis.springbootdemo.MotorVehicleRange
+ * @see au.com.formis.springbootdemo.MotorVehiclePage
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleSearch {
+
+    /**
+     * Fields that can be filtered on by equality, in canonical parameter order.
+     */
+    public static final List<String> EQUALS = List.of("make", "model", "fuelType", "transmission", "country", "gearbox");
+
+    /**
+     * Fields that can be filtered on with a case insensitive contains, in canonical parameter order.
+     */
+    public static final List<String> CONTAINS = List.of("generation", "trimVersion");
+
+    private final Map<String, String> equals;
+    private final Map<String, String> contains;
+    private final List<MotorVehicleRange> ranges;
+    private final MotorVehiclePage page;
+
+    private MotorVehicleSearch(Map<String, String> equals, Map<String, String> contains, List<MotorVehicleRange> ranges, MotorVehiclePage page) {
+        this.equals = equals;
+        this.contains = contains;
+        this.ranges = ranges;
+        this.page = page;
+    }
+
+    /**
+     * @param filters Equality and contains filter values keyed by field, for example the REST query parameters.
+     * Other keys are ignored.
+     * @param ranges Range filters, at most one per attribute.
+     * @return The search, with contains values lower cased.
+     * @throws IllegalArgumentException If there is no filter at all, a filter value is empty or an attribute
+     * has more than one range.
+     */
+    public static MotorVehicleSearch of(Map<String, String> filters, List<MotorVehicleRange> ranges) {
+        // LinkedHashMap iteration order is the canonical parameter order.
+        Map<String, String> equals = new LinkedHashMap<>();
+        for (String field : EQUALS) {
+            if (filters.containsKey(field)) {
+                equals.put(field, value(field, filters.get(field)));
+            }
+        }
+        Map<String, String> contains = new LinkedHashMap<>();
+        for (String field : CONTAINS) {
+            if (filters.containsKey(field)) {
+                contains.put(field, value(field, filters.get(field)).toLowerCase(Locale.ROOT));
+            }
+        }
+        List<MotorVehicleRange> sorted = MotorVehicleRange.canonical(ranges);
+        if (equals.isEmpty() && contains.isEmpty() && sorted.isEmpty()) {
+            throw new IllegalArgumentException("A search needs at least one of " + String.join(", ", EQUALS) + ", "
+                    + String.join(", ", CONTAINS) + " or a range of " + String.join(", ", MotorVehicleRange.attributes()));
+        }
+        return new MotorVehicleSearch(equals, contains, sorted, null);
+    }
+
+    private static String value(String field, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException(field + " must not be empty");
+        }
+        return value;
+    }
+
+    /**
+     * @param page Sort order and keyset pagination, null for all results in id order.
+     * @return A copy of this search with the given page.
+     */
+    public MotorVehicleSearch withPage(MotorVehiclePage page) {
+        return new MotorVehicleSearch(equals, contains, ranges, page);
+    }
+
+    /**
+     * @return Equality filter values keyed by field, in canonical order.
+     */
+    public Map<String, String> getEquals() {
+        return equals;
+    }
+
+    /**
+     * @return Lower cased contains filter values keyed by field, in canonical order.
+     */
+    public Map<String, String> getContains() {
+        return contains;
+    }
+
+    /**
+     * @return Range filters in canonical attribute order, empty if there are none.
+     */
+    public List<MotorVehicleRange> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * @return Sort order and keyset pagination, null for all results in id order.
+     */
+    public MotorVehiclePage getPage() {
+        return page;
+    }
+
+    public boolean isPaged() {
+        return page != null;
+    }
+
+    /**
+     * <p>Filter parameters in canonical form, see MotorVehicleQuery.canonicalParameters. Paging parameters are
+     * not included.</p>
+     * @return Canonical query string, for example fuelType=Diesel&amp;country=Germany&amp;trimVersion=sport&amp;power=150..
+     */
+    public String canonicalParameters() {
+        var parameters = new StringBuilder();
+        equals.forEach((field, value) -> parameters.append('&').append(field).append('=').append(MotorVehicleQuery.encode(value)));
+        contains.forEach((field, value) -> parameters.append('&').append(field).append('=').append(MotorVehicleQuery.encode(value)));
+        for (MotorVehicleRange range : ranges) {
+            parameters.append('&').append(range.getAttribute()).append('=').append(range.toParameter());
+        }
+        return parameters.substring(1);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MotorVehicleSearch)) {
+            return false;
+        }
+        MotorVehicleSearch that = (MotorVehicleSearch) o;
+        return equals.equals(that.equals) && contains.equals(that.contains) && ranges.equals(that.ranges) && Objects.equals(page, that.page);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(equals, contains, ranges, page);
+    }
+
+    @Override
+    public String toString() {
+        return "MotorVehicleSearch{" +
+                "equals=" + equals +
+                ", contains=" + contains +
+                ", ranges=" + ranges +
+                ", page=" + page +
+                '}';
+    }
+
+    /**
+     * <p>The entities matching a search and the plan the store ran it with.</p>
+     */
+    public static final class Result {
+
+        private final List<MotorVehicle> vehicles;
+        private final String plan;
+
+        Result(List<MotorVehicle> vehicles, String plan) {
+            this.vehicles = vehicles;
+            this.plan = plan;
+        }
+
+        /**
+         * @return Matching MotorVehicle entities in page order, id order without a page.
+         */
+        public List<MotorVehicle> getVehicles() {
+            return vehicles;
+        }
+
+        /**
+         * @return Access path of each filter in the order they were applied, with the estimated and actual row
+         * counts, for example "model hash 12 -&gt; 12, power range 81 -&gt; 9" where 81 is the estimate and 9 the rows left.
+         */
+        public String getPlan() {
+            return plan;
+        }
+    }
+}
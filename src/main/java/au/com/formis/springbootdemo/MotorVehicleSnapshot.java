@@ -0,0 +1,462 @@
+package au.com.formis.springbootdemo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.ToIntFunction;
+import org.flywaydb.core.Flyway;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Compact binary image of the MOTORVEHICLE table, the storage behind a MotorVehicleColumns snapshot.</p>
+ * <p></p>
+ * <p>The image is a header, a directory of named sections and the sections, little endian and 8 byte aligned:</p>
+ * <ul>
+ *     <li>id - the ids in ascending order, one long per row. Row numbers are positions in this order.</li>
+ *     <li>One dictionary per String property, its distinct values sorted in UTF-8 byte order so they can be
+ *     searched without decoding them, and one int code per row, see StringDictionary.</li>
+ *     <li>Fixed width int columns: power, torque, fuelCapacity, engineSize, cylinders, valves and the
+ *     dateFrom, dateTo and newPrice keys of MotorVehicleValues.</li>
+ *     <li>Prebuilt indexes from each make, model, fuelType, transmission and country code, and from each
+ *     make and model code pair, to the ascending rows holding it, see RowIndex.</li>
+ * </ul>
+ * <p>The header holds the MotorVehicleWriter change log version the rows were read at, so a snapshot file
+ * older than the last write or import can be told apart.</p>
+ * <p>MotorVehicleColumns.of builds an image in a heap buffer. map maps a file written by write or by the
+ * command line below read only into memory instead, the columns then read the rows straight from the page
+ * cache, which the operating system fills on demand and shares between restarts, leaving little more than the
+ * small dictionary and index objects on the heap. Images are limited to 2 GB.</p>
+ * <p></p>
+ * <p>main writes the snapshot file from the database with plain JDBC, without starting the service:</p>
+ * <pre>MotorVehicleSnapshot &lt;file&gt; [jdbc url] [user] [password]</pre>
+ * <p>The connection defaults to the spring.datasource properties of application.properties. The database is
+ * migrated first, as the service would at startup, so the change log version can be read. H2 locks the data/myDB
+ * file, run it while the service is stopped.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleColumns
+ * @see au.com.formis.springbootdemo.StringDictionary
+ * @see au.com.formis.springbootdemo.RowIndex
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleSnapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(MotorVehicleSnapshot.class);
+
+    private static final int MAGIC = 0x4D56534E;
+    private static final int FORMAT = 1;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+    private static final int ALIGNMENT = 8;
+
+    // LinkedHashMap iteration order is the section order.
+    private static final Map<String, Function<MotorVehicle, String>> STRINGS = new LinkedHashMap<>();
+    private static final Map<String, ToIntFunction<MotorVehicle>> INTS = new LinkedHashMap<>();
+
+    static {
+        STRINGS.put("make", MotorVehicle::getMake);
+        STRINGS.put("model", MotorVehicle::getModel);
+        STRINGS.put("generation", MotorVehicle::getGeneration);
+        STRINGS.put("trimVersion", MotorVehicle::getTrimVersion);
+        STRINGS.put("dateFrom", MotorVehicle::getDateFrom);
+        STRINGS.put("dateTo", MotorVehicle::getDateTo);
+        STRINGS.put("newPrice", MotorVehicle::getNewPrice);
+        STRINGS.put("fuelType", MotorVehicle::getFuelType);
+        STRINGS.put("transmission", MotorVehicle::getTransmission);
+        STRINGS.put("gearbox", MotorVehicle::getGearbox);
+        STRINGS.put("country", MotorVehicle::getCountry);
+        INTS.put("power", MotorVehicle::getPower);
+        INTS.put("torque", MotorVehicle::getTorque);
+        INTS.put("fuelCapacity", MotorVehicle::getFuelCapacity);
+        INTS.put("engineSize", MotorVehicle::getEngineSize);
+        INTS.put("cylinders", MotorVehicle::getCylinders);
+        INTS.put("valves", MotorVehicle::getValves);
+        INTS.put("dateFromMonth", vehicle -> MotorVehicleValues.yearMonthKey(vehicle.getDateFrom()));
+        INTS.put("dateToMonth", vehicle -> MotorVehicleValues.dateToKey(vehicle.getDateTo()));
+        INTS.put("newPriceValue", vehicle -> MotorVehicleValues.priceKey(vehicle.getNewPrice()));
+    }
+
+    /**
+     * String properties with a prebuilt code index.
+     */
+    static final List<String> INDEXED = List.of("make", "model", "fuelType", "transmission", "country");
+
+    private static final String MAKE_MODEL = "make+model";
+
+    private final ByteBuffer image;
+    private final boolean mapped;
+    private final long version;
+    private final int size;
+    private final Map<String, ByteBuffer> sections = new HashMap<>();
+    // Decoded dictionary values of an image built on the heap, null when mapped.
+    private final Map<String, String[]> values;
+
+    private MotorVehicleSnapshot(ByteBuffer image, boolean mapped, Map<String, String[]> values) {
+        this.image = image.order(ORDER);
+        this.mapped = mapped;
+        this.values = values;
+        if (image.remaining() < 24 || image.getInt(0) != MAGIC || image.getInt(4) != FORMAT) {
+            throw new IllegalArgumentException("Not a motor vehicle snapshot of format " + FORMAT);
+        }
+        version = image.getLong(8);
+        size = image.getInt(16);
+        int count = image.getInt(20);
+        int position = 24;
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[image.getInt(position)];
+            image.position(position + 4);
+            image.get(name);
+            position += 4 + name.length;
+            int offset = image.getInt(position);
+            int length = image.getInt(position + 4);
+            position += 8;
+            image.position(offset).limit(offset + length);
+            sections.put(new String(name, StandardCharsets.UTF_8), image.slice().order(ORDER));
+            image.clear();
+        }
+    }
+
+    /**
+     * @param vehicles Every row of the MOTORVEHICLE table, in id order.
+     * @param version MotorVehicleWriter change log version the rows were read at.
+     * @return A new snapshot held in a heap buffer.
+     */
+    public static MotorVehicleSnapshot of(List<MotorVehicle> vehicles, long version) {
+        int size = vehicles.size();
+        Map<String, Object> sections = new LinkedHashMap<>();
+        long[] ids = new long[size];
+        for (int row = 0; row < size; row++) {
+            ids[row] = vehicles.get(row).getId();
+        }
+        sections.put("id", ids);
+        Map<String, String[]> values = new HashMap<>();
+        Map<String, int[]> codes = new HashMap<>();
+        STRINGS.forEach((field, property) -> {
+            String[] dictionary = vehicles.stream().map(property).filter(value -> value != null).distinct()
+                    .map(value -> value.getBytes(StandardCharsets.UTF_8)).sorted(Arrays::compareUnsigned)
+                    .map(value -> new String(value, StandardCharsets.UTF_8)).toArray(String[]::new);
+            Map<String, Integer> dictionaryCodes = new HashMap<>();
+            int[] offsets = new int[dictionary.length + 1];
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            for (int code = 0; code < dictionary.length; code++) {
+                dictionaryCodes.put(dictionary[code], code);
+                bytes.writeBytes(dictionary[code].getBytes(StandardCharsets.UTF_8));
+                offsets[code + 1] = bytes.size();
+            }
+            int[] column = new int[size];
+            for (int row = 0; row < size; row++) {
+                String value = property.apply(vehicles.get(row));
+                column[row] = (value == null) ? StringDictionary.NULL_CODE : dictionaryCodes.get(value);
+            }
+            values.put(field, dictionary);
+            codes.put(field, column);
+            sections.put(field + ".values", bytes.toByteArray());
+            sections.put(field + ".offsets", offsets);
+            sections.put(field + ".codes", column);
+        });
+        INTS.forEach((attribute, property) -> sections.put(attribute, vehicles.stream().mapToInt(property).toArray()));
+        for (String field : INDEXED) {
+            int[] column = codes.get(field);
+            int[][] index = buildIndex(column.length, row -> column[row], values.get(field).length);
+            sections.put(field + ".index.offsets", index[0]);
+            sections.put(field + ".index.rows", index[1]);
+        }
+        // Each make and model code pair present, ascending.
+        int[] make = codes.get("make");
+        int[] model = codes.get("model");
+        long[] keys = Arrays.stream(RowSets.all(size)).filter(row -> make[row] != StringDictionary.NULL_CODE && model[row] != StringDictionary.NULL_CODE)
+                .mapToLong(row -> makeModelKey(make[row], model[row])).distinct().sorted().toArray();
+        int[][] index = buildIndex(size, row -> (make[row] == StringDictionary.NULL_CODE || model[row] == StringDictionary.NULL_CODE)
+                ? StringDictionary.NULL_CODE : Arrays.binarySearch(keys, makeModelKey(make[row], model[row])), keys.length);
+        sections.put(MAKE_MODEL + ".keys", keys);
+        sections.put(MAKE_MODEL + ".index.offsets", index[0]);
+        sections.put(MAKE_MODEL + ".index.rows", index[1]);
+        return new MotorVehicleSnapshot(image(sections, version, size), false, values);
+    }
+
+    /**
+     * <p>Offsets and rows of a RowIndex, with the rows of each key in ascending order.</p>
+     */
+    private static int[][] buildIndex(int size, IntUnaryOperator keyOf, int keys) {
+        int[] offsets = new int[keys + 1];
+        for (int row = 0; row < size; row++) {
+            int key = keyOf.applyAsInt(row);
+            if (key != StringDictionary.NULL_CODE) {
+                offsets[key + 1]++;
+            }
+        }
+        Arrays.parallelPrefix(offsets, Integer::sum);
+        int[] rows = new int[offsets[keys]];
+        int[] fill = Arrays.copyOf(offsets, keys);
+        for (int row = 0; row < size; row++) {
+            int key = keyOf.applyAsInt(row);
+            if (key != StringDictionary.NULL_CODE) {
+                rows[fill[key]++] = row;
+            }
+        }
+        return new int[][] {offsets, rows};
+    }
+
+    private static ByteBuffer image(Map<String, Object> sections, long version, int size) {
+        int position = 24;
+        for (String name : sections.keySet()) {
+            position += 4 + name.getBytes(StandardCharsets.UTF_8).length + 8;
+        }
+        int[] offsets = new int[sections.size()];
+        int[] lengths = new int[sections.size()];
+        int i = 0;
+        for (Object section : sections.values()) {
+            position = align(position);
+            offsets[i] = position;
+            lengths[i] = bytes(section);
+            position += lengths[i++];
+        }
+        ByteBuffer image = ByteBuffer.allocate(align(position)).order(ORDER);
+        image.putInt(MAGIC).putInt(FORMAT).putLong(version).putInt(size).putInt(sections.size());
+        i = 0;
+        for (String name : sections.keySet()) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            image.putInt(bytes.length).put(bytes).putInt(offsets[i]).putInt(lengths[i++]);
+        }
+        i = 0;
+        for (Object section : sections.values()) {
+            image.position(offsets[i++]);
+            if (section instanceof long[]) {
+                image.asLongBuffer().put((long[]) section);
+            } else if (section instanceof int[]) {
+                image.asIntBuffer().put((int[]) section);
+            } else {
+                image.put((byte[]) section);
+            }
+        }
+        return image.clear();
+    }
+
+    private static int bytes(Object section) {
+        if (section instanceof long[]) {
+            return ((long[]) section).length * Long.BYTES;
+        }
+        if (section instanceof int[]) {
+            return ((int[]) section).length * Integer.BYTES;
+        }
+        return ((byte[]) section).length;
+    }
+
+    private static int align(int position) {
+        return (position + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * @param file Snapshot file written by write.
+     * @return The snapshot, mapped read only into memory.
+     * @throws IOException If the file cannot be read.
+     * @throws IllegalArgumentException If the file is not a snapshot of the current format.
+     */
+    public static MotorVehicleSnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // The mapping stays valid once the channel is closed.
+            return new MotorVehicleSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), true, null);
+        }
+    }
+
+    /**
+     * <p>Writes the image to a temporary file next to the target and moves it into place, a service that has
+     * mapped the previous file keeps reading it.</p>
+     * @param file Snapshot file.
+     * @throws IOException If the file cannot be written.
+     */
+    public void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = image.duplicate();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return MotorVehicleWriter change log version the rows were read at.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Size of the image in bytes.
+     */
+    public int getBytes() {
+        return image.capacity();
+    }
+
+    /**
+     * @return true if the image is a mapped file rather than a heap buffer.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    LongBuffer ids() {
+        return section("id").asLongBuffer();
+    }
+
+    /**
+     * @param field String property.
+     * @return Dictionary code of the property of each row.
+     */
+    IntBuffer codes(String field) {
+        return section(field + ".codes").asIntBuffer();
+    }
+
+    StringDictionary dictionary(String field) {
+        return new StringDictionary(section(field + ".offsets").asIntBuffer(), section(field + ".values"),
+                (values == null) ? null : values.get(field));
+    }
+
+    /**
+     * @param attribute int column, for example power or dateFromMonth.
+     * @return Value of the column of each row.
+     */
+    IntBuffer column(String attribute) {
+        return section(attribute).asIntBuffer();
+    }
+
+    /**
+     * @param field One of INDEXED.
+     * @return Rows of each dictionary code of the property.
+     */
+    RowIndex index(String field) {
+        return new RowIndex(section(field + ".index.offsets").asIntBuffer(), section(field + ".index.rows").asIntBuffer());
+    }
+
+    /**
+     * @return Ascending make and model code pairs, see makeModelKey.
+     */
+    LongBuffer makeModelKeys() {
+        return section(MAKE_MODEL + ".keys").asLongBuffer();
+    }
+
+    /**
+     * @return Rows of each makeModelKeys position.
+     */
+    RowIndex makeModelIndex() {
+        return new RowIndex(section(MAKE_MODEL + ".index.offsets").asIntBuffer(), section(MAKE_MODEL + ".index.rows").asIntBuffer());
+    }
+
+    static long makeModelKey(int makeCode, int modelCode) {
+        return ((long) makeCode << 32) | (modelCode & 0xFFFFFFFFL);
+    }
+
+    private ByteBuffer section(String name) {
+        ByteBuffer section = sections.get(name);
+        if (section == null) {
+            throw new IllegalArgumentException("The motor vehicle snapshot has no " + name + " section");
+        }
+        // Buffer views share the position, every caller gets its own.
+        return section.duplicate().order(ORDER);
+    }
+
+    /**
+     * <p>Writes a snapshot file of the MOTORVEHICLE table.</p>
+     * @param args Snapshot file, then optionally the JDBC url, user and password of the database.
+     * @throws Exception If the database cannot be read or the file written.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 4) {
+            System.err.println("Usage: MotorVehicleSnapshot <file> [jdbc url] [user] [password]");
+            System.exit(2);
+        }
+        Properties properties = new Properties();
+        try (InputStream in = MotorVehicleSnapshot.class.getResourceAsStream("/application.properties")) {
+            if (in != null) {
+                properties.load(in);
+            }
+        }
+        String url = (args.length > 1) ? args[1] : properties.getProperty("spring.datasource.url");
+        String user = (args.length > 2) ? args[2] : properties.getProperty("spring.datasource.username");
+        String password = (args.length > 3) ? args[3] : properties.getProperty("spring.datasource.password");
+        long start = System.nanoTime();
+        Flyway.configure().dataSource(url, user, password)
+                .baselineOnMigrate(Boolean.parseBoolean(properties.getProperty("spring.flyway.baseline-on-migrate", "false")))
+                .baselineVersion(properties.getProperty("spring.flyway.baseline-version", "1")).load().migrate();
+        MotorVehicleSnapshot snapshot;
+        try (Connection connection = DriverManager.getConnection(url, user, password)) {
+            snapshot = read(connection);
+        }
+        Path file = Path.of(args[0]);
+        snapshot.write(file);
+        log.info("Wrote {} motor vehicles at version {}, {} bytes, to {} in {} ms", snapshot.size(), snapshot.getVersion(), snapshot.getBytes(),
+                file, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * <p>Reads every row and the change log version in one transaction, so the version matches the rows.</p>
+     */
+    static MotorVehicleSnapshot read(Connection connection) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            long version;
+            try (ResultSet result = statement.executeQuery("select coalesce(max(version), 0) from motorvehicle_change")) {
+                result.next();
+                version = result.getLong(1);
+            }
+            List<MotorVehicle> vehicles = new ArrayList<>();
+            try (ResultSet result = statement.executeQuery("select id, make, model, generation, trim_version, date_from, date_to, new_price, power,"
+                    + " torque, fuel_capacity, engine_size, cylinders, valves, fuel_type, transmission, gearbox, country from motorvehicle order by id")) {
+                while (result.next()) {
+                    vehicles.add(new MotorVehicle(result.getLong(1), result.getString(2), result.getString(3), result.getString(4),
+                            result.getString(5), result.getString(6), result.getString(7), result.getString(8), result.getInt(9),
+                            result.getInt(10), result.getInt(11), result.getInt(12), result.getInt(13), result.getInt(14),
+                            result.getString(15), result.getString(16), result.getString(17), result.getString(18)));
+                }
+            }
+            connection.commit();
+            return of(vehicles, version);
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package au.com.formis.springbootdemo;
+
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>MotorVehicle fields a paged REST API query can be sorted on.</p>
+ * <p></p>
+ * <p>Every sort field has an int key so a keyset page position is always an (int key, long id) pair,
+ * dateFrom is keyed as yyyymm using MotorVehicleValues.yearMonthKey. Ties are broken on id.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehiclePage
+ * @since       0.1
+ * </p>
+ */
+public enum MotorVehicleSort {
+
+    POWER("power", "power", MotorVehicle::getPower, MotorVehicleView::getPower),
+    TORQUE("torque", "torque", MotorVehicle::getTorque, MotorVehicleView::getTorque),
+    ENGINE_SIZE("engineSize", "engineSize", MotorVehicle::getEngineSize, MotorVehicleView::getEngineSize),
+    DATE_FROM("dateFrom", "dateFromMonth", vehicle -> MotorVehicleValues.yearMonthKey(vehicle.getDateFrom()),
+            view -> (view.getDateFrom() == null) ? MotorVehicleValues.NO_YEAR_MONTH : MotorVehicleValues.yearMonthKey(view.getDateFrom()));
+
+    private final String parameter;
+    private final String attribute;
+    private final ToIntFunction<MotorVehicle> key;
+    private final ToIntFunction<MotorVehicleView> viewKey;
+
+    MotorVehicleSort(String parameter, String attribute, ToIntFunction<MotorVehicle> key, ToIntFunction<MotorVehicleView> viewKey) {
+        this.parameter = parameter;
+        this.attribute = attribute;
+        this.key = key;
+        this.viewKey = viewKey;
+    }
+
+    /**
+     * @param parameter Sort REST query parameter value, for example engineSize.
+     * @return The matching sort field.
+     * @throws IllegalArgumentException If the field cannot be sorted on.
+     */
+    public static MotorVehicleSort ofParameter(String parameter) {
+        return Arrays.stream(values()).filter(sort -> sort.parameter.equals(parameter)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Cannot sort on '" + parameter + "', expected one of power, torque, engineSize or dateFrom"));
+    }
+
+    /**
+     * @return Name used in the sort REST query parameter.
+     */
+    public String getParameter() {
+        return parameter;
+    }
+
+    /**
+     * @return MotorVehicle JPA attribute holding the sort key.
+     */
+    public String getAttribute() {
+        return attribute;
+    }
+
+    /**
+     * @param vehicle MotorVehicle entity.
+     * @return The sort key of the entity.
+     */
+    public int key(MotorVehicle vehicle) {
+        return key.applyAsInt(vehicle);
+    }
+
+    /**
+     * @param view MotorVehicleView of an entity.
+     * @return The sort key of the entity.
+     */
+    public int key(MotorVehicleView view) {
+        return viewKey.applyAsInt(view);
+    }
+}
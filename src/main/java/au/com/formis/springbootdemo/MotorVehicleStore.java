@@ -0,0 +1,151 @@
+package au.com.formis.springbootdemo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Read side abstraction used by the MotorVehicleController to answer REST API queries.</p>
+ * <p></p>
+ * <p>Two implementations are available and selected with the <code>motorvehicle.store</code>
+ * application property:</p>
+ * <ul>
+ *     <li>catalog - MotorVehicleCatalog, an in-memory columnar copy of the MOTORVEHICLE table
+ *     loaded once at startup and queried through hash indexes (default).</li>
+ *     <li>jpa - JpaMotorVehicleStore, every query is sent to the database through the
+ *     MotorVehicleRepository JPQL queries.</li>
+ * </ul>
+ * <p>Both implementations must return the same entities in the same (id) order so they can be
+ * swapped to compare latency and heap usage.</p>
+ * <p></p>
+ * <p>forEachMotorVehicle visits matching entities one at a time without building a List so large
+ * result sets can be streamed to the client with flat heap usage.</p>
+ * <p></p>
+ * <p>findAll answers many queries in one call for the /motorVehicles/batch endpoint, aggregate computes
+ * facet counts and numeric statistics for the /motorVehicles/aggregations endpoint.</p>
+ * <p></p>
+ * <p>search answers the /motorVehicles/search endpoint, any combination of filters with a plan describing how
+ * the store ran it.</p>
+ * <p></p>
+ * <p>find with a MotorVehicleFields answers /motorVehicles queries with a fields parameter, implementations
+ * should only read the selected columns instead of building whole entities.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleCatalog
+ * @see au.com.formis.springbootdemo.JpaMotorVehicleStore
+ * @since       0.1
+ * </p>
+ */
+public interface MotorVehicleStore {
+
+    /**
+     * <p>Select data using the Make field/column only.</p>
+     * @param make Make of motor vehicle
+     * @return Returns a List of matching MotorVehicle entities.
+     */
+    List<MotorVehicle> findMotorVehiclesByMake(String make);
+
+    /**
+     * <p>Select data using the Make AND Model fields/columns.</p>
+     * @param make Make of motor vehicle
+     * @param model Model of motor vehicle
+     * @return Returns a List of matching MotorVehicle entities.
+     */
+    List<MotorVehicle> findMotorVehiclesByMakeAndModel(String make, String model);
+
+    /**
+     * <p>Select data using the Make AND Model AND Generation fields/columns. The generation is
+     * matched case insensitively using contains, not equality.</p>
+     * @param make Make of motor vehicle
+     * @param model Model of motor vehicle
+     * @param generation Generation of motor vehicle
+     * @return Returns a List of matching MotorVehicle entities.
+     */
+    List<MotorVehicle> findMotorVehiclesByMakeAndModelAndGenerationContains(String make, String model, String generation);
+
+    /**
+     * <p>Runs the query matching the parameter permutation held by the MotorVehicleQuery. When the query has
+     * a MotorVehiclePage the results are sorted, start after the page cursor and hold at most the page limit
+     * entities.</p>
+     * @param query Query parameters.
+     * @return Returns a List of matching MotorVehicle entities.
+     */
+    List<MotorVehicle> find(MotorVehicleQuery query);
+
+    /**
+     * <p>Typed variant of find. The default converts each MotorVehicle entity with MotorVehicleView.of.</p>
+     * @param query Query parameters and optional page.
+     * @return Views of the matching MotorVehicle entities in page order, id order without a page.
+     */
+    default List<MotorVehicleView> findViews(MotorVehicleQuery query) {
+        List<MotorVehicle> vehicles = find(query);
+        List<MotorVehicleView> views = new ArrayList<>(vehicles.size());
+        for (MotorVehicle vehicle : vehicles) {
+            views.add(MotorVehicleView.of(vehicle));
+        }
+        return views;
+    }
+
+    /**
+     * <p>Projected variant of find returning only the selected properties of each matching entity. The default
+     * projects the entities returned by find.</p>
+     * @param query Query parameters and optional page.
+     * @param fields Properties to return.
+     * @return Projections of the matching MotorVehicle entities in page order, id order without a page.
+     */
+    default List<MotorVehicleProjection> find(MotorVehicleQuery query, MotorVehicleFields fields) {
+        List<MotorVehicle> vehicles = find(query);
+        List<MotorVehicleProjection> projections = new ArrayList<>(vehicles.size());
+        for (MotorVehicle vehicle : vehicles) {
+            projections.add(fields.project(vehicle, query.isPaged() ? query.getPage().key(vehicle) : 0));
+        }
+        return projections;
+    }
+
+    /**
+     * <p>Runs a search over any combination of filters. When the search has a MotorVehiclePage the results are
+     * sorted, start after the page cursor and hold at most the page limit entities.</p>
+     * @param search Search filters and optional page.
+     * @return Matching MotorVehicle entities in page order, id order without a page, and the plan the search ran with.
+     */
+    MotorVehicleSearch.Result search(MotorVehicleSearch search);
+
+    /**
+     * <p>Runs many unpaged queries in one pass. The default runs each distinct query through find, which
+     * suits the in-memory index lookups, stores with a per query round trip should override it.</p>
+     * @param queries Queries to run, duplicates are only run once.
+     * @return Matching MotorVehicle entities for each distinct query, in id order, keyed by query in the
+     * order first given.
+     */
+    default Map<MotorVehicleQuery, List<MotorVehicle>> findAll(Collection<MotorVehicleQuery> queries) {
+        Map<MotorVehicleQuery, List<MotorVehicle>> results = new LinkedHashMap<>();
+        for (MotorVehicleQuery query : queries) {
+            results.computeIfAbsent(query, this::find);
+        }
+        return results;
+    }
+
+    /**
+     * <p>Computes facet counts and numeric statistics over the rows matching a query without returning
+     * the rows. Any page of the query is ignored.</p>
+     * @param query Query parameters.
+     * @return Aggregations of the matching rows.
+     */
+    MotorVehicleAggregations aggregate(MotorVehicleQuery query);
+
+    /**
+     * <p>Passes each matching MotorVehicle entity to the action in id order without holding the whole
+     * result set in memory. The entities must not be retained by the action.</p>
+     * @param query Query parameters.
+     * @param action Action to run for each matching entity.
+     * @return Number of entities passed to the action.
+     */
+    int forEachMotorVehicle(MotorVehicleQuery query, Consumer<MotorVehicle> action);
+
+}
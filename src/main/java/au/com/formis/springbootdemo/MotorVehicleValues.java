@@ -0,0 +1,120 @@
+package au.com.formis.springbootdemo;
+
+import java.time.YearMonth;
+import java.util.List;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Parsing helpers for the MotorVehicle String fields that hold typed values.</p>
+ * <p></p>
+ * <p>dateFrom and dateTo are stored as "Mon yyyy" strings, for example "Jan 2019", with dateTo set to
+ * "Now" for vehicles still in production. yearMonthKey turns them into a sortable int of the form
+ * yyyymm (201901). The same rule is implemented in SQL by MotorVehicle.DATE_FROM_MONTH_SQL so the
+ * JPA and in-memory stores sort identically.</p>
+ * <p></p>
+ * <p>dateToKey does the same for dateTo with "Now" keyed as NOW_YEAR_MONTH, after every real date.
+ * newPrice is stored as a formatted pound amount, for example "£35,860", and priceKey turns it into
+ * whole pounds (35860). MotorVehicle.DATE_TO_MONTH_SQL and MotorVehicle.NEW_PRICE_VALUE_SQL are the SQL
+ * equivalents. Missing or unparseable values are keyed as 0 for all three.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicle
+ * @since       0.1
+ * </p>
+ */
+public final class MotorVehicleValues {
+
+    /**
+     * Key used for dates that are missing or not in "Mon yyyy" format.
+     */
+    public static final int NO_YEAR_MONTH = 0;
+
+    /**
+     * Key used for a dateTo of "Now", vehicles still in production.
+     */
+    public static final int NOW_YEAR_MONTH = 999912;
+
+    /**
+     * Key used for prices that are missing or hold no digits.
+     */
+    public static final int NO_PRICE = 0;
+
+    private static final String NOW = "Now";
+
+    private static final List<String> MONTHS = List.of("Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec");
+
+    private MotorVehicleValues() {
+    }
+
+    /**
+     * @param date Date in "Mon yyyy" format, for example "Jan 2019".
+     * @return The date as yyyymm, for example 201901, or NO_YEAR_MONTH if the date is null or not in "Mon yyyy" format.
+     */
+    public static int yearMonthKey(String date) {
+        if (date == null || date.length() != 8 || date.charAt(3) != ' ') {
+            return NO_YEAR_MONTH;
+        }
+        int month = MONTHS.indexOf(date.substring(0, 3)) + 1;
+        if (month == 0) {
+            return NO_YEAR_MONTH;
+        }
+        int year = 0;
+        for (int i = 4; i < 8; i++) {
+            char digit = date.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return NO_YEAR_MONTH;
+            }
+            year = year * 10 + (digit - '0');
+        }
+        return year * 100 + month;
+    }
+
+    /**
+     * @param date dateTo in "Mon yyyy" format or "Now".
+     * @return The date as yyyymm, NOW_YEAR_MONTH for "Now" or NO_YEAR_MONTH if the date is null or not in either format.
+     */
+    public static int dateToKey(String date) {
+        return NOW.equals(date) ? NOW_YEAR_MONTH : yearMonthKey(date);
+    }
+
+    /**
+     * @param key yyyymm key.
+     * @return The key as a YearMonth, null for NO_YEAR_MONTH and NOW_YEAR_MONTH.
+     */
+    public static YearMonth yearMonth(int key) {
+        return (key == NO_YEAR_MONTH || key == NOW_YEAR_MONTH) ? null : YearMonth.of(key / 100, key % 100);
+    }
+
+    /**
+     * @param yearMonth A year and month.
+     * @return The yyyymm key of the year and month.
+     */
+    public static int yearMonthKey(YearMonth yearMonth) {
+        return yearMonth.getYear() * 100 + yearMonth.getMonthValue();
+    }
+
+    /**
+     * @param price Formatted price, for example "£35,860".
+     * @return The price in whole pounds, pence are dropped, or NO_PRICE if the price is null or holds no digits.
+     */
+    public static int priceKey(String price) {
+        if (price == null) {
+            return NO_PRICE;
+        }
+        long pounds = 0;
+        boolean digits = false;
+        for (int i = 0; i < price.length(); i++) {
+            char c = price.charAt(i);
+            if (c == '.') {
+                break;
+            }
+            if (c >= '0' && c <= '9') {
+                pounds = Math.min(Integer.MAX_VALUE, pounds * 10 + (c - '0'));
+                digits = true;
+            }
+        }
+        return digits ? (int) pounds : NO_PRICE;
+    }
+}
@@ -0,0 +1,194 @@
+package au.com.formis.springbootdemo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.time.YearMonth;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Immutable, typed read model of a MotorVehicle returned by the /motorVehicles/typed endpoint.</p>
+ * <p></p>
+ * <p>The MotorVehicle String fields holding typed values are parsed once instead of in every client:</p>
+ * <ul>
+ *     <li>dateFrom and dateTo are YearMonth values, serialized as yyyy-MM. dateTo is null and inProduction
+ *     true for vehicles still in production ("Now").</li>
+ *     <li>newPrice is an Integer in whole pounds, "£35,860" becomes 35860.</li>
+ * </ul>
+ * <p>Null fields are left out of the JSON. The MotorVehicleCatalog builds views straight from the int
+ * columns it parsed at load time, the JPA store parses each entity as it is read.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicle
+ * @see au.com.formis.springbootdemo.MotorVehicleValues
+ * @since       0.1
+ * </p>
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class MotorVehicleView {
+
+    private final long id;
+    private final String make;
+    private final String model;
+    private final String generation;
+    private final String trimVersion;
+    private final YearMonth dateFrom;
+    private final YearMonth dateTo;
+    private final boolean inProduction;
+    private final Integer newPrice;
+    private final int power;
+    private final int torque;
+    private final int fuelCapacity;
+    private final int engineSize;
+    private final int cylinders;
+    private final int valves;
+    private final String fuelType;
+    private final String transmission;
+    private final String gearbox;
+    private final String country;
+
+    /**
+     * @param dateFromMonth dateFrom as a MotorVehicleValues.yearMonthKey.
+     * @param dateToMonth dateTo as a MotorVehicleValues.dateToKey.
+     * @param newPriceValue newPrice as a MotorVehicleValues.priceKey.
+     */
+    MotorVehicleView(long id, String make, String model, String generation, String trimVersion, int dateFromMonth, int dateToMonth,
+                     int newPriceValue, int power, int torque, int fuelCapacity, int engineSize, int cylinders, int valves,
+                     String fuelType, String transmission, String gearbox, String country) {
+        this.id = id;
+        this.make = make;
+        this.model = model;
+        this.generation = generation;
+        this.trimVersion = trimVersion;
+        this.dateFrom = MotorVehicleValues.yearMonth(dateFromMonth);
+        this.dateTo = MotorVehicleValues.yearMonth(dateToMonth);
+        this.inProduction = dateToMonth == MotorVehicleValues.NOW_YEAR_MONTH;
+        this.newPrice = (newPriceValue == MotorVehicleValues.NO_PRICE) ? null : newPriceValue;
+        this.power = power;
+        this.torque = torque;
+        this.fuelCapacity = fuelCapacity;
+        this.engineSize = engineSize;
+        this.cylinders = cylinders;
+        this.valves = valves;
+        this.fuelType = fuelType;
+        this.transmission = transmission;
+        this.gearbox = gearbox;
+        this.country = country;
+    }
+
+    /**
+     * @param vehicle MotorVehicle entity.
+     * @return A typed view of the entity.
+     */
+    public static MotorVehicleView of(MotorVehicle vehicle) {
+        return new MotorVehicleView(vehicle.getId(), vehicle.getMake(), vehicle.getModel(), vehicle.getGeneration(), vehicle.getTrimVersion(),
+                MotorVehicleValues.yearMonthKey(vehicle.getDateFrom()), MotorVehicleValues.dateToKey(vehicle.getDateTo()),
+                MotorVehicleValues.priceKey(vehicle.getNewPrice()), vehicle.getPower(), vehicle.getTorque(), vehicle.getFuelCapacity(),
+                vehicle.getEngineSize(), vehicle.getCylinders(), vehicle.getValves(), vehicle.getFuelType(), vehicle.getTransmission(),
+                vehicle.getGearbox(), vehicle.getCountry());
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    public String getTrimVersion() {
+        return trimVersion;
+    }
+
+    public YearMonth getDateFrom() {
+        return dateFrom;
+    }
+
+    public YearMonth getDateTo() {
+        return dateTo;
+    }
+
+    public boolean isInProduction() {
+        return inProduction;
+    }
+
+    /**
+     * @return Price when new in whole pounds, null if unknown.
+     */
+    public Integer getNewPrice() {
+        return newPrice;
+    }
+
+    public int getPower() {
+        return power;
+    }
+
+    public int getTorque() {
+        return torque;
+    }
+
+    public int getFuelCapacity() {
+        return fuelCapacity;
+    }
+
+    public int getEngineSize() {
+        return engineSize;
+    }
+
+    public int getCylinders() {
+        return cylinders;
+    }
+
+    public int getValves() {
+        return valves;
+    }
+
+    public String getFuelType() {
+        return fuelType;
+    }
+
+    public String getTransmission() {
+        return transmission;
+    }
+
+    public String getGearbox() {
+        return gearbox;
+    }
+
+    public String getCountry() {
+        return country;
+    }
+
+    @Override
+    public String toString() {
+        return "MotorVehicleView{" +
+                "id=" + id +
+                ", make='" + make + '\'' +
+                ", model='" + model + '\'' +
+                ", generation='" + generation + '\'' +
+                ", trimVersion='" + trimVersion + '\'' +
+                ", dateFrom=" + dateFrom +
+                ", dateTo=" + dateTo +
+                ", inProduction=" + inProduction +
+                ", newPrice=" + newPrice +
+                ", power=" + power +
+                ", torque=" + torque +
+                ", fuelCapacity=" + fuelCapacity +
+                ", engineSize=" + engineSize +
+                ", cylinders=" + cylinders +
+                ", valves=" + valves +
+                ", fuelType='" + fuelType + '\'' +
+                ", transmission='" + transmission + '\'' +
+                ", gearbox='" + gearbox + '\'' +
+                ", country='" + country + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,342 @@
+package au.com.formis.springbootdemo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import org.hibernate.Cache;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Creates, updates and deletes single MotorVehicle rows and records each change in the versioned
+ * motorvehicle_change log read by the /motorVehicles/changes feed.</p>
+ * <p></p>
+ * <p>The row and its change log entry are written with plain JDBC in one transaction, as MotorVehicle is an
+ * @Immutable read only cached entity. Writes and MotorVehicleImporter imports are serialized by one lock so
+ * versions are committed in order and a mirror reading the changes after a version never skips one that
+ * commits later. An import is logged as a RESET, a mirror that has not synchronized past it has to read the
+ * whole dataset again.</p>
+ * <p>After the commit only what the changed row can affect is refreshed:</p>
+ * <ul>
+ *     <li>The row in each MotorVehicleReplicas replica, copied before the caches below are refilled from them.</li>
+ *     <li>MotorVehicleResponseCache entries for the make and model before and after the change.</li>
+ *     <li>The make, model and generation counts of the MotorVehicleCompletions.</li>
+ *     <li>The row in the Hibernate second-level cache, and the query cache, whose finder results are not keyed
+ *     by make and model.</li>
+ *     <li>The row in the MotorVehicleCatalog columns, held in an overlay over the shared snapshot until enough
+ *     changes are pending to rebuild it, see MotorVehicleColumns.with.</li>
+ * </ul>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleChange
+ * @see au.com.formis.springbootdemo.MotorVehicleImporter
+ * @since       0.1
+ * </p>
+ */
+@Component
+public class MotorVehicleWriter {
+
+    private static final String[] COLUMNS = {"make", "model", "generation", "trim_version", "date_from", "date_to", "new_price",
+            "power", "torque", "fuel_capacity", "engine_size", "cylinders", "valves", "fuel_type", "transmission", "gearbox", "country"};
+
+    private static final String SELECT = "select " + String.join(", ", COLUMNS) + " from motorvehicle where id = ?";
+    private static final String INSERT = "insert into motorvehicle (" + String.join(", ", COLUMNS) + ", id) values (?"
+            + ", ?".repeat(COLUMNS.length) + ")";
+    private static final String UPDATE = "update motorvehicle set " + String.join(" = ?, ", COLUMNS) + " = ? where id = ?";
+    private static final String DELETE = "delete from motorvehicle where id = ?";
+    private static final String LOG = "insert into motorvehicle_change (operation, vehicle_id, changed_at) values (?, ?, current_timestamp)";
+
+    // The latest change of each vehicle after a version, with the row as it is now.
+    private static final String CHANGES = "select c.version, c.operation, c.vehicle_id, v.id, v." + String.join(", v.", COLUMNS)
+            + " from motorvehicle_change c left join motorvehicle v on v.id = c.vehicle_id"
+            + " where c.version > ? and c.vehicle_id is not null"
+            + " and c.version = (select max(l.version) from motorvehicle_change l where l.vehicle_id = c.vehicle_id)"
+            + " order by c.version limit ?";
+
+    private static final int FIRST_INT = 7;
+    private static final int LAST_INT = 12;
+
+    private final DataSource dataSource;
+    private final EntityManagerFactory entityManagerFactory;
+    private final ObjectProvider<MotorVehicleCatalog> motorVehicleCatalog;
+    private final ObjectProvider<MotorVehicleReplicas> motorVehicleReplicas;
+    private final MotorVehicleCompletions motorVehicleCompletions;
+    private final MotorVehicleResponseCache motorVehicleResponseCache;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public MotorVehicleWriter(DataSource dataSource, EntityManagerFactory entityManagerFactory,
+                              ObjectProvider<MotorVehicleCatalog> motorVehicleCatalog, ObjectProvider<MotorVehicleReplicas> motorVehicleReplicas,
+                              MotorVehicleCompletions motorVehicleCompletions, MotorVehicleResponseCache motorVehicleResponseCache) {
+        this.dataSource = dataSource;
+        this.entityManagerFactory = entityManagerFactory;
+        this.motorVehicleCatalog = motorVehicleCatalog;
+        this.motorVehicleReplicas = motorVehicleReplicas;
+        this.motorVehicleCompletions = motorVehicleCompletions;
+        this.motorVehicleResponseCache = motorVehicleResponseCache;
+    }
+
+    /**
+     * @param vehicle New row, its id is ignored.
+     * @return The CREATE change, holding the row with the id taken from the motorvehicle_seq sequence.
+     * @throws SQLException If the database update fails.
+     * @throws IllegalArgumentException If make or model is missing.
+     */
+    public MotorVehicleChange create(MotorVehicle vehicle) throws SQLException {
+        return write(MotorVehicleChange.Operation.CREATE, null, validate(vehicle));
+    }
+
+    /**
+     * @param id Id of the row to replace.
+     * @param vehicle New values of every column, its id is ignored.
+     * @return The UPDATE change.
+     * @throws SQLException If the database update fails.
+     * @throws IllegalArgumentException If make or model is missing.
+     * @throws NoSuchElementException If there is no row with the id.
+     */
+    public MotorVehicleChange update(long id, MotorVehicle vehicle) throws SQLException {
+        return write(MotorVehicleChange.Operation.UPDATE, id, validate(vehicle));
+    }
+
+    /**
+     * @param id Id of the row to delete.
+     * @return The DELETE change.
+     * @throws SQLException If the database update fails.
+     * @throws NoSuchElementException If there is no row with the id.
+     */
+    public MotorVehicleChange delete(long id) throws SQLException {
+        return write(MotorVehicleChange.Operation.DELETE, id, null);
+    }
+
+    /**
+     * @param since Version the caller has synchronized to, 0 for every change.
+     * @param limit Maximum number of changes.
+     * @return The latest change of each row changed after the version, in version order. Changes before the
+     * last RESET are included, check getResetVersion.
+     * @throws SQLException If the change log cannot be read.
+     */
+    public List<MotorVehicleChange> changes(long since, int limit) throws SQLException {
+        List<MotorVehicleChange> changes = new ArrayList<>();
+        try (Connection connection = dataSource.getConnection(); PreparedStatement query = connection.prepareStatement(CHANGES)) {
+            query.setLong(1, since);
+            query.setInt(2, limit);
+            try (ResultSet result = query.executeQuery()) {
+                while (result.next()) {
+                    long id = result.getLong(3);
+                    var operation = MotorVehicleChange.Operation.valueOf(result.getString(2));
+                    // Rows changed before an import may be gone, a mirror that far behind has to read the dataset again anyway.
+                    MotorVehicle vehicle = (operation == MotorVehicleChange.Operation.DELETE || result.getObject(4) == null) ? null : vehicle(result, 5, id);
+                    changes.add(new MotorVehicleChange(result.getLong(1), operation, id, vehicle));
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return Version of the latest change, 0 if nothing has changed.
+     * @throws SQLException If the change log cannot be read.
+     */
+    public long getVersion() throws SQLException {
+        return version("select coalesce(max(version), 0) from motorvehicle_change");
+    }
+
+    /**
+     * @return Version of the latest import, 0 if there was none. Changes up to it cannot be replayed.
+     * @throws SQLException If the change log cannot be read.
+     */
+    public long getResetVersion() throws SQLException {
+        return version("select coalesce(max(version), 0) from motorvehicle_change where operation = 'RESET'");
+    }
+
+    /**
+     * <p>Logs the replacement of the whole dataset, called by the MotorVehicleImporter after the swap while
+     * holding getLock.</p>
+     * @return Version of the RESET change.
+     * @throws SQLException If the change log cannot be written.
+     */
+    long reset() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            return log(connection, MotorVehicleChange.Operation.RESET, null);
+        }
+    }
+
+    /**
+     * @return Lock serializing writes and imports.
+     */
+    ReentrantLock getLock() {
+        return lock;
+    }
+
+    private MotorVehicleChange write(MotorVehicleChange.Operation operation, Long id, MotorVehicle vehicle) throws SQLException {
+        lock.lock();
+        try {
+            MotorVehicle before = null;
+            MotorVehicle after = null;
+            long version;
+            try (Connection connection = dataSource.getConnection()) {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try {
+                    if (id == null) {
+                        id = nextId(connection);
+                    } else {
+                        before = select(connection, id);
+                    }
+                    if (vehicle != null) {
+                        after = copy(id, vehicle);
+                    }
+                    switch (operation) {
+                        case CREATE:
+                            execute(connection, INSERT, after, id);
+                            break;
+                        case UPDATE:
+                            execute(connection, UPDATE, after, id);
+                            break;
+                        default:
+                            execute(connection, DELETE, null, id);
+                    }
+                    version = log(connection, operation, id);
+                    connection.commit();
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            }
+            refresh(id, before, after);
+            return new MotorVehicleChange(version, operation, id, after);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void refresh(long id, MotorVehicle before, MotorVehicle after) throws SQLException {
+        MotorVehicleReplicas replicas = motorVehicleReplicas.getIfAvailable();
+        if (replicas != null) {
+            replicas.copy(id);
+        }
+        Cache cache = entityManagerFactory.getCache().unwrap(Cache.class);
+        cache.evictEntityData(MotorVehicle.class, id);
+        cache.evictDefaultQueryRegion();
+        MotorVehicleCatalog catalog = motorVehicleCatalog.getIfAvailable();
+        if (catalog != null) {
+            catalog.apply(id, after);
+        }
+        motorVehicleCompletions.apply(before, after);
+        for (MotorVehicle vehicle : new MotorVehicle[] {before, after}) {
+            if (vehicle != null) {
+                motorVehicleResponseCache.invalidate(vehicle.getMake(), vehicle.getModel());
+            }
+        }
+    }
+
+    private static MotorVehicle validate(MotorVehicle vehicle) {
+        if (vehicle == null || vehicle.getMake() == null || vehicle.getMake().isEmpty() || vehicle.getModel() == null || vehicle.getModel().isEmpty()) {
+            throw new IllegalArgumentException("make and model are required");
+        }
+        return vehicle;
+    }
+
+    private static long nextId(Connection connection) throws SQLException {
+        // Every value of the pooled sequence heads a block of ids of its own, so using it directly cannot collide.
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("select next value for " + MotorVehicle.ID_SEQUENCE)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    private static MotorVehicle select(Connection connection, long id) throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement(SELECT)) {
+            query.setLong(1, id);
+            try (ResultSet result = query.executeQuery()) {
+                if (!result.next()) {
+                    throw new NoSuchElementException("No motor vehicle with id " + id);
+                }
+                return vehicle(result, 1, id);
+            }
+        }
+    }
+
+    private static void execute(Connection connection, String sql, MotorVehicle vehicle, long id) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int parameter = 1;
+            if (vehicle != null) {
+                Object[] values = values(vehicle);
+                for (int i = 0; i < values.length; i++) {
+                    if (i >= FIRST_INT && i <= LAST_INT) {
+                        statement.setInt(parameter++, (Integer) values[i]);
+                    } else if (values[i] == null) {
+                        statement.setNull(parameter++, Types.VARCHAR);
+                    } else {
+                        statement.setString(parameter++, (String) values[i]);
+                    }
+                }
+            }
+            statement.setLong(parameter, id);
+            statement.executeUpdate();
+        }
+    }
+
+    private static long log(Connection connection, MotorVehicleChange.Operation operation, Long id) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(LOG, Statement.RETURN_GENERATED_KEYS)) {
+            insert.setString(1, operation.name());
+            if (id == null) {
+                insert.setNull(2, Types.BIGINT);
+            } else {
+                insert.setLong(2, id);
+            }
+            insert.executeUpdate();
+            try (ResultSet keys = insert.getGeneratedKeys()) {
+                keys.next();
+                return keys.getLong(1);
+            }
+        }
+    }
+
+    private long version(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery(sql)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    private static Object[] values(MotorVehicle vehicle) {
+        return new Object[] {vehicle.getMake(), vehicle.getModel(), vehicle.getGeneration(), vehicle.getTrimVersion(), vehicle.getDateFrom(),
+                vehicle.getDateTo(), vehicle.getNewPrice(), vehicle.getPower(), vehicle.getTorque(), vehicle.getFuelCapacity(),
+                vehicle.getEngineSize(), vehicle.getCylinders(), vehicle.getValves(), vehicle.getFuelType(), vehicle.getTransmission(),
+                vehicle.getGearbox(), vehicle.getCountry()};
+    }
+
+    private static MotorVehicle copy(long id, MotorVehicle vehicle) {
+        return new MotorVehicle(id, vehicle.getMake(), vehicle.getModel(), vehicle.getGeneration(), vehicle.getTrimVersion(), vehicle.getDateFrom(),
+                vehicle.getDateTo(), vehicle.getNewPrice(), vehicle.getPower(), vehicle.getTorque(), vehicle.getFuelCapacity(),
+                vehicle.getEngineSize(), vehicle.getCylinders(), vehicle.getValves(), vehicle.getFuelType(), vehicle.getTransmission(),
+                vehicle.getGearbox(), vehicle.getCountry());
+    }
+
+    /**
+     * @param first Position of the make column, followed by the other COLUMNS.
+     */
+    private static MotorVehicle vehicle(ResultSet result, int first, long id) throws SQLException {
+        return new MotorVehicle(id, result.getString(first), result.getString(first + 1), result.getString(first + 2),
+                result.getString(first + 3), result.getString(first + 4), result.getString(first + 5), result.getString(first + 6),
+                result.getInt(first + 7), result.getInt(first + 8), result.getInt(first + 9), result.getInt(first + 10),
+                result.getInt(first + 11), result.getInt(first + 12), result.getString(first + 13), result.getString(first + 14),
+                result.getString(first + 15), result.getString(first + 16));
+    }
+}
@@ -0,0 +1,106 @@
+package au.com.formis.springbootdemo;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>A trigram index over a lower cased String column, used for case insensitive contains searches.</p>
+ * <p></p>
+ * <p>Every distinct three character substring (trigram) of every value maps to the ascending rows
+ * containing it. A search string of three or more characters is split into its trigrams and
+ * the posting lists are intersected, smallest first, giving candidate rows that contain every
+ * trigram. Candidates still have to be verified with a real contains check (for example "abcab"
+ * contains the trigrams of "abcabc" but not the string itself), but the cost is proportional to
+ * the candidates rather than the table size.</p>
+ * <p></p>
+ * <p>Search strings shorter than three characters cannot be answered from the index and
+ * candidates returns null, callers fall back to checking every row they would otherwise consider.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleColumns
+ * @since       0.1
+ * </p>
+ */
+final class NGramIndex {
+
+    static final int N = 3;
+
+    private final Map<Long, int[]> postings;
+
+    private NGramIndex(Map<Long, int[]> postings) {
+        this.postings = postings;
+    }
+
+    /**
+     * @param size Number of rows.
+     * @param values Column value of each row number, null values are not indexed.
+     * @return A new trigram index over the lower cased values.
+     */
+    static NGramIndex build(int size, IntFunction<String> values) {
+        Map<Long, int[]> lists = new HashMap<>();
+        Map<Long, Integer> sizes = new HashMap<>();
+        Set<Long> grams = new HashSet<>();
+        for (int row = 0; row < size; row++) {
+            String value = values.apply(row);
+            if (value == null) {
+                continue;
+            }
+            grams.clear();
+            addGrams(value.toLowerCase(Locale.ROOT), grams);
+            for (Long gram : grams) {
+                int count = sizes.merge(gram, 1, Integer::sum);
+                int[] rows = lists.get(gram);
+                if (rows == null || rows.length < count) {
+                    rows = (rows == null) ? new int[4] : Arrays.copyOf(rows, rows.length * 2);
+                    lists.put(gram, rows);
+                }
+                rows[count - 1] = row;
+            }
+        }
+        lists.replaceAll((gram, rows) -> Arrays.copyOf(rows, sizes.get(gram)));
+        return new NGramIndex(lists);
+    }
+
+    /**
+     * @param lowerCaseValue Lower cased search string.
+     * @return Ascending candidate rows containing every trigram of the search string, or null if the
+     * search string is too short to use the index.
+     */
+    int[] candidates(String lowerCaseValue) {
+        if (lowerCaseValue.length() < N) {
+            return null;
+        }
+        Set<Long> grams = new HashSet<>();
+        addGrams(lowerCaseValue, grams);
+        int[][] lists = new int[grams.size()][];
+        int i = 0;
+        for (Long gram : grams) {
+            int[] rows = postings.get(gram);
+            if (rows == null) {
+                return RowSets.EMPTY;
+            }
+            lists[i++] = rows;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] candidates = lists[0];
+        for (i = 1; i < lists.length && candidates.length > 0; i++) {
+            candidates = RowSets.intersect(candidates, lists[i]);
+        }
+        return candidates;
+    }
+
+
+    private static void addGrams(String value, Set<Long> grams) {
+        for (int i = 0; i + N <= value.length(); i++) {
+            grams.add(((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package au.com.formis.springbootdemo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>A sorted index over the distinct values of a column and their row counts, used for case insensitive
+ * prefix completion.</p>
+ * <p></p>
+ * <p>The lower cased values are held in sorted order next to parallel arrays of the original values and
+ * counts. The values starting with a prefix are a contiguous slice found with one binary search, the same
+ * lookup a trie walk gives without a node object per character, so finding the matches costs
+ * O(log n + matches).</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleCompletions
+ * @since       0.1
+ * </p>
+ */
+final class PrefixIndex {
+
+    static final PrefixIndex EMPTY = build(Map.of());
+
+    private final String[] keys;
+    private final String[] values;
+    private final long[] counts;
+
+    private PrefixIndex(String[] keys, String[] values, long[] counts) {
+        this.keys = keys;
+        this.values = values;
+        this.counts = counts;
+    }
+
+    /**
+     * @param counts Row count of each distinct value, null values are not indexed.
+     * @return A new prefix index over the values.
+     */
+    static PrefixIndex build(Map<String, Long> counts) {
+        String[] values = counts.keySet().stream().filter(value -> value != null)
+                .sorted(Comparator.comparing((String value) -> value.toLowerCase(Locale.ROOT)).thenComparing(Comparator.naturalOrder()))
+                .toArray(String[]::new);
+        String[] keys = new String[values.length];
+        long[] valueCounts = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            keys[i] = values[i].toLowerCase(Locale.ROOT);
+            valueCounts[i] = counts.get(values[i]);
+        }
+        return new PrefixIndex(keys, values, valueCounts);
+    }
+
+    /**
+     * @param prefix Prefix to complete, matched case insensitively, empty for every value.
+     * @param limit Maximum number of completions.
+     * @return The values starting with the prefix with the most rows, ordered by count descending then value.
+     */
+    List<MotorVehicleCompletions.Completion> complete(String prefix, int limit) {
+        String key = prefix.toLowerCase(Locale.ROOT);
+        int found = Arrays.binarySearch(keys, key);
+        int from = (found >= 0) ? found : -found - 1;
+        // Equal lower cased keys can sit either side of the one binarySearch found.
+        while (from > 0 && keys[from - 1].equals(key)) {
+            from--;
+        }
+        int to = from;
+        while (to < keys.length && keys[to].startsWith(key)) {
+            to++;
+        }
+        Integer[] matches = new Integer[to - from];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = from + i;
+        }
+        // Slices are already in value order, a stable sort on count keeps it for equal counts.
+        Arrays.sort(matches, Comparator.comparingLong((Integer i) -> counts[i]).reversed());
+        List<MotorVehicleCompletions.Completion> completions = new ArrayList<>(Math.min(limit, matches.length));
+        for (int i = 0; i < matches.length && i < limit; i++) {
+            completions.add(new MotorVehicleCompletions.Completion(values[matches[i]], counts[matches[i]]));
+        }
+        return completions;
+    }
+
+    int size() {
+        return keys.length;
+    }
+}
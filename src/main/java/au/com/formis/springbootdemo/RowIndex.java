@@ -0,0 +1,59 @@
+package au.com.formis.springbootdemo;
+
+import java.nio.IntBuffer;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>A prebuilt hash index of a MotorVehicleSnapshot, from dense int keys such as dictionary codes to the
+ * ascending rows holding them.</p>
+ * <p></p>
+ * <p>The rows of every key are stored back to back in one int section, key k holding rows offsets[k] up to
+ * offsets[k + 1], so the index is two flat buffers that can be read straight from a mapped file rather
+ * than an array per key.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleSnapshot
+ * @see au.com.formis.springbootdemo.MotorVehicleColumns
+ * @since       0.1
+ * </p>
+ */
+final class RowIndex {
+
+    private final IntBuffer offsets;
+    private final IntBuffer rows;
+
+    RowIndex(IntBuffer offsets, IntBuffer rows) {
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    /**
+     * @return Number of keys.
+     */
+    int keys() {
+        return offsets.limit() - 1;
+    }
+
+    /**
+     * @param key Key from 0 to keys - 1.
+     * @return Number of rows holding the key.
+     */
+    int count(int key) {
+        return offsets.get(key + 1) - offsets.get(key);
+    }
+
+    /**
+     * @param key Key from 0 to keys - 1.
+     * @return A new array of the ascending rows holding the key.
+     */
+    int[] rows(int key) {
+        int from = offsets.get(key);
+        int[] keyRows = new int[offsets.get(key + 1) - from];
+        if (keyRows.length > 0) {
+            rows.duplicate().position(from).get(keyRows);
+        }
+        return keyRows;
+    }
+}
@@ -0,0 +1,128 @@
+package au.com.formis.springbootdemo;
+
+import java.util.Arrays;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Helpers for the sets of row numbers returned by the MotorVehicleColumns indexes.</p>
+ * <p></p>
+ * <p>Row sets are ascending int arrays without duplicates so they can be intersected with a
+ * linear merge and returned in id order without sorting.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleColumns
+ * @since       0.1
+ * </p>
+ */
+final class RowSets {
+
+    static final int[] EMPTY = new int[0];
+
+    private RowSets() {
+    }
+
+    /**
+     * @param a Ascending row numbers.
+     * @param b Ascending row numbers.
+     * @return Ascending row numbers present in both a and b.
+     */
+    static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            return intersect(b, a);
+        }
+        int[] result = new int[a.length];
+        int count = 0;
+        // Gallop through the larger set when the sizes are very different.
+        if (a.length * 16 < b.length) {
+            int from = 0;
+            for (int row : a) {
+                int found = Arrays.binarySearch(b, from, b.length, row);
+                if (found >= 0) {
+                    result[count++] = row;
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < a.length && j < b.length) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    result[count++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @param a Ascending row numbers.
+     * @param b Ascending row numbers.
+     * @return Ascending row numbers present in a but not in b.
+     */
+    static int[] difference(int[] a, int[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return a;
+        }
+        int[] result = new int[a.length];
+        int count = 0;
+        int j = 0;
+        for (int row : a) {
+            while (j < b.length && b[j] < row) {
+                j++;
+            }
+            if (j == b.length || b[j] != row) {
+                result[count++] = row;
+            }
+        }
+        return (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @param a Ascending row numbers.
+     * @param b Ascending row numbers.
+     * @return Ascending row numbers present in a or b.
+     */
+    static int[] union(int[] a, int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        if (a.length == 0) {
+            return b;
+        }
+        int[] result = new int[a.length + b.length];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[count++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i++];
+                j++;
+            }
+        }
+        return (count == result.length) ? result : Arrays.copyOf(result, count);
+    }
+
+    /**
+     * @param size Number of rows.
+     * @return Every row number from 0 to size - 1.
+     */
+    static int[] all(int size) {
+        int[] rows = new int[size];
+        Arrays.setAll(rows, row -> row);
+        return rows;
+    }
+}
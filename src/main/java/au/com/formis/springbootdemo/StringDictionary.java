@@ -0,0 +1,101 @@
+package au.com.formis.springbootdemo;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * @author      <a href="mailto:peter.debus@formis.com.au">Peter Debus</a>
+ * @version     0.1
+ *
+ * <p>Dictionary encoding for the string columns of a MotorVehicleSnapshot, such as make, model or fuel type.</p>
+ * <p></p>
+ * <p>Each distinct value is stored once, as UTF-8 bytes, and its int code is its position in UTF-8 byte order,
+ * columns then hold the int codes instead of String references. Null values are encoded as NULL_CODE.
+ * The values are read from the snapshot buffers, so codeOf binary searches the encoded bytes without
+ * decoding them and a mapped snapshot only decodes the values of the rows being returned.</p>
+ * <p>
+ * @see au.com.formis.springbootdemo.MotorVehicleColumns
+ * @see au.com.formis.springbootdemo.MotorVehicleSnapshot
+ * @since       0.1
+ * </p>
+ */
+final class StringDictionary {
+
+    static final int NULL_CODE = -1;
+
+    // Value code spans bytes offsets[code] up to offsets[code + 1].
+    private final IntBuffer offsets;
+    private final ByteBuffer bytes;
+    // Decoded values, null when they are decoded from the bytes on each call.
+    private final String[] values;
+
+    /**
+     * @param offsets Start of each value in bytes, followed by the end of the last value.
+     * @param bytes UTF-8 encoded values in unsigned byte order.
+     * @param values The decoded values, or null to decode them from bytes.
+     */
+    StringDictionary(IntBuffer offsets, ByteBuffer bytes, String[] values) {
+        this.offsets = offsets;
+        this.bytes = bytes;
+        this.values = values;
+    }
+
+    /**
+     * @param value String value to look up, may be null.
+     * @return Dictionary code for the value or NULL_CODE if the value is not in the dictionary.
+     */
+    int codeOf(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        byte[] key = value.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int compared = compare(middle, key);
+            if (compared < 0) {
+                low = middle + 1;
+            } else if (compared > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return NULL_CODE;
+    }
+
+    String decode(int code) {
+        if (code == NULL_CODE) {
+            return null;
+        }
+        if (values != null) {
+            return values[code];
+        }
+        int from = offsets.get(code);
+        byte[] value = new byte[offsets.get(code + 1) - from];
+        bytes.duplicate().position(from).get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    int size() {
+        return offsets.limit() - 1;
+    }
+
+    /**
+     * @return Unsigned byte comparison of the value with the code and the key.
+     */
+    private int compare(int code, byte[] key) {
+        int from = offsets.get(code);
+        int length = offsets.get(code + 1) - from;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int compared = Byte.compareUnsigned(bytes.get(from + i), key[i]);
+            if (compared != 0) {
+                return compared;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+}
@@ -0,0 +1,22 @@
+-- Schema of the prebuilt data/myDB database, which is baselined at this version instead of running it.
+-- Creates the same empty table in a new database.
+create table if not exists motorvehicle (
+    id bigint not null primary key,
+    make varchar(104),
+    model varchar(8),
+    generation varchar(25),
+    trim_version varchar(104),
+    date_from varchar(8),
+    date_to varchar(8),
+    new_price varchar(8),
+    power integer,
+    torque integer,
+    fuel_capacity integer,
+    engine_size integer,
+    cylinders integer,
+    valves integer,
+    fuel_type varchar(25),
+    transmission varchar(9),
+    gearbox varchar(17),
+    country varchar(104)
+);
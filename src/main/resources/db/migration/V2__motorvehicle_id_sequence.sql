@@ -0,0 +1,3 @@
+-- MotorVehicle ids come from a pooled sequence, which hands out the allocationSize (50) ids below each value.
+create sequence if not exists motorvehicle_seq increment by 50;
+alter sequence motorvehicle_seq restart with (select coalesce(max(id), 0) + 50 from motorvehicle);
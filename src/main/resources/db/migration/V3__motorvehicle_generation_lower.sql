@@ -0,0 +1,2 @@
+-- Lower cased generation maintained by H2 for the case insensitive generation contains searches.
+alter table motorvehicle add column generation_lower varchar(25) as lower(generation);
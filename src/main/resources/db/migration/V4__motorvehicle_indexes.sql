@@ -0,0 +1,6 @@
+-- Every MotorVehicleRepository query filters on make, make and model, or make, model and generation, so one
+-- composite index serves them all through its leading columns. The generation contains search cannot seek
+-- on generation_lower, it is only checked on the rows the make and model seek finds.
+create index motorvehicle_make_model_generation on motorvehicle (make, model, generation_lower);
+-- Duplicate of the primary key index, it only slowed down writes.
+drop index if exists uk_auto_sample_id_uindex;
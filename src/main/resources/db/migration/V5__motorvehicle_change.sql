@@ -0,0 +1,10 @@
+-- Change log of the MotorVehicleWriter, one row per created, updated or deleted motorvehicle row and one per
+-- import. The version orders the changes for the /motorVehicles/changes feed.
+create table if not exists motorvehicle_change (
+    version bigint auto_increment primary key,
+    operation varchar(6) not null,
+    vehicle_id bigint,
+    changed_at timestamp not null
+);
+-- The feed only returns the latest change of each vehicle, found by a seek on this index.
+create index motorvehicle_change_vehicle_id_version on motorvehicle_change (vehicle_id, version);
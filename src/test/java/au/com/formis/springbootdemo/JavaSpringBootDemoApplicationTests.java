@@ -1,18 +1,42 @@
 package au.com.formis.springbootdemo;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
 import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import static org.assertj.core.api.Assertions.assertThat;
 
 
 
 
 // @SpringBootTest
-@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+// A page limit below the 126 BMW rows shows unpaged queries are not truncated.
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "motorvehicle.page.max-limit=100")
+@AutoConfigureMetrics
 public class JavaSpringBootDemoApplicationTests {
 
 //    @Test
@@ -25,23 +49,343 @@ public class JavaSpringBootDemoApplicationTests {
     @Autowired
     private TestRestTemplate restTemplate;
 
+    @Autowired
+    private MotorVehicleRepository motorVehicleRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MotorVehicleRequestCoalescer motorVehicleRequestCoalescer;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Test
     public void apiTest01() throws Exception {
-        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=Toyota&model=Prius&generation=saloon",
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=Toyota&model=Prius&generation=saloon&pretty=true",
                 String.class)).contains("\"numberOfRecords\" : 2");
     }
 
     @Test
     public void apiTest02() throws Exception {
-        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=BMW&model=3-Series&generation=Saloon+2005",
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=BMW&model=3-Series&generation=Saloon+2005&pretty=true",
                 String.class)).contains("\"numberOfRecords\" : 8");
     }
 
     @Test
     public void apiTest03() throws Exception {
-        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=BMW&model=X6",
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=BMW&model=X6&pretty=true",
                 String.class)).contains("\"numberOfRecords\" : 12");
     }
 
+    @Test
+    public void apiTest04() throws Exception {
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=BMW&model=X6",
+                String.class)).contains("\"numberOfRecords\":12").doesNotContain("\n");
+    }
+
+    @Test
+    public void apiPageTest01() throws Exception {
+        String firstPage = restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=BMW&model=X6&limit=10&sort=power,desc",
+                String.class);
+        assertThat(firstPage).contains("\"numberOfRecords\":10").contains("\"nextCursor\":");
+        String cursor = firstPage.replaceAll(".*\"nextCursor\":\"([^\"]+)\".*", "$1");
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=BMW&model=X6&limit=10&sort=power,desc&cursor=" + cursor,
+                String.class)).contains("\"numberOfRecords\":2").doesNotContain("nextCursor");
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=BMW&limit=0", String.class)
+                .getStatusCodeValue()).isEqualTo(400);
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=BMW&sort=gearbox", String.class)
+                .getStatusCodeValue()).isEqualTo(400);
+    }
+
+    @Test
+    public void apiPageTest02() throws Exception {
+        // Without limit, sort or cursor every record is returned, with any of them the page holds at most max-limit.
+        for (String url : List.of("/motorVehicles?make=BMW", "/motorVehicles/typed?make=BMW", "/motorVehicles/search?make=BMW")) {
+            assertThat(restTemplate.getForObject("http://localhost:" + port + url, String.class))
+                    .contains("\"numberOfRecords\":126").doesNotContain("nextCursor");
+            assertThat(restTemplate.getForObject("http://localhost:" + port + url + "&sort=power", String.class))
+                    .contains("\"numberOfRecords\":100").contains("\"nextCursor\":");
+        }
+    }
+
+    @Test
+    public void apiRangeTest01() throws Exception {
+        ResponseEntity<String> response = restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=BMW&cylinders=6&power=150..",
+                String.class);
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getBody()).contains("\"payloadURL\":\"http://localhost:" + port + "/motorVehicles?make=BMW&power=150..&cylinders=6\"")
+                .doesNotContain("\"cylinders\":4,");
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=BMW&power=250..150", String.class)
+                .getStatusCodeValue()).isEqualTo(400);
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=BMW&power=high", String.class)
+                .getStatusCodeValue()).isEqualTo(400);
+    }
+
+    @Test
+    public void apiFieldsTest01() throws Exception {
+        String url = "http://localhost:" + port + "/motorVehicles?make=BMW&model=X6&limit=10&sort=power,desc";
+        JsonNode full = new ObjectMapper().readTree(restTemplate.getForObject(url, byte[].class));
+        JsonNode projected = new ObjectMapper().readTree(restTemplate.getForObject(url + "&fields=power,trimVersion,model,make", byte[].class));
+        assertThat(projected.get("payloadURL").asText()).endsWith("&fields=make,model,trimVersion,power");
+        assertThat(projected.get("nextCursor")).isEqualTo(full.get("nextCursor"));
+        assertThat(projected.get("payload")).hasSize(10);
+        for (int i = 0; i < 10; i++) {
+            JsonNode record = projected.get("payload").get(i);
+            assertThat(record.fieldNames()).toIterable().containsExactly("make", "model", "trimVersion", "power");
+            for (String field : List.of("make", "model", "trimVersion", "power")) {
+                assertThat(record.get(field)).isEqualTo(full.get("payload").get(i).get(field));
+            }
+        }
+        JsonNode columns = new ObjectMapper().readTree(accept(url + "&fields=make,power", "application/vnd.motorvehicle.columns+json").getBody());
+        assertThat(columns.get("payload").get("power")).hasSize(10);
+        assertThat(columns.get("payload").size()).isEqualTo(2);
+        assertThat(restTemplate.getForEntity(url + "&fields=make,colour", String.class).getStatusCodeValue()).isEqualTo(400);
+    }
+
+    @Test
+    public void apiSearchTest01() throws Exception {
+        ResponseEntity<String> response = restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles/search?model=X6&power=200..&limit=5",
+                String.class);
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getHeaders().getFirst("X-Query-Plan")).startsWith("model hash 12 -> 12, power range ");
+        assertThat(response.getBody()).contains("\"payloadURL\":\"http://localhost:" + port + "/motorVehicles/search?model=X6&power=200..&limit=5\"")
+                .contains("\"numberOfRecords\":5").contains("\"nextCursor\":").doesNotContain("\"model\":\"3-Series\"");
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles/search?make=BMW&trimVersion=xDrive", String.class)
+                .getHeaders().getFirst("X-Query-Plan")).matches("(make hash [0-9]+ -> [0-9]+, trimVersion ngram|trimVersion ngram [0-9]+ -> [0-9]+, make hash).*");
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles/search?pretty=true", String.class)
+                .getStatusCodeValue()).isEqualTo(400);
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles/search?model=Lada", String.class)
+                .getStatusCodeValue()).isEqualTo(404);
+    }
+
+    @Test
+    public void apiCompletionsTest01() throws Exception {
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles/completions/make?prefix=b", String.class))
+                .contains("\"numberOfRecords\":1").contains("{\"value\":\"BMW\",\"count\":126}");
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles/completions/model?make=BMW", String.class))
+                .contains("[{\"value\":\"3-Series\",\"count\":114},{\"value\":\"X6\",\"count\":12}]");
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles/completions/generation?make=BMW&model=3-Series&prefix=SALOON&limit=1",
+                String.class)).contains("[{\"value\":\"Saloon 2019 specs\",\"count\":25}]");
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles/completions/model?make=Lada", String.class)
+                .getStatusCodeValue()).isEqualTo(404);
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles/completions/make?limit=0", String.class)
+                .getStatusCodeValue()).isEqualTo(400);
+    }
+
+    @Test
+    public void apiChangesTest01() throws Exception {
+        ResponseEntity<String> response = restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles/changes?since=" + Long.MAX_VALUE,
+                String.class);
+        assertThat(response.getStatusCodeValue()).isEqualTo(200);
+        assertThat(response.getHeaders().getFirst("X-Change-Version")).matches("[0-9]+");
+        assertThat(response.getBody()).contains("\"numberOfRecords\":0");
+        // Writes are disabled by default.
+        assertThat(restTemplate.postForEntity("http://localhost:" + port + "/motorVehicles", new MotorVehicle(), String.class)
+                .getStatusCodeValue()).isEqualTo(403);
+    }
+
+    @Test
+    public void apiTypedTest01() throws Exception {
+        String json = restTemplate.getForObject("http://localhost:" + port + "/motorVehicles/typed?make=Toyota&model=Prius&generation=saloon",
+                String.class);
+        assertThat(json).contains("\"numberOfRecords\":2").contains("\"id\":152,").contains("\"dateFrom\":\"2000-10\",\"dateTo\":\"2003-05\",\"inProduction\":false")
+                .doesNotContain("newPrice");
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles/typed?make=BMW&newPrice=..40000",
+                String.class)).contains("\"newPrice\":").doesNotContain("\"newPrice\":4").doesNotContain("\"newPrice\":1");
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=BMW&dateFrom=2019", String.class)
+                .getStatusCodeValue()).isEqualTo(400);
+    }
+
+    @Test
+    public void apiCacheTest01() throws Exception {
+        ResponseEntity<String> first = restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?model=Prius&make=Toyota&generation=SALOON",
+                String.class);
+        assertThat(first.getHeaders().getETag()).isNotNull();
+        assertThat(first.getBody()).contains("\"payloadURL\":\"http://localhost:" + port + "/motorVehicles?make=Toyota&model=Prius&generation=saloon\"");
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(first.getHeaders().getETag());
+        ResponseEntity<String> repeat = restTemplate.exchange("http://localhost:" + port + "/motorVehicles?make=Toyota&model=Prius&generation=saloon",
+                HttpMethod.GET, new HttpEntity<>(headers), String.class);
+        assertThat(repeat.getStatusCodeValue()).isEqualTo(304);
+        assertThat(repeat.getBody()).isNull();
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/motorVehicles/cache", String.class))
+                .matches(".*\"hits\":[1-9].*");
+    }
+
+    @Test
+    public void apiStreamTest01() throws Exception {
+        String json = restTemplate.getForObject("http://localhost:" + port + "/motorVehicles/stream?make=BMW&model=3-Series&generation=Saloon+2005",
+                String.class);
+        assertThat(json).startsWith("{\"publisher\":").endsWith("\"numberOfRecords\":8}");
+        assertThat(json.indexOf("\"payloadURL\"")).isLessThan(json.indexOf("\"payload\":["));
+    }
+
+    @Test
+    public void apiFormatTest01() throws Exception {
+        String url = "http://localhost:" + port + "/motorVehicles?make=BMW&model=X6";
+        byte[] json = restTemplate.getForObject(url, byte[].class);
+        for (MotorVehicleFormat format : List.of(MotorVehicleFormat.SMILE, MotorVehicleFormat.CBOR)) {
+            ResponseEntity<byte[]> response = accept(url, format.getMediaType().toString());
+            assertThat(response.getHeaders().getContentType()).isEqualTo(format.getMediaType());
+            ObjectMapper mapper = new ObjectMapper((format == MotorVehicleFormat.SMILE) ? new SmileFactory() : new CBORFactory());
+            JsonNode payload = mapper.readTree(response.getBody());
+            assertThat(payload.get("numberOfRecords").asInt()).isEqualTo(12);
+            assertThat(payload.get("payload").get(0)).isEqualTo(new ObjectMapper().readTree(json).get("payload").get(0));
+            assertThat(response.getBody().length).isLessThan(json.length);
+        }
+        assertThat(accept(url, "text/csv").getStatusCodeValue()).isEqualTo(406);
+        assertThat(accept(url, "application/xml, */*;q=0.1").getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON);
+    }
+
+    @Test
+    public void apiFormatTest02() throws Exception {
+        String url = "http://localhost:" + port + "/motorVehicles/typed?make=BMW&model=X6";
+        ResponseEntity<byte[]> response = accept(url, "application/vnd.motorvehicle.columns+json");
+        JsonNode columns = new ObjectMapper().readTree(response.getBody());
+        JsonNode rows = new ObjectMapper().readTree(restTemplate.getForObject(url, byte[].class)).get("payload");
+        assertThat(columns.get("numberOfRecords").asInt()).isEqualTo(12);
+        assertThat(columns.get("payload").get("id")).hasSize(12);
+        // Null values the row layout leaves out are kept so every column has a value per row.
+        assertThat(columns.get("payload").get("newPrice")).hasSize(12);
+        assertThat(columns.get("payload").get("dateFrom").get(3).asText()).isEqualTo(rows.get(3).get("dateFrom").asText());
+        assertThat(response.getBody().length).isLessThan(new ObjectMapper().writeValueAsBytes(rows).length);
+    }
+
+    @Test
+    public void apiCompressionTest01() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+        ResponseEntity<byte[]> response = restTemplate.exchange("http://localhost:" + port + "/motorVehicles/stream?make=BMW",
+                HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        try (var json = new GZIPInputStream(new ByteArrayInputStream(response.getBody()))) {
+            assertThat(new String(json.readAllBytes(), StandardCharsets.UTF_8)).matches("(?s)\\{\"publisher\".*\"numberOfRecords\":[1-9][0-9]*}");
+        }
+    }
+
+    @Test
+    public void apiAggregationTest01() throws Exception {
+        String json = restTemplate.getForObject("http://localhost:" + port + "/motorVehicles/aggregations?make=BMW&model=X6",
+                String.class);
+        assertThat(json).contains("\"numberOfRecords\":12,\"facets\":{\"fuelType\":{").contains("\"power\":{\"count\":12,\"min\":");
+        for (String query : List.of("make=NoSuchMake", "make=BMW&model=X6&power=100000..")) {
+            ResponseEntity<String> empty = restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles/aggregations?" + query, String.class);
+            assertThat(empty.getStatusCodeValue()).isEqualTo(404);
+            assertThat(empty.getBody()).contains("\"numberOfRecords\":0").contains("\"payload\":[]");
+        }
+    }
+
+    @Test
+    public void apiBatchTest01() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String body = "[{\"make\":\"Toyota\",\"model\":\"Prius\",\"generation\":\"saloon\"},"
+                + "{\"make\":\"BMW\",\"model\":\"3-Series\",\"generation\":\"Saloon 2005\"},"
+                + "{\"make\":\"BMW\",\"model\":\"X6\"},{\"make\":\"Lada\"}]";
+        String json = restTemplate.postForObject("http://localhost:" + port + "/motorVehicles/batch", new HttpEntity<>(body, headers), String.class);
+        assertThat(json).contains("\"payloadURL\":\"http://localhost:" + port + "/motorVehicles?make=Toyota&model=Prius&generation=saloon\"")
+                .matches("(?s).*\"numberOfRecords\":2,.*\"numberOfRecords\":8,.*\"numberOfRecords\":12,.*\"numberOfRecords\":0,\"payload\":\\[\\]}]}")
+                .contains("\"numberOfRecords\":4,");
+        assertThat(restTemplate.postForEntity("http://localhost:" + port + "/motorVehicles/batch", new HttpEntity<>("[{\"model\":\"X6\"}]", headers), String.class)
+                .getStatusCodeValue()).isEqualTo(400);
+    }
+
+    @Test
+    public void apiImportTest01() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType("text/csv"));
+        assertThat(restTemplate.postForEntity("http://localhost:" + port + "/motorVehicles/import", new HttpEntity<>("make,model\nBMW,X6\n", headers), String.class)
+                .getStatusCodeValue()).isEqualTo(403);
+    }
+
+    @Test
+    public void apiWildcardTest01() throws Exception {
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=BMW&model=X6&generation=%25", String.class)
+                .getStatusCodeValue()).isEqualTo(404);
+    }
+
+    @Test
+    public void apiMetricsTest01() throws Exception {
+        restTemplate.getForObject("http://localhost:" + port + "/motorVehicles?make=BMW&model=X6&power=200..", String.class);
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/actuator/prometheus", String.class))
+                .contains("motorvehicle_query_seconds_bucket{").contains("endpoint=\"find\"").contains("make=\"bmw\"")
+                .contains("motorvehicle_serialization_seconds_count").contains("motorvehicle_response_bytes_sum")
+                .contains("motorvehicle_response_cache_requests_total").contains("hikaricp_connections").contains("hibernate_");
+    }
+
+    @Test
+    public void metricsMakeTagOverflow() throws Exception {
+        var registry = new SimpleMeterRegistry();
+        var executor = new ThreadPoolTaskExecutor();
+        executor.initialize();
+        try {
+            var metrics = new MotorVehicleMetrics(registry, new MotorVehicleResponseCache(false, 0, 0), executor, "catalog", 2);
+            for (String make : List.of("BMW", "bmw", "Toyota", "Lada", "Skoda")) {
+                metrics.query("find", MotorVehicleQuery.byMake(make), () -> null);
+            }
+            // Tag values are case folded, values past the limit are kept as other instead of being dropped.
+            assertThat(registry.find(MotorVehicleMetrics.QUERY).tag("make", "bmw").timer().count()).isEqualTo(2);
+            assertThat(registry.find(MotorVehicleMetrics.QUERY).tag("make", "toyota").timer().count()).isEqualTo(1);
+            assertThat(registry.find(MotorVehicleMetrics.QUERY).tag("make", MotorVehicleMetrics.OTHER).timer().count()).isEqualTo(2);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private ResponseEntity<byte[]> accept(String url, String accept) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ACCEPT, accept);
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+
+    @Test
+    public void repositoryCacheTest01() throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<MotorVehicle> first = motorVehicleRepository.findMotorVehiclesByMakeAndModel("BMW", "X6");
+        long statements = statistics.getPrepareStatementCount();
+        long queryCacheHits = statistics.getQueryCacheHitCount();
+        List<MotorVehicle> second = motorVehicleRepository.findMotorVehiclesByMakeAndModel("BMW", "X6");
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(statements);
+        assertThat(statistics.getQueryCacheHitCount()).isEqualTo(queryCacheHits + 1);
+        // Read only entities are cached as references, the cache hit returns the same instances.
+        assertThat(second).hasSize(12);
+        for (int i = 0; i < second.size(); i++) {
+            assertThat(second.get(i)).isSameAs(first.get(i));
+        }
+        assertThat(restTemplate.getForObject("http://localhost:" + port + "/actuator/prometheus", String.class))
+                .contains("hibernate_second_level_cache_requests_total{").contains("region=\"motorvehicle\"")
+                .contains("hibernate_cache_query_requests_total{");
+    }
+
+
+    @Test
+    public void coalescerSharesInFlightExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<String> leader = new CompletableFuture<>();
+        double coalesced = meterRegistry.counter(MotorVehicleMetrics.COALESCED, "endpoint", "test").count();
+        CompletableFuture<String> first = motorVehicleRequestCoalescer.execute("test", "coalescer-test", () -> {
+            executions.incrementAndGet();
+            return leader;
+        });
+        CompletableFuture<String> second = motorVehicleRequestCoalescer.execute("test", "coalescer-test", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+        assertThat(executions.get()).isEqualTo(1);
+        assertThat(meterRegistry.counter(MotorVehicleMetrics.COALESCED, "endpoint", "test").count()).isEqualTo(coalesced + 1);
+        leader.complete("first");
+        assertThat(first.get()).isEqualTo("first");
+        assertThat(second.get()).isEqualTo("first");
+        assertThat(motorVehicleRequestCoalescer.getInFlight()).isZero();
+        // Nothing is kept once the execution completed.
+        assertThat(motorVehicleRequestCoalescer.execute("test", "coalescer-test", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture("third");
+        }).get()).isEqualTo("third");
+        assertThat(executions.get()).isEqualTo(2);
+    }
+
 
 }
@@ -0,0 +1,62 @@
+package au.com.formis.springbootdemo;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+        properties = {"motorvehicle.async.enabled=true", "motorvehicle.async.pool-size=1", "motorvehicle.async.queue-capacity=1"})
+public class MotorVehicleAsyncTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    @Qualifier("motorVehicleTaskExecutor")
+    private ThreadPoolTaskExecutor motorVehicleTaskExecutor;
+
+    @Test
+    public void asyncQueryRunsOnExecutor() {
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=BMW&model=X6", String.class)
+                .getStatusCodeValue()).isEqualTo(200);
+        assertThat(motorVehicleTaskExecutor.getThreadPoolExecutor().getTaskCount()).isPositive();
+    }
+
+    @Test
+    public void saturatedExecutorReturns503() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable block = () -> {
+            running.countDown();
+            try {
+                release.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        // One task on the single thread and one in the queue fill the executor.
+        motorVehicleTaskExecutor.execute(block);
+        assertThat(running.await(10, TimeUnit.SECONDS)).isTrue();
+        motorVehicleTaskExecutor.execute(block);
+        try {
+            assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=Toyota&model=Prius", String.class)
+                    .getStatusCodeValue()).isEqualTo(503);
+        } finally {
+            release.countDown();
+        }
+        assertThat(restTemplate.getForEntity("http://localhost:" + port + "/motorVehicles?make=Toyota&model=Prius", String.class)
+                .getStatusCodeValue()).isEqualTo(200);
+    }
+}
@@ -0,0 +1,351 @@
+package au.com.formis.springbootdemo;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+@SpringBootTest
+public class MotorVehicleCatalogTests {
+
+    @Autowired
+    private MotorVehicleRepository motorVehicleRepository;
+
+    @Autowired
+    private MotorVehicleCatalog motorVehicleCatalog;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private MotorVehicleWriter motorVehicleWriter;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    public void catalogMatchesRepositoryByMake() {
+        for (String make : List.of("BMW", "Toyota", "bmw", "Ford")) {
+            assertThat(rows(motorVehicleCatalog.findMotorVehiclesByMake(make)))
+                    .isEqualTo(rows(motorVehicleRepository.findMotorVehiclesByMake(make)));
+        }
+    }
+
+    @Test
+    public void catalogMatchesRepositoryByMakeAndModel() {
+        for (String[] makeAndModel : List.of(new String[]{"BMW", "X6"}, new String[]{"BMW", "3-Series"},
+                new String[]{"Toyota", "Prius"}, new String[]{"Toyota", "X6"}, new String[]{"BMW", "x6"})) {
+            assertThat(rows(motorVehicleCatalog.findMotorVehiclesByMakeAndModel(makeAndModel[0], makeAndModel[1])))
+                    .isEqualTo(rows(motorVehicleRepository.findMotorVehiclesByMakeAndModel(makeAndModel[0], makeAndModel[1])));
+        }
+        assertThat(motorVehicleCatalog.findMotorVehiclesByMakeAndModel("BMW", "X6")).hasSize(12);
+    }
+
+    // The three JavaSpringBootDemoApplicationTests cases plus short, mixed case, missing and like wildcard search strings.
+    @Test
+    public void catalogMatchesRepositoryByMakeAndModelAndGenerationContains() {
+        for (String[] query : List.of(new String[]{"Toyota", "Prius", "saloon"}, new String[]{"BMW", "3-Series", "Saloon 2005"},
+                new String[]{"BMW", "X6", ""}, new String[]{"BMW", "3-Series", "conVERtible"}, new String[]{"BMW", "3-Series", "s"},
+                new String[]{"BMW", "3-Series", "05 sp"}, new String[]{"BMW", "X6", "4x4 2019 SPECS"}, new String[]{"BMW", "X6", "saloon"},
+                new String[]{"Toyota", "Prius", "zzz"}, new String[]{"Ford", "Prius", "saloon"}, new String[]{"BMW", "X6", "%"},
+                new String[]{"BMW", "X6", "_"}, new String[]{"BMW", "X6", "\\"})) {
+            assertThat(rows(motorVehicleCatalog.findMotorVehiclesByMakeAndModelAndGenerationContains(query[0], query[1], query[2])))
+                    .isEqualTo(rows(motorVehicleRepository.findMotorVehiclesByMakeAndModelAndGenerationContains(query[0], query[1], query[2])));
+        }
+        assertThat(motorVehicleCatalog.findMotorVehiclesByMakeAndModelAndGenerationContains("Toyota", "Prius", "saloon")).hasSize(2);
+        assertThat(motorVehicleCatalog.findMotorVehiclesByMakeAndModelAndGenerationContains("BMW", "3-Series", "Saloon 2005")).hasSize(8);
+        assertThat(motorVehicleCatalog.findMotorVehiclesByMakeAndModelAndGenerationContains("BMW", "X6", "")).hasSize(12);
+    }
+
+    @Test
+    public void trimVersionContainsMatchesScan() {
+        MotorVehicleColumns columns = motorVehicleCatalog.getColumns();
+        List<MotorVehicle> all = columns.vehicles(columns.rows());
+        for (String search : List.of("auto", "XDRIVE", "320d se", "4d", "m", "no such trim")) {
+            String lowerCaseSearch = search.toLowerCase();
+            List<String> expected = all.stream().filter(vehicle -> vehicle.getTrimVersion().toLowerCase().contains(lowerCaseSearch))
+                    .map(MotorVehicle::toString).collect(Collectors.toList());
+            assertThat(rows(columns.vehicles(columns.rowsByTrimVersionContains(columns.rows(), lowerCaseSearch))))
+                    .isEqualTo(expected);
+        }
+    }
+
+    // Walks every page of each sort order with both stores, the pages must match and cover every record once.
+    @Test
+    public void catalogPagesMatchJpaPages() {
+        var jpaStore = new JpaMotorVehicleStore(motorVehicleRepository, entityManager);
+        List<String> sorts = List.of("", "power", "torque,desc", "engineSize,asc", "dateFrom", "dateFrom,desc");
+        for (MotorVehicleQuery query : List.of(MotorVehicleQuery.byMake("BMW"), MotorVehicleQuery.byMakeAndModel("Toyota", "Prius"),
+                MotorVehicleQuery.byMakeAndModelAndGeneration("BMW", "3-Series", "coupe"))) {
+            for (String sort : sorts) {
+                List<String> all = new ArrayList<>();
+                MotorVehiclePage page = MotorVehiclePage.of(7, null, sort, 1000);
+                while (true) {
+                    List<MotorVehicle> catalogPage = motorVehicleCatalog.find(query.withPage(page));
+                    assertThat(rows(catalogPage)).isEqualTo(rows(jpaStore.find(query.withPage(page))));
+                    all.addAll(rows(catalogPage));
+                    if (catalogPage.size() < page.getLimit()) {
+                        break;
+                    }
+                    page = MotorVehiclePage.of(7, page.cursorAfter(catalogPage.get(catalogPage.size() - 1)), sort, 1000);
+                }
+                assertThat(all).containsExactlyInAnyOrderElementsOf(rows(motorVehicleCatalog.find(query)));
+            }
+        }
+    }
+
+    // Selective, non-selective, open ended, empty and combined ranges, with and without a page.
+    @Test
+    public void catalogRangesMatchJpaRanges() {
+        var jpaStore = new JpaMotorVehicleStore(motorVehicleRepository, entityManager);
+        List<List<MotorVehicleRange>> filters = List.of(List.of(MotorVehicleRange.parse("power", "150..250")),
+                List.of(MotorVehicleRange.parse("cylinders", "6")), List.of(MotorVehicleRange.parse("torque", "..300")),
+                List.of(MotorVehicleRange.parse("engineSize", "2000..")), List.of(MotorVehicleRange.parse("valves", "1000..2000")),
+                List.of(MotorVehicleRange.parse("power", "0.."), MotorVehicleRange.parse("cylinders", "4..6"), MotorVehicleRange.parse("torque", "200..400")),
+                List.of(MotorVehicleRange.parse("newPrice", "..40000")), List.of(MotorVehicleRange.parse("newPrice", "30000..")),
+                List.of(MotorVehicleRange.parse("dateFrom", "2010-01..2019-12")), List.of(MotorVehicleRange.parse("dateTo", "2020-01..")),
+                List.of(MotorVehicleRange.parse("dateTo", "..2010-06"), MotorVehicleRange.parse("dateFrom", "2005-03")));
+        for (MotorVehicleQuery query : List.of(MotorVehicleQuery.byMake("BMW"), MotorVehicleQuery.byMakeAndModel("BMW", "X6"),
+                MotorVehicleQuery.byMakeAndModelAndGeneration("BMW", "3-Series", "saloon"), MotorVehicleQuery.byMake("Toyota"))) {
+            for (List<MotorVehicleRange> ranges : filters) {
+                MotorVehicleQuery filtered = query.withRanges(ranges);
+                List<MotorVehicle> expected = motorVehicleCatalog.find(query).stream().filter(filtered::matchesRanges).collect(Collectors.toList());
+                assertThat(rows(motorVehicleCatalog.find(filtered))).isEqualTo(rows(expected)).isEqualTo(rows(jpaStore.find(filtered)));
+                MotorVehiclePage page = MotorVehiclePage.of(5, null, "power,desc", 1000);
+                assertThat(rows(motorVehicleCatalog.find(filtered.withPage(page)))).isEqualTo(rows(jpaStore.find(filtered.withPage(page))));
+            }
+        }
+        assertThat(motorVehicleCatalog.find(MotorVehicleQuery.byMake("BMW").withRanges(List.of(MotorVehicleRange.parse("power", "150..250")))))
+                .isNotEmpty().allMatch(vehicle -> vehicle.getPower() >= 150 && vehicle.getPower() <= 250);
+    }
+
+    @Test
+    public void catalogViewsMatchJpaViews() {
+        var jpaStore = new JpaMotorVehicleStore(motorVehicleRepository, entityManager);
+        for (MotorVehicleQuery query : List.of(MotorVehicleQuery.byMake("BMW"), MotorVehicleQuery.byMake("Toyota"),
+                MotorVehicleQuery.byMakeAndModel("BMW", "X6").withPage(MotorVehiclePage.of(5, null, "dateFrom,desc", 1000)))) {
+            List<MotorVehicleView> views = motorVehicleCatalog.findViews(query);
+            assertThat(views.stream().map(MotorVehicleView::toString).collect(Collectors.toList()))
+                    .isEqualTo(jpaStore.findViews(query).stream().map(MotorVehicleView::toString).collect(Collectors.toList()));
+        }
+        List<MotorVehicleView> views = motorVehicleCatalog.findViews(MotorVehicleQuery.byMake("BMW"));
+        assertThat(views).allMatch(view -> view.getDateFrom() != null).allMatch(view -> view.isInProduction() == (view.getDateTo() == null))
+                .anyMatch(view -> view.getNewPrice() != null).anyMatch(MotorVehicleView::isInProduction);
+    }
+
+    // Projections must match the stores' entities field by field, including the page cursors built from them.
+    @Test
+    public void catalogProjectionsMatchJpaProjections() {
+        var jpaStore = new JpaMotorVehicleStore(motorVehicleRepository, entityManager);
+        var fields = MotorVehicleFields.parse("power,make,trimVersion,model,newPrice");
+        for (MotorVehicleQuery query : List.of(MotorVehicleQuery.byMake("BMW"), MotorVehicleQuery.byMakeAndModel("Toyota", "Prius"),
+                MotorVehicleQuery.byMakeAndModelAndGeneration("BMW", "3-Series", "saloon").withRanges(List.of(MotorVehicleRange.parse("power", "150..")))
+                        .withPage(MotorVehiclePage.of(5, null, "dateFrom,desc", 1000)))) {
+            List<MotorVehicleProjection> projections = motorVehicleCatalog.find(query, fields);
+            List<String> expected = new ArrayList<>();
+            for (MotorVehicle vehicle : motorVehicleCatalog.find(query)) {
+                expected.add(fields.project(vehicle, query.isPaged() ? query.getPage().key(vehicle) : 0).toString());
+            }
+            assertThat(projections.stream().map(MotorVehicleProjection::toString).collect(Collectors.toList())).isEqualTo(expected)
+                    .isEqualTo(jpaStore.find(query, fields).stream().map(MotorVehicleProjection::toString).collect(Collectors.toList()));
+            if (query.isPaged()) {
+                MotorVehicleProjection last = projections.get(projections.size() - 1);
+                assertThat(query.getPage().cursorAfter(last)).isEqualTo(query.getPage().cursorAfter(jpaStore.find(query).get(projections.size() - 1)));
+            }
+        }
+        assertThat(fields.getNames()).containsExactly("make", "model", "trimVersion", "newPrice", "power");
+    }
+
+    // Every combination of filters must match a scan of every row, whichever index the planner starts from.
+    @Test
+    public void catalogSearchMatchesJpaSearchAndScan() {
+        var jpaStore = new JpaMotorVehicleStore(motorVehicleRepository, entityManager);
+        MotorVehicle x6 = motorVehicleCatalog.findMotorVehiclesByMakeAndModel("BMW", "X6").get(0);
+        List<Map<String, String>> filters = List.of(Map.of("model", "X6"), Map.of("fuelType", x6.getFuelType(), "country", x6.getCountry()),
+                Map.of("make", "BMW", "model", "X6", "transmission", x6.getTransmission()), Map.of("gearbox", x6.getGearbox()),
+                Map.of("trimVersion", "DR", "make", "BMW"), Map.of("generation", "saloon", "fuelType", "Diesel"), Map.of("model", "Lada"), Map.of());
+        List<List<MotorVehicleRange>> ranges = List.of(List.of(), List.of(MotorVehicleRange.parse("power", "150..250")),
+                List.of(MotorVehicleRange.parse("cylinders", "6"), MotorVehicleRange.parse("dateFrom", "2010-01..")));
+        List<MotorVehicle> all = motorVehicleCatalog.getColumns().vehicles(motorVehicleCatalog.getColumns().rows());
+        for (Map<String, String> filter : filters) {
+            for (List<MotorVehicleRange> range : ranges) {
+                if (filter.isEmpty() && range.isEmpty()) {
+                    continue;
+                }
+                MotorVehicleSearch search = MotorVehicleSearch.of(filter, range);
+                List<MotorVehicle> expected = all.stream().filter(vehicle -> filter.entrySet().stream().allMatch(entry -> matches(vehicle, entry.getKey(), entry.getValue()))
+                        && range.stream().allMatch(r -> r.matches(vehicle))).collect(Collectors.toList());
+                MotorVehicleSearch.Result result = motorVehicleCatalog.search(search);
+                assertThat(rows(result.getVehicles())).as(search + " " + result.getPlan()).isEqualTo(rows(expected))
+                        .isEqualTo(rows(jpaStore.search(search).getVehicles()));
+                MotorVehiclePage page = MotorVehiclePage.of(3, null, "torque,desc", 1000);
+                assertThat(rows(motorVehicleCatalog.search(search.withPage(page)).getVehicles())).isEqualTo(rows(jpaStore.search(search.withPage(page)).getVehicles()));
+            }
+        }
+        // The make+model hash is more selective than the power range so the planner starts from it.
+        assertThat(motorVehicleCatalog.search(MotorVehicleSearch.of(Map.of("make", "BMW", "model", "X6"), List.of(MotorVehicleRange.parse("power", "0.."))))
+                .getPlan()).matches("make\\+model hash 12 -> 12, power range [0-9]+ -> 12");
+        assertThat(motorVehicleCatalog.search(MotorVehicleSearch.of(Map.of("gearbox", x6.getGearbox(), "model", "X6"), List.of())).getPlan())
+                .startsWith("model hash 12 -> 12, gearbox scan");
+    }
+
+    private static boolean matches(MotorVehicle vehicle, String field, String value) {
+        switch (field) {
+            case "generation":
+                return vehicle.getGeneration() != null && vehicle.getGeneration().toLowerCase(Locale.ROOT).contains(value.toLowerCase(Locale.ROOT));
+            case "trimVersion":
+                return vehicle.getTrimVersion() != null && vehicle.getTrimVersion().toLowerCase(Locale.ROOT).contains(value.toLowerCase(Locale.ROOT));
+            default:
+                return value.equals(MotorVehicleFields.parse(field).project(vehicle, 0).getValue(0));
+        }
+    }
+
+    @Test
+    public void catalogBatchMatchesJpaBatch() {
+        var jpaStore = new JpaMotorVehicleStore(motorVehicleRepository, entityManager);
+        List<MotorVehicleQuery> queries = List.of(MotorVehicleQuery.of("BMW", "X6", null), MotorVehicleQuery.of("Toyota", "Prius", "SALOON"),
+                MotorVehicleQuery.of("BMW", "3-Series", "Saloon 2005"), MotorVehicleQuery.of("Toyota", null, null),
+                MotorVehicleQuery.of("Ford", "Prius", null), MotorVehicleQuery.of("BMW", "X6", null));
+        var catalogResults = motorVehicleCatalog.findAll(queries);
+        var jpaResults = jpaStore.findAll(queries);
+        assertThat(jpaResults.keySet()).containsExactlyElementsOf(catalogResults.keySet()).hasSize(5);
+        for (MotorVehicleQuery query : queries) {
+            assertThat(rows(catalogResults.get(query))).isEqualTo(rows(jpaResults.get(query)))
+                    .isEqualTo(rows(motorVehicleCatalog.find(query)));
+        }
+    }
+
+    @Test
+    public void catalogAggregationsMatchJpaAggregations() {
+        var jpaStore = new JpaMotorVehicleStore(motorVehicleRepository, entityManager);
+        for (MotorVehicleQuery query : List.of(MotorVehicleQuery.of("BMW", null, null), MotorVehicleQuery.of("BMW", "3-Series", "saloon"),
+                MotorVehicleQuery.of("Toyota", "Prius", null), MotorVehicleQuery.of("Ford", null, null))) {
+            MotorVehicleAggregations aggregations = motorVehicleCatalog.aggregate(query);
+            assertThat(aggregations).usingRecursiveComparison().isEqualTo(jpaStore.aggregate(query));
+            assertThat(aggregations.getNumberOfRecords()).isEqualTo(motorVehicleCatalog.find(query).size());
+        }
+    }
+
+    @Test
+    public void catalogHoldsEveryRow() {
+        assertThat(motorVehicleCatalog.getColumns().size()).isEqualTo(motorVehicleRepository.count());
+    }
+
+    // The catalog tests again, answered from a mapped snapshot file.
+    @Test
+    public void mappedSnapshotMatchesRepository(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("motorvehicle.snapshot");
+        try (Connection connection = dataSource.getConnection()) {
+            MotorVehicleSnapshot.read(connection).write(file);
+        }
+        List<MotorVehicle> all = motorVehicleCatalog.getColumns().vehicles(motorVehicleCatalog.getColumns().rows());
+        try {
+            assertThat(motorVehicleCatalog.map(file)).isTrue();
+            MotorVehicleColumns columns = motorVehicleCatalog.getColumns();
+            assertThat(columns.getSnapshot().isMapped()).isTrue();
+            assertThat(rows(columns.vehicles(columns.rows()))).isEqualTo(rows(all));
+            catalogMatchesRepositoryByMake();
+            catalogMatchesRepositoryByMakeAndModel();
+            catalogMatchesRepositoryByMakeAndModelAndGenerationContains();
+            trimVersionContainsMatchesScan();
+            catalogSearchMatchesJpaSearchAndScan();
+            catalogAggregationsMatchJpaAggregations();
+
+            // A snapshot written at another version is not mapped.
+            MotorVehicleSnapshot.of(all, motorVehicleWriter.getVersion() + 1).write(file);
+            assertThat(motorVehicleCatalog.map(file)).isFalse();
+            assertThat(motorVehicleCatalog.map(directory.resolve("missing.snapshot"))).isFalse();
+            assertThat(motorVehicleCatalog.getColumns()).isSameAs(columns);
+        } finally {
+            motorVehicleCatalog.reload();
+        }
+        assertThat(motorVehicleCatalog.getColumns().getSnapshot().isMapped()).isFalse();
+    }
+
+    // Single row changes to a large catalog go to the overlay and share the image until the overlay is full.
+    @Test
+    public void overlayMatchesRebuiltColumns() {
+        String[] makes = {"BMW", "Toyota", "Ford"};
+        Map<Long, MotorVehicle> expected = new TreeMap<>();
+        for (long id = 1; id <= 200_000; id++) {
+            expected.put(id, vehicle(id, makes[(int) (id % 3)], "Model " + id % 50, (int) (50 + id % 300)));
+        }
+        MotorVehicleColumns base = MotorVehicleColumns.of(expected.values());
+        MotorVehicleColumns columns = base;
+        Random random = new Random(1);
+        for (int i = 0; i < 600; i++) {
+            long id = 1 + random.nextInt(200_000);
+            MotorVehicle vehicle = null;
+            if (i % 3 == 0) {
+                vehicle = vehicle(id, "Ford", "Model " + i % 7, 400 + i);
+            } else if (i % 3 == 2) {
+                id = 200_000 + i;
+                vehicle = vehicle(id, "Lada", "Niva", 60 + i);
+            }
+            columns = columns.with(id, vehicle);
+            if (vehicle == null) {
+                expected.remove(id);
+            } else {
+                expected.put(id, vehicle);
+            }
+        }
+        assertThat(columns.getSnapshot()).isSameAs(base.getSnapshot());
+        assertOverlayMatches(columns, MotorVehicleColumns.of(expected.values()));
+
+        for (int i = 0; columns.getSnapshot() == base.getSnapshot(); i++) {
+            assertThat(i).isLessThanOrEqualTo(MotorVehicleColumns.MAX_OVERLAY);
+            long id = 1 + random.nextInt(200_000);
+            MotorVehicle vehicle = vehicle(id, "Toyota", "Model " + i % 5, 100 + i % 200);
+            columns = columns.with(id, vehicle);
+            expected.put(id, vehicle);
+        }
+        assertOverlayMatches(columns, MotorVehicleColumns.of(expected.values()));
+    }
+
+    private static void assertOverlayMatches(MotorVehicleColumns columns, MotorVehicleColumns rebuilt) {
+        assertThat(columns.size()).isEqualTo(rebuilt.size());
+        assertThat(rows(columns.vehicles(columns.rows()))).isEqualTo(rows(rebuilt.vehicles(rebuilt.rows())));
+        for (String make : List.of("BMW", "Ford", "Lada", "Skoda")) {
+            assertThat(rows(columns.vehicles(columns.rowsByMake(make)))).isEqualTo(rows(rebuilt.vehicles(rebuilt.rowsByMake(make))));
+            assertThat(columns.aggregate(columns.rowsByMake(make))).usingRecursiveComparison().isEqualTo(rebuilt.aggregate(rebuilt.rowsByMake(make)));
+        }
+        for (String[] makeAndModel : List.of(new String[]{"Ford", "Model 3"}, new String[]{"Lada", "Niva"}, new String[]{"BMW", "Model 7"})) {
+            assertThat(rows(columns.vehicles(columns.rowsByMakeAndModel(makeAndModel[0], makeAndModel[1]))))
+                    .isEqualTo(rows(rebuilt.vehicles(rebuilt.rowsByMakeAndModel(makeAndModel[0], makeAndModel[1]))));
+        }
+        MotorVehicleRange power = MotorVehicleRange.parse("power", "300..700");
+        assertThat(columns.countInRange(power)).isEqualTo(rebuilt.countInRange(power));
+        assertThat(rows(columns.vehicles(columns.rowsInRange(columns.rowsByMake("Ford"), power))))
+                .isEqualTo(rows(rebuilt.vehicles(rebuilt.rowsInRange(rebuilt.rowsByMake("Ford"), power))));
+        assertThat(rows(columns.vehicles(columns.rowsByGenerationContains(columns.rowsByMake("Ford"), "saloon 1"))))
+                .isEqualTo(rows(rebuilt.vehicles(rebuilt.rowsByGenerationContains(rebuilt.rowsByMake("Ford"), "saloon 1"))));
+        for (MotorVehicleSearch search : List.of(MotorVehicleSearch.of(Map.of("model", "Niva"), List.of(power)),
+                MotorVehicleSearch.of(Map.of("gearbox", "3 speed", "transmission", "Manual"), List.of()),
+                MotorVehicleSearch.of(Map.of("trimVersion", "trim 4", "make", "Ford"), List.of(MotorVehicleRange.parse("power", "..450"))))) {
+            assertThat(rows(columns.vehicles(columns.search(search, new ArrayList<>()))))
+                    .isEqualTo(rows(rebuilt.vehicles(rebuilt.search(search, new ArrayList<>()))));
+        }
+    }
+
+    private static MotorVehicle vehicle(long id, String make, String model, int power) {
+        return new MotorVehicle(id, make, model, "Saloon " + id % 20 + " specs", "Trim " + id % 100, "Jan 2010", "Now", "£20,000",
+                power, 300, 50, 1998, 4, 16, "Petrol", (id % 2 == 0) ? "Automatic" : "Manual", id % 4 + " speed", "Germany");
+    }
+
+    private static List<String> rows(List<MotorVehicle> vehicles) {
+        return vehicles.stream().map(MotorVehicle::toString).collect(Collectors.toList());
+    }
+}
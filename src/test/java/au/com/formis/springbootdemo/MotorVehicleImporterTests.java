@@ -0,0 +1,179 @@
+package au.com.formis.springbootdemo;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+@SpringBootTest
+public class MotorVehicleImporterTests {
+
+    // Imports turn motorvehicle into a synonym, so they get a copy of data/myDB of their own.
+    private static final Path DIRECTORY = Path.of("target", "test-data", "importer");
+
+    private static final String HEADER = "Id,Make,Model,Generation,Trim / Version,Date from,Date to,New price,Power,Torque,"
+            + "Fuel capacity,Engine size,Cylinders,Valves,Fuel type,Transmission,Gearbox,Country\n";
+
+    @Autowired
+    private MotorVehicleImporter motorVehicleImporter;
+
+    @Autowired
+    private MotorVehicleRepository motorVehicleRepository;
+
+    @Autowired
+    private MotorVehicleCatalog motorVehicleCatalog;
+
+    @Autowired
+    private MotorVehicleWriter motorVehicleWriter;
+
+    @Autowired
+    private MotorVehicleCompletions motorVehicleCompletions;
+
+    @Autowired
+    private MotorVehicleResponseCache motorVehicleResponseCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @DynamicPropertySource
+    static void importerDatabase(DynamicPropertyRegistry registry) throws IOException {
+        Files.createDirectories(DIRECTORY);
+        Files.copy(Path.of("data", "myDB.mv.db"), DIRECTORY.resolve("myDB.mv.db"), StandardCopyOption.REPLACE_EXISTING);
+        registry.add("spring.datasource.url", () -> "jdbc:h2:file:./" + DIRECTORY.resolve("myDB").toString().replace('\\', '/') + ";MODE=MySQL");
+    }
+
+    @Test
+    public void csvReaderHandlesQuotedFields() throws Exception {
+        var reader = new MotorVehicleCsvReader(new StringReader("\uFEFFa,b\r\n\"x, y\",\"say \"\"hi\"\"\"\n\n\"multi\nline\",\nlast"));
+        assertThat(reader.next()).containsExactly("a", "b");
+        assertThat(reader.next()).containsExactly("x, y", "say \"hi\"");
+        assertThat(reader.next()).containsExactly("multi\nline", "");
+        assertThat(reader.getLine()).isEqualTo(4);
+        assertThat(reader.next()).containsExactly("last");
+        assertThat(reader.next()).isNull();
+        assertThatThrownBy(() -> new MotorVehicleCsvReader(new StringReader("\"open")).next()).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void importReplacesDataset() throws Exception {
+        List<String> before = rows(motorVehicleRepository.findAll());
+        StringBuilder csv = new StringBuilder(HEADER);
+        for (MotorVehicle vehicle : motorVehicleRepository.findAll()) {
+            csv.append(vehicle.getId()).append(',').append(quote(vehicle.getMake())).append(',').append(quote(vehicle.getModel())).append(',')
+                    .append(quote(vehicle.getGeneration())).append(',').append(quote(vehicle.getTrimVersion())).append(',')
+                    .append(quote(vehicle.getDateFrom())).append(',').append(quote(vehicle.getDateTo())).append(',')
+                    .append(quote(vehicle.getNewPrice())).append(',').append(vehicle.getPower()).append(',').append(vehicle.getTorque()).append(',')
+                    .append(vehicle.getFuelCapacity()).append(',').append(vehicle.getEngineSize()).append(',').append(vehicle.getCylinders()).append(',')
+                    .append(vehicle.getValves()).append(',').append(quote(vehicle.getFuelType())).append(',').append(quote(vehicle.getTransmission())).append(',')
+                    .append(quote(vehicle.getGearbox())).append(',').append(quote(vehicle.getCountry())).append('\n');
+        }
+        assertThat(motorVehicleImporter.importCsv(new StringReader(csv.toString())).getRecords()).isEqualTo(before.size());
+        assertThat(rows(motorVehicleRepository.findAll())).isEqualTo(before);
+        assertThat(rows(motorVehicleCatalog.getColumns().vehicles(motorVehicleCatalog.getColumns().rows()))).isEqualTo(before);
+        // The pooled optimizer hands out the ids below the sequence value, starting after the imported ids.
+        assertThat(jdbcTemplate.queryForObject("select next value for " + MotorVehicle.ID_SEQUENCE, Long.class))
+                .isEqualTo(before.size() + MotorVehicle.ID_ALLOCATION_SIZE);
+        // The staging table is indexed like the migrated table.
+        assertThat(jdbcTemplate.queryForObject("explain select id from motorvehicle where make = 'BMW' and model = 'X6'", String.class))
+                .doesNotContainIgnoringCase("tableScan");
+        // A second import swaps the synonym back to the other table.
+        motorVehicleImporter.importCsv(new StringReader(csv.toString()));
+        assertThat(rows(motorVehicleRepository.findAll())).isEqualTo(before);
+    }
+
+    @Test
+    public void invalidImportKeepsDataset() {
+        long count = motorVehicleRepository.count();
+        assertThatThrownBy(() -> motorVehicleImporter.importCsv(new StringReader("make,model,power\nBMW,X1,150\nBMW,X2,high\n")))
+                .isInstanceOf(IllegalArgumentException.class).hasMessageContaining("Line 3");
+        assertThatThrownBy(() -> motorVehicleImporter.importCsv(new StringReader("make,generation\nBMW,X1\n")))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(motorVehicleRepository.count()).isEqualTo(count);
+        assertThat(motorVehicleCatalog.findMotorVehiclesByMakeAndModel("BMW", "X1")).isEmpty();
+    }
+
+    @Test
+    public void writerLogsChangesAndRefreshesStores() throws Exception {
+        long since = motorVehicleWriter.getVersion();
+        MotorVehicleChange created = motorVehicleWriter.create(new MotorVehicle(null, "BMW", "X7", "4x4 2019 specs", "xDrive40i Auto",
+                "Feb 2019", "Now", "£72,000", 335, 450, 83, 2998, 6, 24, "Petrol", "Automatic", "8 speed", "Germany"));
+        long id = created.getId();
+        assertThat(created.getOperation()).isEqualTo(MotorVehicleChange.Operation.CREATE);
+        assertThat(motorVehicleCatalog.findMotorVehiclesByMakeAndModel("BMW", "X7")).extracting(MotorVehicle::getId).containsExactly(id);
+        assertThat(motorVehicleRepository.findMotorVehiclesByMakeAndModel("BMW", "X7")).extracting(MotorVehicle::getId).containsExactly(id);
+        assertThat(motorVehicleCompletions.models("BMW", "x", 10)).extracting(MotorVehicleCompletions.Completion::getValue).containsExactly("X6", "X7");
+
+        motorVehicleWriter.update(id, new MotorVehicle(null, "BMW", "X7", "4x4 2019 specs", "M50i Auto",
+                "Feb 2019", "Now", "£96,000", 523, 750, 83, 4395, 8, 32, "Petrol", "Automatic", "8 speed", "Germany"));
+        // Only the latest change of the row is returned.
+        List<MotorVehicleChange> changes = motorVehicleWriter.changes(since, 10);
+        assertThat(changes).extracting(MotorVehicleChange::getOperation).containsExactly(MotorVehicleChange.Operation.UPDATE);
+        assertThat(changes.get(0).getVehicle().getPower()).isEqualTo(523);
+        assertThat(motorVehicleCatalog.findMotorVehiclesByMakeAndModel("BMW", "X7")).extracting(MotorVehicle::getPower).containsExactly(523);
+        assertThat(motorVehicleCompletions.generations("BMW", "X7", "", 10)).extracting(MotorVehicleCompletions.Completion::getCount).containsExactly(1L);
+
+        motorVehicleWriter.delete(id);
+        changes = motorVehicleWriter.changes(since, 10);
+        assertThat(changes).extracting(MotorVehicleChange::getOperation).containsExactly(MotorVehicleChange.Operation.DELETE);
+        assertThat(changes.get(0).getVehicle()).isNull();
+        assertThat(motorVehicleCatalog.findMotorVehiclesByMakeAndModel("BMW", "X7")).isEmpty();
+        assertThat(motorVehicleRepository.findMotorVehiclesByMakeAndModel("BMW", "X7")).isEmpty();
+        assertThat(motorVehicleCompletions.models("BMW", "x", 10)).extracting(MotorVehicleCompletions.Completion::getValue).containsExactly("X6");
+        assertThat(motorVehicleCompletions.makes("b", 10)).extracting(MotorVehicleCompletions.Completion::getCount).containsExactly(126L);
+        assertThatThrownBy(() -> motorVehicleWriter.delete(id)).isInstanceOf(NoSuchElementException.class);
+        assertThatThrownBy(() -> motorVehicleWriter.create(new MotorVehicle())).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void responseCacheInvalidatesMakeAndModel() {
+        MotorVehicleQuery x6 = MotorVehicleQuery.byMakeAndModel("Invalidate", "X6");
+        MotorVehicleQuery x5 = MotorVehicleQuery.byMakeAndModel("Invalidate", "X5");
+        MotorVehicleQuery make = MotorVehicleQuery.byMake("Invalidate");
+        long stamp = motorVehicleResponseCache.stamp();
+        for (MotorVehicleQuery query : List.of(x6, x5, make)) {
+            motorVehicleResponseCache.put(query.canonicalParameters(), query, stamp, HttpStatus.OK, new byte[1], 1);
+        }
+        motorVehicleResponseCache.invalidate("Invalidate", "X6");
+        assertThat(motorVehicleResponseCache.get(x6.canonicalParameters())).isNull();
+        assertThat(motorVehicleResponseCache.get(make.canonicalParameters())).isNull();
+        assertThat(motorVehicleResponseCache.get(x5.canonicalParameters())).isNotNull();
+        // A response read before the invalidation is not cached.
+        motorVehicleResponseCache.put(x6.canonicalParameters(), x6, stamp, HttpStatus.OK, new byte[1], 1);
+        assertThat(motorVehicleResponseCache.get(x6.canonicalParameters())).isNull();
+        // Only the latest invalidated scopes are remembered, older stamps are rejected for every scope.
+        MotorVehicleQuery x4 = MotorVehicleQuery.byMakeAndModel("Invalidate", "X4");
+        stamp = motorVehicleResponseCache.stamp();
+        for (int i = 0; i < MotorVehicleResponseCache.MAX_INVALIDATED_SCOPES; i++) {
+            motorVehicleResponseCache.invalidate("Invalidate", "Model " + i);
+        }
+        motorVehicleResponseCache.put(x4.canonicalParameters(), x4, stamp, HttpStatus.OK, new byte[1], 1);
+        assertThat(motorVehicleResponseCache.get(x4.canonicalParameters())).isNull();
+        motorVehicleResponseCache.put(x4.canonicalParameters(), x4, motorVehicleResponseCache.stamp(), HttpStatus.OK, new byte[1], 1);
+        assertThat(motorVehicleResponseCache.get(x4.canonicalParameters())).isNotNull();
+    }
+
+    private static String quote(String value) {
+        return (value == null) ? "" : '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static List<String> rows(Iterable<MotorVehicle> vehicles) {
+        List<MotorVehicle> list = new ArrayList<>();
+        vehicles.forEach(list::add);
+        return list.stream().sorted((a, b) -> Long.compare(a.getId(), b.getId())).map(MotorVehicle::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,61 @@
+package au.com.formis.springbootdemo;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("reactive")
+public class MotorVehicleReactiveTests {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private MotorVehicleRepository motorVehicleRepository;
+
+    @Autowired
+    private MotorVehicleReactiveRepository motorVehicleReactiveRepository;
+
+    @Test
+    public void reactiveRepositoryMatchesRepository() {
+        assertThat(rows(motorVehicleReactiveRepository.findMotorVehiclesByMake("BMW").collectList().block()))
+                .isEqualTo(rows(motorVehicleRepository.findMotorVehiclesByMake("BMW")));
+        assertThat(rows(motorVehicleReactiveRepository.findMotorVehiclesByMakeAndModel("BMW", "X6").collectList().block()))
+                .isEqualTo(rows(motorVehicleRepository.findMotorVehiclesByMakeAndModel("BMW", "X6")));
+        assertThat(rows(motorVehicleReactiveRepository.findMotorVehiclesByMakeAndModelAndGenerationContains("Toyota", "Prius", "SALOON").collectList().block()))
+                .isEqualTo(rows(motorVehicleRepository.findMotorVehiclesByMakeAndModelAndGenerationContains("Toyota", "Prius", "SALOON")));
+        assertThat(motorVehicleReactiveRepository.findMotorVehiclesByMakeAndModelAndGenerationContains("BMW", "X6", "%").collectList().block()).isEmpty();
+    }
+
+    @Test
+    public void reactiveJsonTest01() {
+        String json = webTestClient.get().uri("/motorVehicles?make=BMW&model=3-Series&generation=Saloon 2005").exchange()
+                .expectStatus().isOk().expectHeader().contentType(MediaType.APPLICATION_JSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+        assertThat(json).startsWith("{\"publisher\":\"Spring Boot Demo Service\",").contains("\"payload\":[{\"id\":")
+                .endsWith("],\"numberOfRecords\":8}");
+        assertThat(webTestClient.get().uri("/motorVehicles?make=Lada").exchange().expectBody(String.class).returnResult().getResponseBody())
+                .endsWith("\"payload\":[],\"numberOfRecords\":0}");
+    }
+
+    @Test
+    public void reactiveNdjsonTest01() {
+        String ndjson = webTestClient.get().uri("/motorVehicles?make=BMW&model=X6").accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk().expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+                .expectBody(String.class).returnResult().getResponseBody();
+        assertThat(ndjson.split("\n")).hasSize(12).allMatch(line -> line.startsWith("{\"id\":") && line.contains("\"model\":\"X6\""));
+    }
+
+    private static List<String> rows(List<MotorVehicle> vehicles) {
+        return vehicles.stream().map(MotorVehicle::toString).collect(Collectors.toList());
+    }
+}
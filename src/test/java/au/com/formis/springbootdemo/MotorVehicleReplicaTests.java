@@ -0,0 +1,93 @@
+package au.com.formis.springbootdemo;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import org.hibernate.Cache;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+@SpringBootTest(properties = {"motorvehicle.store=jpa", "motorvehicle.replicas.count=2"})
+public class MotorVehicleReplicaTests {
+
+    private static final long ID = 999_999;
+
+    @Autowired
+    private MotorVehicleReplicas motorVehicleReplicas;
+
+    @Autowired
+    private MotorVehicleRepository motorVehicleRepository;
+
+    @Autowired
+    private MotorVehicleStore motorVehicleStore;
+
+    @Autowired
+    private MotorVehicleWriter motorVehicleWriter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void replicasServeReadOnlyQueries() throws Exception {
+        long rows = jdbcTemplate.queryForObject("select count(*) from motorvehicle", Long.class);
+        for (DataSource replica : motorVehicleReplicas.getDataSources()) {
+            assertThat(new JdbcTemplate(replica).queryForObject("select count(*) from motorvehicle", Long.class)).isEqualTo(rows);
+        }
+        assertThat(meterRegistry.find("hikaricp.connections").tag("pool", "motorvehicle-replica-1").gauge()).isNotNull();
+
+        // Written to the primary only, outside a transaction.
+        jdbcTemplate.update("insert into motorvehicle (id, make, model, power, torque, fuel_capacity, engine_size, cylinders, valves)"
+                + " values (?, 'Replica', 'R1', 0, 0, 0, 0, 0, 0)", ID);
+        try {
+            assertThat(motorVehicleRepository.findMotorVehiclesByMake("Replica")).isEmpty();
+            assertThat(motorVehicleRepository.findMotorVehiclesByMake("Replica")).isEmpty();
+            motorVehicleReplicas.copy(ID);
+            entityManagerFactory.getCache().unwrap(Cache.class).evictDefaultQueryRegion();
+            assertThat(motorVehicleStore.find(MotorVehicleQuery.byMake("Replica"))).extracting(MotorVehicle::getId).containsExactly(ID);
+            assertThat(motorVehicleStore.find(MotorVehicleQuery.byMake("Replica"))).extracting(MotorVehicle::getId).containsExactly(ID);
+        } finally {
+            jdbcTemplate.update("delete from motorvehicle where id = ?", ID);
+            motorVehicleReplicas.copy(ID);
+            entityManagerFactory.getCache().unwrap(Cache.class).evictDefaultQueryRegion();
+        }
+        assertThat(motorVehicleStore.find(MotorVehicleQuery.byMake("Replica"))).isEmpty();
+    }
+
+    // Like wildcards in a contains filter match literally, as in the MotorVehicleCatalog.
+    @Test
+    public void containsFiltersEscapeWildcards() {
+        for (String generation : List.of("%", "_", "\\")) {
+            MotorVehicleQuery query = MotorVehicleQuery.byMakeAndModelAndGeneration("BMW", "X6", generation);
+            assertThat(motorVehicleStore.find(query)).isEmpty();
+            assertThat(motorVehicleStore.find(query.withPage(MotorVehiclePage.of(10, null, null, 1000)))).isEmpty();
+            assertThat(motorVehicleStore.find(query, MotorVehicleFields.parse("make"))).isEmpty();
+            assertThat(motorVehicleStore.search(MotorVehicleSearch.of(Map.of("generation", generation), List.of())).getVehicles()).isEmpty();
+        }
+        assertThat(motorVehicleStore.find(MotorVehicleQuery.byMakeAndModelAndGeneration("BMW", "X6", "4x4"))).isNotEmpty();
+    }
+
+    @Test
+    public void writesAreCopiedToReplicas() throws Exception {
+        long id = motorVehicleWriter.create(new MotorVehicle(null, "BMW", "X7", "4x4 2019 specs", "xDrive40i Auto",
+                "Feb 2019", "Now", "£72,000", 335, 450, 83, 2998, 6, 24, "Petrol", "Automatic", "8 speed", "Germany")).getId();
+        MotorVehicleQuery x7 = MotorVehicleQuery.byMakeAndModel("BMW", "X7");
+        // Two reads, one from each replica.
+        assertThat(motorVehicleStore.find(x7)).extracting(MotorVehicle::getId).containsExactly(id);
+        assertThat(motorVehicleStore.find(x7)).extracting(MotorVehicle::getId).containsExactly(id);
+        motorVehicleWriter.delete(id);
+        assertThat(motorVehicleStore.find(x7)).isEmpty();
+        assertThat(motorVehicleStore.find(x7)).isEmpty();
+    }
+}
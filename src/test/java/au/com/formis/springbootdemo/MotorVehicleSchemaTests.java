@@ -0,0 +1,131 @@
+package au.com.formis.springbootdemo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import org.hibernate.Cache;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=au.com.formis.springbootdemo.MotorVehicleSchemaTests$RecordingStatementInspector")
+public class MotorVehicleSchemaTests {
+
+    private static final List<String> statements = new ArrayList<>();
+
+    @Autowired
+    private MotorVehicleRepository motorVehicleRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    public void repositoryQueriesUseIndexes() throws Exception {
+        List<Runnable> queries = List.of(
+                () -> motorVehicleRepository.findMotorVehiclesByMake("BMW"),
+                () -> motorVehicleRepository.findMotorVehiclesByMakeAndModel("BMW", "X6"),
+                () -> motorVehicleRepository.findMotorVehiclesByMakeAndModelAndGenerationContains("BMW", "X6", "suv"),
+                () -> motorVehicleRepository.findMotorVehiclesByMakeIn(Set.of("BMW", "Toyota")),
+                () -> motorVehicleRepository.findMotorVehiclesByMakeInAndModelIn(Set.of("BMW", "Toyota"), Set.of("X6", "Prius")),
+                () -> close(motorVehicleRepository.streamMotorVehiclesByMake("BMW")),
+                () -> close(motorVehicleRepository.streamMotorVehiclesByMakeAndModel("BMW", "X6")),
+                () -> close(motorVehicleRepository.streamMotorVehiclesByMakeAndModelAndGenerationContains("BMW", "X6", "suv")));
+        for (Runnable query : queries) {
+            // The cacheable finders would otherwise be answered from the query cache without any SQL.
+            entityManagerFactory.getCache().unwrap(Cache.class).evictAllRegions();
+            synchronized (statements) {
+                statements.clear();
+            }
+            transactionTemplate.executeWithoutResult(status -> query.run());
+            List<String> recorded;
+            synchronized (statements) {
+                recorded = List.copyOf(statements);
+            }
+            assertThat(recorded).hasSize(1);
+            assertThat(explain(recorded.get(0))).as(recorded.get(0))
+                    .doesNotContainIgnoringCase("tableScan")
+                    .containsIgnoringCase("motorvehicle_make_model_generation");
+        }
+    }
+
+    @Test
+    public void projectionSelectsOnlyRequestedColumns() {
+        var jpaStore = new JpaMotorVehicleStore(motorVehicleRepository, entityManager);
+        synchronized (statements) {
+            statements.clear();
+        }
+        transactionTemplate.executeWithoutResult(status -> jpaStore.find(MotorVehicleQuery.byMakeAndModel("BMW", "X6"), MotorVehicleFields.parse("make,power")));
+        String sql;
+        synchronized (statements) {
+            assertThat(statements).hasSize(1);
+            sql = statements.get(0).toLowerCase(Locale.ROOT);
+        }
+        String select = sql.substring(0, sql.indexOf(" from "));
+        assertThat(select).contains(".id").contains(".make").contains(".power").doesNotContain(".model").doesNotContain("trim_version")
+                .doesNotContain("date_from").doesNotContain("country");
+    }
+
+    @Test
+    public void generationLowerIsComputed() {
+        MotorVehicle vehicle = motorVehicleRepository.findMotorVehiclesByMakeAndModel("BMW", "X6").get(0);
+        String generation = vehicle.getGeneration().toUpperCase(Locale.ROOT);
+        assertThat(motorVehicleRepository.findMotorVehiclesByMakeAndModelAndGenerationContains("BMW", "X6", generation))
+                .extracting(MotorVehicle::getId).contains(vehicle.getId());
+    }
+
+    /**
+     * @return The H2 query plan of a statement, with every parameter bound to a string.
+     */
+    private String explain(String sql) throws Exception {
+        try (Connection connection = dataSource.getConnection(); PreparedStatement explain = connection.prepareStatement("explain " + sql)) {
+            for (int i = 1; i <= explain.getParameterMetaData().getParameterCount(); i++) {
+                explain.setString(i, "BMW");
+            }
+            try (ResultSet plan = explain.executeQuery()) {
+                plan.next();
+                return plan.getString(1);
+            }
+        }
+    }
+
+    private static void close(Stream<MotorVehicle> stream) {
+        try (stream) {
+            stream.count();
+        }
+    }
+
+    /**
+     * <p>Records the SQL Hibernate runs.</p>
+     */
+    public static class RecordingStatementInspector implements StatementInspector {
+
+        @Override
+        public String inspect(String sql) {
+            synchronized (statements) {
+                statements.add(sql);
+            }
+            return sql;
+        }
+    }
+}